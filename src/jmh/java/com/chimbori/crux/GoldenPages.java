@@ -0,0 +1,98 @@
+package com.chimbori.crux;
+
+import com.chimbori.crux.common.CharsetConverter;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Loads the golden pages from {@code test_data/} once per benchmark, so that file I/O is never
+ * part of a measurement. Each call to {@link #next()} advances to the following page, so one
+ * benchmark operation always corresponds to exactly one page, and the throughput, average time and
+ * {@code gc.alloc.rate.norm} reported by JMH are per page, averaged across the whole corpus.
+ *
+ * Run against a subset of pages with e.g. {@code -p pages=nyt.html,bbc.html}.
+ */
+@State(Scope.Thread)
+public class GoldenPages {
+  private static final String TEST_DATA = "test_data";
+
+  /**
+   * Comma-separated list of file names within {@code test_data/}, or empty for all pages.
+   */
+  @Param({""})
+  public String pages;
+
+  public String[] urls;
+  public byte[][] bytes;
+  public String[] html;
+
+  private int index = -1;
+
+  @Setup
+  public void loadPages() throws IOException {
+    List<String> fileNames = new ArrayList<>();
+    if (pages == null || pages.isEmpty()) {
+      String[] allFiles = new File(TEST_DATA).list();
+      if (allFiles == null) {
+        throw new IOException("Benchmarks must be run from the project root; " + TEST_DATA + "/ not found.");
+      }
+      Arrays.sort(allFiles);
+      fileNames.addAll(Arrays.asList(allFiles));
+    } else {
+      fileNames.addAll(Arrays.asList(pages.split(",")));
+    }
+
+    int count = fileNames.size();
+    urls = new String[count];
+    bytes = new byte[count][];
+    html = new String[count];
+    for (int i = 0; i < count; i++) {
+      String fileName = fileNames.get(i).trim();
+      urls[i] = "http://example.com/" + fileName;
+      bytes[i] = readFully(new File(TEST_DATA, fileName));
+      html[i] = CharsetConverter.readStream(new ByteArrayInputStream(bytes[i])).content;
+    }
+  }
+
+  /**
+   * Advances to the next page, wrapping around at the end of the corpus.
+   */
+  public int next() {
+    index = (index + 1) % urls.length;
+    return index;
+  }
+
+  public int size() {
+    return urls.length;
+  }
+
+  private static byte[] readFully(File file) throws IOException {
+    byte[] buffer = new byte[(int) file.length()];
+    InputStream in = new FileInputStream(file);
+    try {
+      int offset = 0;
+      while (offset < buffer.length) {
+        int n = in.read(buffer, offset, buffer.length - offset);
+        if (n < 0) {
+          break;
+        }
+        offset += n;
+      }
+      return offset == buffer.length ? buffer : Arrays.copyOf(buffer, offset);
+    } finally {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package com.chimbori.crux.articles;
+
+import com.chimbori.crux.GoldenPages;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end cost of extracting an {@link Article} from each golden page, as a caller would see it.
+ * {@link #parse} isolates the JSoup parsing cost, so that it can be subtracted from the full run.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ArticleExtractorBenchmark {
+  @Benchmark
+  public Document parse(GoldenPages pages) {
+    int i = pages.next();
+    return Jsoup.parse(pages.html[i], pages.urls[i]);
+  }
+
+  @Benchmark
+  public Article extractMetadata(GoldenPages pages) {
+    int i = pages.next();
+    return ArticleExtractor.with(pages.urls[i], pages.html[i])
+        .extractMetadata()
+        .article();
+  }
+
+  @Benchmark
+  public Article extractMetadataFromHead(GoldenPages pages) {
+    int i = pages.next();
+    return ArticleExtractor.with(pages.urls[i], pages.html[i])
+        .extractMetadataFromHead()
+        .article();
+  }
+
+  @Benchmark
+  public Article extractAll(GoldenPages pages) {
+    int i = pages.next();
+    return ArticleExtractor.with(pages.urls[i], pages.html[i])
+        .extractMetadata()
+        .extractContent()
+        .estimateReadingTime()
+        .article();
+  }
+
+  /**
+   * Same as {@link #extractAll}, but reads & decodes the raw page from a stream, stopping after the
+   * article; compare against {@link #extractAll} plus {@code CharsetConverterBenchmark.readStream}.
+   */
+  @Benchmark
+  public Article extractAllFromStream(GoldenPages pages) {
+    int i = pages.next();
+    return ArticleExtractor.with(pages.urls[i], new ByteArrayInputStream(pages.bytes[i]), null)
+        .extractMetadata()
+        .extractContent()
+        .estimateReadingTime()
+        .article();
+  }
+}
@@ -0,0 +1,61 @@
+package com.chimbori.crux.articles;
+
+import com.chimbori.crux.GoldenPages;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link BatchArticleExtractor} over the whole golden corpus, for varying numbers of
+ * workers. Unlike the other benchmarks, one operation is the entire corpus, not a single page.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class BatchArticleExtractorBenchmark {
+  @Param({"1", "2", "4"})
+  public int workers;
+
+  private BatchArticleExtractor extractor;
+  private List<BatchArticleExtractor.Input> inputs;
+
+  @Setup
+  public void setUp(GoldenPages pages) {
+    extractor = BatchArticleExtractor.withWorkers(workers);
+    inputs = new ArrayList<>(pages.size());
+    for (int i = 0; i < pages.size(); i++) {
+      inputs.add(BatchArticleExtractor.Input.bytes(pages.urls[i], pages.bytes[i]));
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    extractor.close();
+  }
+
+  @Benchmark
+  public BatchArticleExtractor.Stats extractAll() {
+    return extractor.extract(inputs.iterator(), new BatchArticleExtractor.Callback() {
+      @Override
+      public void onResult(BatchArticleExtractor.Result result) {
+      }
+    });
+  }
+}
@@ -0,0 +1,54 @@
+package com.chimbori.crux.articles;
+
+import com.chimbori.crux.GoldenPages;
+import com.chimbori.crux.articles.configuration.Configuration;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the scoring pass: measuring {@link TextStatistics}, building the {@link DomTree}, then
+ * {@link ExtractionHelpers#findBestMatch()}, exactly as
+ * {@link ArticleExtractor#extractContent()} performs it. Pages are parsed and preprocessed once
+ * up front; scoring does not modify the tree, so the same documents are reused across invocations.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ExtractionHelpersBenchmark {
+  private Document[] documents;
+
+  @Setup
+  public void preprocessPages(GoldenPages pages) {
+    PreprocessHelpers preprocessHelpers = PreprocessHelpers.configure(Configuration.standardConfiguration);
+    documents = new Document[pages.size()];
+    for (int i = 0; i < documents.length; i++) {
+      documents[i] = Jsoup.parse(pages.html[i], pages.urls[i]);
+      preprocessHelpers.preprocess(documents[i]);
+    }
+  }
+
+  @Benchmark
+  public Element findBestMatch(GoldenPages pages) {
+    Document doc = documents[pages.next()];
+    TextStatistics textStatistics = TextStatistics.of(doc.body());
+    DomTree tree = DomTree.of(textStatistics);
+    return ExtractionHelpers.configure(Configuration.standardConfiguration, new GravityScores(), tree).findBestMatch();
+  }
+}
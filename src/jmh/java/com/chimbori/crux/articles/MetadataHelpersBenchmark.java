@@ -0,0 +1,59 @@
+package com.chimbori.crux.articles;
+
+import com.chimbori.crux.GoldenPages;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of indexing a document’s metadata and of all {@link MetadataHelpers} lookups performed by
+ * {@link ArticleExtractor#extractMetadata()}, on documents that have been parsed up front. Metadata extraction does not modify the document,
+ * so the same parsed pages are reused across invocations.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MetadataHelpersBenchmark {
+  private Document[] documents;
+
+  @Setup
+  public void parsePages(GoldenPages pages) {
+    documents = new Document[pages.size()];
+    for (int i = 0; i < documents.length; i++) {
+      documents[i] = Jsoup.parse(pages.html[i], pages.urls[i]);
+    }
+  }
+
+  @Benchmark
+  public void extractMetadata(GoldenPages pages, Blackhole blackhole) {
+    MetadataIndex metadata = MetadataIndex.of(documents[pages.next()]);
+    blackhole.consume(MetadataHelpers.extractTitle(metadata));
+    blackhole.consume(MetadataHelpers.extractDescription(metadata));
+    blackhole.consume(MetadataHelpers.extractSiteName(metadata));
+    blackhole.consume(MetadataHelpers.extractThemeColor(metadata));
+    blackhole.consume(MetadataHelpers.extractCanonicalUrl(metadata));
+    blackhole.consume(MetadataHelpers.extractAmpUrl(metadata));
+    blackhole.consume(MetadataHelpers.extractFeedUrl(metadata));
+    blackhole.consume(MetadataHelpers.extractVideoUrl(metadata));
+    blackhole.consume(MetadataHelpers.extractFaviconUrl(metadata));
+    blackhole.consume(MetadataHelpers.extractKeywords(metadata));
+    blackhole.consume(MetadataHelpers.extractImageUrl(metadata, Collections.<Article.Image>emptyList()));
+  }
+}
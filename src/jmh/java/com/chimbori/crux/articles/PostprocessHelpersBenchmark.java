@@ -0,0 +1,64 @@
+package com.chimbori.crux.articles;
+
+import com.chimbori.crux.GoldenPages;
+import com.chimbori.crux.articles.configuration.Configuration;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link PostprocessHelpers#postprocess} on the best-match element of each page, copying or
+ * moving the content into the output.
+ * Postprocessing modifies the tree in place, so every invocation gets a freshly parsed, preprocessed
+ * and scored page; that preparation is excluded from the measurement. Each invocation takes
+ * several milliseconds, which keeps the per-invocation setup overhead negligible.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PostprocessHelpersBenchmark {
+  @Param({"false", "true"})
+  public boolean moveContent;
+
+  private Element bestMatchElement;
+  private List<Article.Image> images;
+  private GravityScores scores;
+  private TextStatistics textStatistics;
+
+  @Setup(Level.Invocation)
+  public void scoreNextPage(GoldenPages pages) {
+    int i = pages.next();
+    Document doc = Jsoup.parse(pages.html[i], pages.urls[i]);
+    PreprocessHelpers.configure(Configuration.standardConfiguration).preprocess(doc);
+
+    scores = new GravityScores();
+    textStatistics = TextStatistics.of(doc.body());
+    bestMatchElement = ExtractionHelpers.configure(Configuration.standardConfiguration, scores,
+        DomTree.of(textStatistics)).findBestMatch();
+    images = ImageHelpers.extractImages(bestMatchElement);
+  }
+
+  @Benchmark
+  public Document postprocess() {
+    return PostprocessHelpers.configure(Configuration.standardConfiguration).postprocess(bestMatchElement, images, scores, textStatistics, moveContent);
+  }
+}
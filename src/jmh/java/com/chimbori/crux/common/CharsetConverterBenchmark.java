@@ -0,0 +1,68 @@
+package com.chimbori.crux.common;
+
+import com.chimbori.crux.GoldenPages;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of detecting the charset of, and decoding, each raw golden page. Pages are read from
+ * memory, so only the buffering, sniffing and decoding work in {@link CharsetConverter} is measured;
+ * {@link #decode} skips buffering altogether, and {@link #decodeDirectByteBuffer} decodes from
+ * off-heap memory, as for a memory-mapped file.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CharsetConverterBenchmark {
+  private final CharsetConverter.ReadBuffer buffer = new CharsetConverter.ReadBuffer();
+
+  /**
+   * Off-heap copies of the golden pages, standing in for memory-mapped files; filled in on first use.
+   */
+  private ByteBuffer[] directBuffers = null;
+
+  @Benchmark
+  public CharsetConverter.StringWithEncoding readStream(GoldenPages pages) {
+    return CharsetConverter.readStream(new ByteArrayInputStream(pages.bytes[pages.next()]));
+  }
+
+  @Benchmark
+  public CharsetConverter.StringWithEncoding readStreamWithReadBuffer(GoldenPages pages) {
+    return CharsetConverter.readStream(new ByteArrayInputStream(pages.bytes[pages.next()]), null,
+        buffer, CharsetConverter.DEFAULT_MAX_BYTES);
+  }
+
+  @Benchmark
+  public CharsetConverter.StringWithEncoding decode(GoldenPages pages) {
+    byte[] bytes = pages.bytes[pages.next()];
+    return CharsetConverter.decode(bytes, 0, bytes.length, null);
+  }
+
+  @Benchmark
+  public CharsetConverter.StringWithEncoding decodeDirectByteBuffer(GoldenPages pages) {
+    int index = pages.next();
+    if (directBuffers == null) {
+      directBuffers = new ByteBuffer[pages.size()];
+    }
+    if (directBuffers[index] == null) {
+      directBuffers[index] = ByteBuffer.allocateDirect(pages.bytes[index].length);
+      directBuffers[index].put(pages.bytes[index]).flip();
+    }
+    return CharsetConverter.decode(directBuffers[index], null);
+  }
+}
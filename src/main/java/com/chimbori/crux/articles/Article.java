@@ -57,7 +57,17 @@ public class Article {
    */
   public int estimatedReadingTimeMinutes = 0;
 
+  /**
+   * The content of the article, unless {@link ArticleExtractor#compactBody(boolean)} was set, in
+   * which case it is null, and {@link #body} is populated instead.
+   */
   public Document document;
+
+  /**
+   * The content of the article in compact form; only populated if
+   * {@link ArticleExtractor#compactBody(boolean)} was set.
+   */
+  public ArticleBody body;
   public Collection<String> keywords;
   public List<Image> images = new ArrayList<>();
 
@@ -67,6 +77,33 @@ public class Article {
     this.canonicalUrl = url;  // Can be overridden later, but we start off by setting it to the URL itself.
   }
 
+  /**
+   * @return a copy of this article that shares its {@link #document} & {@link #body}, but whose
+   * other fields, {@link #keywords} & {@link #images} can be modified without affecting this one.
+   */
+  Article copy() {
+    Article copy = new Article(url);
+    copy.title = title;
+    copy.description = description;
+    copy.siteName = siteName;
+    copy.themeColor = themeColor;
+    copy.ampUrl = ampUrl;
+    copy.canonicalUrl = canonicalUrl;
+    copy.imageUrl = imageUrl;
+    copy.videoUrl = videoUrl;
+    copy.feedUrl = feedUrl;
+    copy.faviconUrl = faviconUrl;
+    copy.estimatedReadingTimeMinutes = estimatedReadingTimeMinutes;
+    copy.document = document;
+    copy.body = body;
+    copy.keywords = keywords != null ? new ArrayList<>(keywords) : null;
+    copy.images = new ArrayList<>(images.size());
+    for (Image image : images) {
+      copy.images.add(image.copy());
+    }
+    return copy;
+  }
+
   @Override
   public String toString() {
     return "Article{" +
@@ -84,6 +121,7 @@ public class Article {
         ", faviconUrl='" + faviconUrl + '\'' +
         ", estimatedReadingTimeMinutes=" + estimatedReadingTimeMinutes +
         ", document=" + document +
+        ", body=" + body +
         ", keywords=" + keywords +
         ", images=" + images +
         '}';
@@ -118,6 +156,19 @@ public class Article {
       return image;
     }
 
+    private Image copy() {
+      Image copy = new Image();
+      copy.src = src;
+      copy.weight = weight;
+      copy.title = title;
+      copy.height = height;
+      copy.width = width;
+      copy.alt = alt;
+      copy.noFollow = noFollow;
+      copy.element = element;
+      return copy;
+    }
+
     @Override
     public String toString() {
       return "Image{" +
@@ -0,0 +1,408 @@
+package com.chimbori.crux.articles;
+
+import org.jsoup.nodes.Attribute;
+import org.jsoup.nodes.Attributes;
+import org.jsoup.nodes.BooleanAttribute;
+import org.jsoup.nodes.Comment;
+import org.jsoup.nodes.DataNode;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.parser.Tag;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The content of an {@link Article} in a compact, immutable form, which takes about half the memory
+ * of the equivalent JSoup {@link Document} (most of what remains is the text itself); suitable for
+ * keeping many articles in memory.
+ * <p>
+ * The content is a list of blocks (paragraphs, headings, quotes, images, preformatted text, or
+ * loose text), each of which may contain inline spans (links, emphasis, …). The text of all blocks
+ * is kept in a single shared buffer, which blocks & spans refer to by offsets; nodes are rows in a
+ * few flat arrays rather than objects. A {@link Document} or HTML is only created when asked for,
+ * and is identical to what postprocessing would otherwise have produced.
+ */
+public final class ArticleBody {
+  public enum BlockType {
+    /**
+     * Text that is not contained in any element.
+     */
+    TEXT,
+    PARAGRAPH,
+    HEADING,
+    QUOTE,
+    LIST_ITEM,
+    PRE,
+    IMAGE,
+    OTHER
+  }
+
+  /**
+   * An element within a block, such as a link. Its offsets are relative to the start of the
+   * block’s text.
+   */
+  public static final class Span {
+    public final String tagName;
+    public final int start;
+    public final int end;
+
+    private final ArticleBody body;
+    private final int node;
+
+    private Span(ArticleBody body, int node, int blockStart) {
+      this.body = body;
+      this.node = node;
+      this.tagName = body.names[body.nameIds[node]];
+      this.start = body.textStart[node] - blockStart;
+      this.end = body.textEnd[node] - blockStart;
+    }
+
+    /**
+     * @return the value of the attribute {@code key}, or "" if there is no such attribute.
+     */
+    public String attr(String key) {
+      return body.attr(node, key);
+    }
+
+    @Override
+    public String toString() {
+      return "Span{tagName='" + tagName + "', start=" + start + ", end=" + end + '}';
+    }
+  }
+
+  private static final byte TEXT_NODE = 0;
+  private static final byte ELEMENT_NODE = 1;
+  private static final byte COMMENT_NODE = 2;
+  private static final byte DATA_NODE = 3;
+
+  private static final Map<String, BlockType> BLOCK_TYPES = new HashMap<>();
+
+  static {
+    BLOCK_TYPES.put("p", BlockType.PARAGRAPH);
+    for (String heading : new String[]{"h1", "h2", "h3", "h4", "h5", "h6"}) {
+      BLOCK_TYPES.put(heading, BlockType.HEADING);
+    }
+    BLOCK_TYPES.put("blockquote", BlockType.QUOTE);
+    BLOCK_TYPES.put("li", BlockType.LIST_ITEM);
+    BLOCK_TYPES.put("pre", BlockType.PRE);
+    BLOCK_TYPES.put("img", BlockType.IMAGE);
+  }
+
+  private final String baseUri;
+  private final char[] text;
+
+  /**
+   * Node indices of the blocks, i.e. of the top-level nodes.
+   */
+  private final int[] blocks;
+
+  // Per node, in document order.
+  private final byte[] kinds;
+  private final int[] subtreeEnds;  // Index just past the node’s last descendant.
+  private final int[] nameIds;  // Index into names, for elements.
+  private final int[] textStart;  // Text of a text node, or of all text nodes within an element.
+  private final int[] textEnd;
+  private final int[] firstAttribute;  // Attributes of node i are [firstAttribute[i], firstAttribute[i + 1]).
+
+  private final String[] names;
+
+  /**
+   * Attributes of elements (with a null value for a {@link BooleanAttribute}), and the data of
+   * comment & data nodes (with a null key).
+   */
+  private final String[] attributeKeys;
+  private final String[] attributeValues;
+
+  private ArticleBody(Builder builder) {
+    baseUri = builder.baseUri;
+    text = builder.text.toString().toCharArray();
+    blocks = Arrays.copyOf(builder.blocks, builder.blockCount);
+    int count = builder.count;
+    kinds = Arrays.copyOf(builder.kinds, count);
+    subtreeEnds = Arrays.copyOf(builder.subtreeEnds, count);
+    nameIds = Arrays.copyOf(builder.nameIds, count);
+    textStart = Arrays.copyOf(builder.textStart, count);
+    textEnd = Arrays.copyOf(builder.textEnd, count);
+    firstAttribute = Arrays.copyOf(builder.firstAttribute, count + 1);
+    firstAttribute[count] = builder.attributeKeys.size();
+    names = builder.names.toArray(new String[builder.names.size()]);
+    attributeKeys = builder.attributeKeys.toArray(new String[builder.attributeKeys.size()]);
+    attributeValues = builder.attributeValues.toArray(new String[builder.attributeValues.size()]);
+  }
+
+  /**
+   * Copies {@code nodes} (and everything within them) into a new instance; {@code nodes} are not
+   * modified.
+   */
+  static ArticleBody of(List<Node> nodes, String baseUri) {
+    Builder builder = new Builder(baseUri);
+    NodeTraversor traversor = new NodeTraversor(builder);
+    for (Node node : nodes) {
+      if (kindOf(node) >= 0) {
+        builder.startBlock();
+        traversor.traverse(node);
+      }
+    }
+    return new ArticleBody(builder);
+  }
+
+  public int blockCount() {
+    return blocks.length;
+  }
+
+  public BlockType blockType(int block) {
+    int node = blocks[block];
+    if (kinds[node] != ELEMENT_NODE) {
+      return kinds[node] == TEXT_NODE ? BlockType.TEXT : BlockType.OTHER;
+    }
+    BlockType type = BLOCK_TYPES.get(names[nameIds[node]]);
+    return type != null ? type : BlockType.OTHER;
+  }
+
+  /**
+   * @return the tag name of the block, or "" if it is not an element.
+   */
+  public String blockTagName(int block) {
+    int node = blocks[block];
+    return kinds[node] == ELEMENT_NODE ? names[nameIds[node]] : "";
+  }
+
+  /**
+   * @return the text of the block, exactly as it appears in its text nodes (i.e. whitespace is not
+   * normalized, as it is by {@link Element#text()}), without copying it.
+   */
+  public CharSequence blockText(int block) {
+    int node = blocks[block];
+    return CharBuffer.wrap(text, textStart[node], textEnd[node] - textStart[node]).asReadOnlyBuffer();
+  }
+
+  /**
+   * @return the elements within the block, in document order, with offsets into
+   * {@link #blockText(int)}.
+   */
+  public List<Span> spans(int block) {
+    int node = blocks[block];
+    if (subtreeEnds[node] == node + 1) {
+      return Collections.emptyList();
+    }
+    List<Span> spans = new ArrayList<>();
+    for (int descendant = node + 1; descendant < subtreeEnds[node]; descendant++) {
+      if (kinds[descendant] == ELEMENT_NODE) {
+        spans.add(new Span(this, descendant, textStart[node]));
+      }
+    }
+    return spans;
+  }
+
+  /**
+   * @return a new {@link Document} with the content, which the caller is free to modify.
+   */
+  public Document toDocument() {
+    Document document = new Document("");
+    int node = 0;
+    while (node < kinds.length) {
+      document.appendChild(toNode(node));
+      node = subtreeEnds[node];
+    }
+    return document;
+  }
+
+  /**
+   * @return the same value as {@code toDocument().html()}.
+   */
+  public String html() {
+    return toDocument().html();
+  }
+
+  @Override
+  public String toString() {
+    return "ArticleBody{blocks=" + blocks.length + ", nodes=" + kinds.length + ", textLength=" + text.length + '}';
+  }
+
+  /**
+   * Approximate number of bytes of heap retained by this instance (assuming compressed references),
+   * counting shared strings such as tag names & attribute keys as if they were not shared.
+   */
+  long estimatedSizeBytes() {
+    long size = 48 + sizeOf(baseUri) + sizeOfArray(text.length, 2) + sizeOfArray(blocks.length, 4)
+        + sizeOfArray(kinds.length, 1) + 4 * sizeOfArray(kinds.length, 4) + sizeOfArray(firstAttribute.length, 4)
+        + sizeOfArray(names.length, 4) + 2 * sizeOfArray(attributeKeys.length, 4);
+    for (String name : names) {
+      size += sizeOf(name);
+    }
+    for (int i = 0; i < attributeKeys.length; i++) {
+      size += sizeOf(attributeKeys[i]) + sizeOf(attributeValues[i]);
+    }
+    return size;
+  }
+
+  static long sizeOf(String string) {
+    return string == null ? 0 : 24 + sizeOfArray(string.length(), 2);
+  }
+
+  static long sizeOfArray(int length, int elementSize) {
+    return (16 + (long) length * elementSize + 7) & ~7L;
+  }
+
+  private Node toNode(int node) {
+    switch (kinds[node]) {
+      case TEXT_NODE:
+        return new TextNode(new String(text, textStart[node], textEnd[node] - textStart[node]), baseUri);
+      case COMMENT_NODE:
+        return new Comment(attributeValues[firstAttribute[node]], baseUri);
+      case DATA_NODE:
+        return new DataNode(attributeValues[firstAttribute[node]], baseUri);
+      default:
+        Attributes attributes = new Attributes();
+        for (int i = firstAttribute[node]; i < firstAttribute[node + 1]; i++) {
+          if (attributeValues[i] != null) {
+            attributes.put(attributeKeys[i], attributeValues[i]);
+          } else {
+            attributes.put(attributeKeys[i], true);
+          }
+        }
+        Element element = new Element(Tag.valueOf(names[nameIds[node]]), baseUri, attributes);
+        int child = node + 1;
+        while (child < subtreeEnds[node]) {
+          element.appendChild(toNode(child));
+          child = subtreeEnds[child];
+        }
+        return element;
+    }
+  }
+
+  private String attr(int node, String key) {
+    for (int i = firstAttribute[node]; i < firstAttribute[node + 1]; i++) {
+      if (key.equalsIgnoreCase(attributeKeys[i])) {
+        return attributeValues[i] != null ? attributeValues[i] : "";
+      }
+    }
+    return "";
+  }
+
+  /**
+   * @return the kind of node, or -1 for node types that cannot occur within a body (e.g. doctypes),
+   * which are skipped.
+   */
+  private static int kindOf(Node node) {
+    if (node instanceof TextNode) {
+      return TEXT_NODE;
+    } else if (node instanceof Element) {
+      return ELEMENT_NODE;
+    } else if (node instanceof Comment) {
+      return COMMENT_NODE;
+    } else if (node instanceof DataNode) {
+      return DATA_NODE;
+    }
+    return -1;
+  }
+
+  /**
+   * Records nodes in document order.
+   */
+  private static class Builder implements NodeVisitor {
+    private final String baseUri;
+    private final StringBuilder text = new StringBuilder();
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> nameIdsByName = new HashMap<>();
+    private final List<String> attributeKeys = new ArrayList<>();
+    private final List<String> attributeValues = new ArrayList<>();
+
+    private int blockCount = 0;
+    private int[] blocks = new int[64];
+
+    private int count = 0;
+    private byte[] kinds = new byte[256];
+    private int[] subtreeEnds = new int[256];
+    private int[] nameIds = new int[256];
+    private int[] textStart = new int[256];
+    private int[] textEnd = new int[256];
+    private int[] firstAttribute = new int[256 + 1];
+
+    /**
+     * Indices of the nodes that have been visited, but not yet completed.
+     */
+    private int[] open = new int[64];
+    private int depth = 0;
+
+    Builder(String baseUri) {
+      this.baseUri = baseUri;
+    }
+
+    void startBlock() {
+      if (blockCount == blocks.length) {
+        blocks = Arrays.copyOf(blocks, blockCount * 2);
+      }
+      blocks[blockCount++] = count;
+    }
+
+    @Override
+    public void head(Node node, int nodeDepth) {
+      int kind = kindOf(node);
+      if (kind < 0) {
+        return;
+      }
+
+      int index = add(kind);
+      textStart[index] = text.length();
+      if (kind == ELEMENT_NODE) {
+        Element element = (Element) node;
+        Integer nameId = nameIdsByName.get(element.tagName());
+        if (nameId == null) {
+          nameId = names.size();
+          names.add(element.tagName());
+          nameIdsByName.put(element.tagName(), nameId);
+        }
+        nameIds[index] = nameId;
+        for (Attribute attribute : element.attributes()) {
+          attributeKeys.add(attribute.getKey());
+          attributeValues.add(attribute instanceof BooleanAttribute ? null : attribute.getValue());
+        }
+      } else if (kind == TEXT_NODE) {
+        text.append(((TextNode) node).getWholeText());
+      } else {
+        attributeKeys.add(null);
+        attributeValues.add(kind == COMMENT_NODE ? ((Comment) node).getData() : ((DataNode) node).getWholeData());
+      }
+
+      if (depth == open.length) {
+        open = Arrays.copyOf(open, depth * 2);
+      }
+      open[depth++] = index;
+    }
+
+    @Override
+    public void tail(Node node, int nodeDepth) {
+      if (kindOf(node) >= 0) {
+        int index = open[--depth];
+        subtreeEnds[index] = count;
+        textEnd[index] = text.length();
+      }
+    }
+
+    private int add(int kind) {
+      if (count == kinds.length) {
+        int capacity = count * 2;
+        kinds = Arrays.copyOf(kinds, capacity);
+        subtreeEnds = Arrays.copyOf(subtreeEnds, capacity);
+        nameIds = Arrays.copyOf(nameIds, capacity);
+        textStart = Arrays.copyOf(textStart, capacity);
+        textEnd = Arrays.copyOf(textEnd, capacity);
+        firstAttribute = Arrays.copyOf(firstAttribute, capacity + 1);
+      }
+      kinds[count] = (byte) kind;
+      firstAttribute[count] = attributeKeys.size();
+      return count++;
+    }
+  }
+}
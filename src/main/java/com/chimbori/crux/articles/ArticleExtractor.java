@@ -1,20 +1,70 @@
 package com.chimbori.crux.articles;
 
+import com.chimbori.crux.articles.configuration.CompiledConfiguration;
 import com.chimbori.crux.articles.configuration.Configuration;
+import com.chimbori.crux.common.CharsetConverter;
 import com.chimbori.crux.common.StringUtils;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 
-import java.util.Collection;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.util.ArrayList;
+import java.util.List;
 
 public class ArticleExtractor {
   private final String url;
-  private final Document document;
+  private String html;
+  private Document document;
+
+  /**
+   * The source of {@link #html}, if it has not been read yet.
+   */
+  private HtmlStream stream = null;
   private final Article article;
 
-  private Configuration configuration = Configuration.standardConfiguration;
+  private CompiledConfiguration configuration = CompiledConfiguration.of(Configuration.standardConfiguration);
+  private boolean compactBody = false;
+  private SiteProfiles siteProfiles = null;
+  private BoilerplateFingerprints boilerplate = null;
+
+  /**
+   * Whether {@link #document} may be taken apart to build the output; always true for documents
+   * parsed by this extractor itself.
+   */
+  private boolean consumeDocument = true;
+
+  /**
+   * Whether {@link #document} must be left unmodified; see {@link #preserveDocument(boolean)}.
+   */
+  private boolean preserveDocument = false;
+
+  /**
+   * The number of words on the page, as {@link #extractContent()} would have left it had it been
+   * allowed to modify {@link #document}; -1 if it was.
+   */
+  private long preservedWordCount = -1;
+
+  /**
+   * Set once the article’s content has been moved out of {@link #document} into
+   * {@link Article#document}.
+   */
+  private boolean isContentMoved = false;
+
+  /**
+   * Created lazily for {@link #configuration}, unless one is supplied via {@link #reuse}.
+   */
+  private ExtractionScratch scratch = null;
+
+  /**
+   * Created lazily, and discarded whenever {@link #document} is modified.
+   */
+  private MetadataIndex metadataIndex = null;
 
   /**
    * Number of words that can be read by an average person in one minute.
@@ -26,7 +76,9 @@ public class ArticleExtractor {
    * non-empty.
    */
   private ArticleExtractor(String url, String html) {
-    this(url, Jsoup.parse(html));
+    this.url = url;
+    this.article = new Article(this.url);
+    this.html = html;
   }
 
   /**
@@ -37,7 +89,9 @@ public class ArticleExtractor {
   private ArticleExtractor(String url, Document document) {
     this.url = url;
     this.article = new Article(this.url);
+    this.html = null;
     this.document = document;
+    this.consumeDocument = false;
   }
 
   /**
@@ -51,73 +105,406 @@ public class ArticleExtractor {
     return new ArticleExtractor(url, html);
   }
 
+  /**
+   * Create an {@link ArticleExtractor} from the raw bytes of a page between {@code buffer}’s position
+   * & limit, such as a slice of a memory-mapped file. The encoding is detected from the bytes
+   * themselves (see {@link CharsetConverter#decode(ByteBuffer, String)}), and the page is decoded
+   * directly from the buffer. Unlike {@link CharsetConverter#readStream}, no size limit is applied.
+   *
+   * @param charsetHint the encoding declared by the transport, if known; may be null.
+   */
+  public static ArticleExtractor with(String url, ByteBuffer buffer, String charsetHint) {
+    return with(url, CharsetConverter.decode(buffer, charsetHint).content);
+  }
+
+  /**
+   * Create an {@link ArticleExtractor} that reads the page from {@code channel} as it is needed,
+   * decoding it chunk by chunk, instead of reading the entire page up front.
+   * <p>
+   * {@link #extractMetadataFromHead()} stops reading once the {@code <head>} has been read.
+   * {@link #extractContent()} stops reading shortly after the end of the article, skipping footers,
+   * comment sections, etc. (which also means that metadata declared only after the article, such as
+   * a theme color in the body, is not found). Pages without a recognizable article container are
+   * read completely. At most {@link CharsetConverter#DEFAULT_MAX_BYTES} are read in any case, and
+   * the channel is closed once reading stops. {@code channel} must be in blocking mode.
+   * <p>
+   * Whatever else depends on the part of the page that was not read may differ from extracting the
+   * same page as a {@link String}: {@link #estimateReadingTime()} only counts the words that were
+   * read, so it is lower if the footers, comments or related stories are long; and if the article
+   * itself has no images, only those of its enclosing element up to where reading stopped are found.
+   *
+   * @param contentType the {@code Content-Type} of the page (e.g. from an HTTP header), if known;
+   *                    may be null. See {@link CharsetConverter#readStream(InputStream, String)}.
+   * @throws IllegalArgumentException if {@code channel} is in non-blocking mode.
+   */
+  public static ArticleExtractor with(String url, ReadableByteChannel channel, String contentType) {
+    if (channel instanceof SelectableChannel && !((SelectableChannel) channel).isBlocking()) {
+      throw new IllegalArgumentException("channel must be in blocking mode");
+    }
+    ArticleExtractor extractor = new ArticleExtractor(url, (String) null);
+    extractor.stream = new HtmlStream(channel, contentType, CharsetConverter.DEFAULT_MAX_BYTES);
+    return extractor;
+  }
+
+  /**
+   * Create an {@link ArticleExtractor} that reads the page from {@code inputStream} as it is
+   * needed; see {@link #with(String, ReadableByteChannel, String)}.
+   */
+  public static ArticleExtractor with(String url, InputStream inputStream, String contentType) {
+    return with(url, Channels.newChannel(inputStream), contentType);
+  }
+
   /**
    * Create an {@link ArticleExtractor} from an already-parsed JSoup document, to be used when a
    * JSoup document has already been parsed outside this library, and saves a second duplicate
    * re-parse of the same content.
+   * <p>
+   * The document remains owned by the caller, but {@link #extractContent()} modifies it in place:
+   * elements that are unlikely to be content are removed, and those that remain are rewritten.
+   * Set {@link #preserveDocument(boolean)} if the original is needed afterwards.
+   * {@link Article#document} is a separate copy of the content, unless
+   * {@link #consumeDocument(boolean)} is set, in which case its nodes are moved out of
+   * {@code document}, which must then not be used any further.
    */
   public static ArticleExtractor with(String url, Document document) {
     return new ArticleExtractor(url, document);
   }
 
+  /**
+   * Sets the {@link Configuration} used by {@link #extractContent()}. The configuration is compiled
+   * into an immutable snapshot here, so any later changes to it are not picked up. To avoid
+   * re-compiling the same custom configuration for each page, pass a {@link CompiledConfiguration}.
+   */
   public ArticleExtractor configure(Configuration configuration) {
-    this.configuration = configuration;
+    this.configuration = CompiledConfiguration.of(configuration);
+    this.scratch = null;
+    return this;
+  }
+
+  /**
+   * If set, {@link #extractContent()} populates {@link Article#body} instead of
+   * {@link Article#document}; a {@link Document} can still be created from it when needed, using
+   * {@link ArticleBody#toDocument()}. Use this to keep many articles in memory.
+   */
+  public ArticleExtractor compactBody(boolean compactBody) {
+    this.compactBody = compactBody;
+    return this;
+  }
+
+  /**
+   * Lets {@link #extractContent()} look for the article where it was found on earlier pages from the
+   * same site, before scoring the page, and records where it was found on this one.
+   */
+  public ArticleExtractor siteProfiles(SiteProfiles siteProfiles) {
+    this.siteProfiles = siteProfiles;
+    return this;
+  }
+
+  /**
+   * Lets {@link #extractContent()} remove blocks seen on many other pages from the same site
+   * (navigation, footers, etc.) before scoring the page, and records the blocks of this one.
+   */
+  public ArticleExtractor boilerplate(BoilerplateFingerprints boilerplate) {
+    this.boilerplate = boilerplate;
+    return this;
+  }
+
+  /**
+   * Lets {@link #extractContent()} move the content out of the document passed to
+   * {@link #with(String, Document)} into {@link Article#document}, instead of copying it, which
+   * avoids holding two copies of the content in memory at once. Documents that this extractor
+   * parses itself are always consumed this way, since they are never visible to the caller.
+   */
+  public ArticleExtractor consumeDocument(boolean consumeDocument) {
+    this.consumeDocument = consumeDocument;
+    return this;
+  }
+
+  /**
+   * If set, {@link #extractContent()} leaves the document passed to {@link #with(String, Document)}
+   * exactly as it was, so that it can be extracted from again (e.g. with another configuration), or
+   * used for anything else. Nodes that would have been removed before scoring are only recorded as
+   * removed, and scoring skips them; only the best match is then copied (without those nodes) to be
+   * cleaned up into {@link Article#document}. Takes precedence over
+   * {@link #consumeDocument(boolean)}. The result is the same either way.
+   */
+  public ArticleExtractor preserveDocument(boolean preserveDocument) {
+    this.preserveDocument = preserveDocument;
+    return this;
+  }
+
+  /**
+   * Uses {@code scratch} (and its configuration) for {@link #extractContent()}, instead of creating
+   * new helpers for this page alone.
+   */
+  ArticleExtractor reuse(ExtractionScratch scratch) {
+    this.configuration = scratch.configuration;
+    this.scratch = scratch;
     return this;
   }
 
   public ArticleExtractor extractMetadata() {
-    article.title = MetadataHelpers.extractTitle(document);
-    article.description = MetadataHelpers.extractDescription(document);
-    article.siteName = MetadataHelpers.extractSiteName(document);
-    article.themeColor = MetadataHelpers.extractThemeColor(document);
-    article.canonicalUrl = StringUtils.makeAbsoluteUrl(article.url, MetadataHelpers.extractCanonicalUrl(document));
-    article.ampUrl = StringUtils.makeAbsoluteUrl(article.url, MetadataHelpers.extractAmpUrl(document));
-    article.feedUrl = StringUtils.makeAbsoluteUrl(article.url, MetadataHelpers.extractFeedUrl(document));
-    article.videoUrl = StringUtils.makeAbsoluteUrl(article.url, MetadataHelpers.extractVideoUrl(document));
-    article.faviconUrl = StringUtils.makeAbsoluteUrl(article.url, MetadataHelpers.extractFaviconUrl(document));
-    article.keywords = MetadataHelpers.extractKeywords(document);
+    populateMetadata(article, metadataIndex());
+    return this;
+  }
+
+  /**
+   * Populates the same fields as {@link #extractMetadata()}, as well as {@link Article#imageUrl},
+   * by parsing only the {@code <head>} of the page, which is much cheaper than parsing all of it.
+   * Metadata that is only declared within the body of the page (such as a theme color or an AMP
+   * link) is not found.
+   * <p>
+   * If the page does not declare a preview image (via Twitter Cards or Open Graph), then the best
+   * image can only be found in the article itself, so this falls back to parsing the entire page
+   * and performing both {@link #extractMetadata()} and {@link #extractContent()}.
+   */
+  public ArticleExtractor extractMetadataFromHead() {
+    MetadataIndex metadata;
+    if (document != null) {
+      metadata = metadataIndex();
+    } else if (html == null) {
+      metadata = MetadataIndex.of(Jsoup.parse(stream.readHead()));
+    } else {
+      metadata = MetadataIndex.of(Jsoup.parse(html.substring(0, HeadScanner.endOfHead(html))));
+    }
+    String previewImageUrl = MetadataHelpers.extractPreviewImageUrl(metadata);
+    if (previewImageUrl.isEmpty()) {
+      return extractMetadata().extractContent();
+    }
+    populateMetadata(article, metadata);
+    article.imageUrl = StringUtils.makeAbsoluteUrl(article.url, previewImageUrl);
     return this;
   }
 
+  private static void populateMetadata(Article article, MetadataIndex metadata) {
+    article.title = MetadataHelpers.extractTitle(metadata);
+    article.description = MetadataHelpers.extractDescription(metadata);
+    article.siteName = MetadataHelpers.extractSiteName(metadata);
+    article.themeColor = MetadataHelpers.extractThemeColor(metadata);
+    article.canonicalUrl = StringUtils.makeAbsoluteUrl(article.url, MetadataHelpers.extractCanonicalUrl(metadata));
+    article.ampUrl = StringUtils.makeAbsoluteUrl(article.url, MetadataHelpers.extractAmpUrl(metadata));
+    article.feedUrl = StringUtils.makeAbsoluteUrl(article.url, MetadataHelpers.extractFeedUrl(metadata));
+    article.videoUrl = StringUtils.makeAbsoluteUrl(article.url, MetadataHelpers.extractVideoUrl(metadata));
+    article.faviconUrl = StringUtils.makeAbsoluteUrl(article.url, MetadataHelpers.extractFaviconUrl(metadata));
+    article.keywords = MetadataHelpers.extractKeywords(metadata);
+  }
+
   public ArticleExtractor extractContent() {
-    ExtractionHelpers extractionHelpers = ExtractionHelpers.configure(configuration);
-    PreprocessHelpers preprocessHelpers = PreprocessHelpers.configure(configuration);
-    PostprocessHelpers postprocessHelpers = PostprocessHelpers.configure(configuration);
-
-    preprocessHelpers.preprocess(document);
-
-    Collection<Element> nodes = extractionHelpers.getNodes(document);
-    int maxWeight = 0;
-    Element bestMatchElement = null;
-    for (Element element : nodes) {
-      int currentWeight = extractionHelpers.getWeight(element);
-      if (currentWeight > maxWeight) {
-        maxWeight = currentWeight;
-        bestMatchElement = element;
-        if (maxWeight > 200) {
+    if (scratch == null) {
+      scratch = new ExtractionScratch(configuration);
+    }
+    DocumentOverlay overlay = preserveDocument ? new DocumentOverlay(configuration.strippedNodeNames()) : null;
+    scratch.preprocessHelpers.preprocess(document(), url, boilerplate, overlay);
+    if (overlay == null) {
+      metadataIndex = null;  // Pre-processing may have removed some of the indexed elements.
+    }
+
+    TextStatistics textStatistics = TextStatistics.of(document.body(), overlay);
+    Element bestMatchElement = findBestMatch(scratch, textStatistics);
+    preservedWordCount = extractContent(article, scratch.postprocessHelpers, scratch.scores, bestMatchElement,
+        textStatistics, overlay);
+    isContentMoved = overlay == null && !compactBody && consumeDocument;
+    scratch.scores.clear();
+    return this;
+  }
+
+  /**
+   * Extracts the page once for each of {@code configurations}, with the same result as calling
+   * {@code configure(configuration).extractMetadata().extractContent().estimateReadingTime()} on a
+   * separate extractor for each, but without parsing, preprocessing, measuring or indexing the
+   * metadata of the page more than once. Configurations that only differ in how the content is
+   * cleaned up (e.g. in {@link Configuration#retainTags()} or
+   * {@link Configuration#minLengthForParagraphs()}) also share a single scoring pass; only
+   * postprocessing is repeated for each of them.
+   * <p>
+   * The document is left unmodified, as with {@link #preserveDocument(boolean)}. Boilerplate (see
+   * {@link #boilerplate(BoilerplateFingerprints)}) is recognized once, using the first
+   * configuration. {@link #article()} is not affected.
+   *
+   * @return one {@link Article} per configuration, in the same order.
+   */
+  public List<Article> extractAll(List<? extends Configuration> configurations) {
+    MetadataIndex metadata = metadataIndex();
+    List<ScoringPass> passes = new ArrayList<>();
+    List<Article> articles = new ArrayList<>(configurations.size());
+    for (Configuration each : configurations) {
+      CompiledConfiguration compiledConfiguration = CompiledConfiguration.of(each);
+      ScoringPass pass = null;
+      for (ScoringPass existing : passes) {
+        if (existing.scratch.configuration.scoresLike(compiledConfiguration)) {
+          pass = existing;
           break;
         }
       }
+      if (pass == null) {
+        pass = score(compiledConfiguration, passes);
+        passes.add(pass);
+      }
+
+      PostprocessHelpers postprocessHelpers = pass.scratch.configuration == compiledConfiguration
+          ? pass.scratch.postprocessHelpers
+          : PostprocessHelpers.configure(compiledConfiguration);
+      Article result = new Article(url);
+      populateMetadata(result, metadata);
+      long wordCount = extractContent(result, postprocessHelpers, pass.scratch.scores, pass.bestMatchElement,
+          pass.textStatistics, pass.overlay);
+      result.estimatedReadingTimeMinutes = readingTimeMinutes(wordCount);
+      articles.add(result);
     }
+    for (ScoringPass pass : passes) {
+      pass.scratch.scores.clear();
+    }
+    return articles;
+  }
+
+  /**
+   * The best match found by one configuration in {@link #extractAll(List)}, and what it was found
+   * with, which is shared with all other configurations that score alike.
+   */
+  private static final class ScoringPass {
+    private ExtractionScratch scratch;
+    private DocumentOverlay overlay;
+    private TextStatistics textStatistics;
+    private Element bestMatchElement;
+  }
 
+  /**
+   * Scores the page with {@code compiledConfiguration}, reusing the preprocessing & text statistics
+   * of earlier {@code passes} where possible.
+   */
+  private ScoringPass score(CompiledConfiguration compiledConfiguration, List<ScoringPass> passes) {
+    ScoringPass pass = new ScoringPass();
+    pass.scratch = scratch != null && scratch.configuration == compiledConfiguration
+        ? scratch
+        : new ExtractionScratch(compiledConfiguration);
+    if (passes.isEmpty()) {
+      pass.overlay = new DocumentOverlay(compiledConfiguration.strippedNodeNames());
+      pass.scratch.preprocessHelpers.preprocess(document(), url, boilerplate, pass.overlay);
+    } else {
+      pass.overlay = passes.get(0).overlay.withStrippedNodeNames(compiledConfiguration.strippedNodeNames());
+      for (ScoringPass existing : passes) {
+        if (existing.overlay == pass.overlay) {
+          pass.textStatistics = existing.textStatistics;
+          break;
+        }
+      }
+    }
+    if (pass.textStatistics == null) {
+      pass.textStatistics = TextStatistics.of(document.body(), pass.overlay);
+    }
+    pass.bestMatchElement = findBestMatch(pass.scratch, pass.textStatistics);
+    return pass;
+  }
+
+  private Element findBestMatch(ExtractionScratch scratch, TextStatistics textStatistics) {
+    DomTree tree = DomTree.of(textStatistics);
+    ExtractionHelpers extractionHelpers = ExtractionHelpers.configure(scratch.configuration, scratch.scores, tree);
+    String host = siteProfiles != null ? SiteProfiles.hostOf(url) : null;
+    if (host == null) {
+      return extractionHelpers.findBestMatch();
+    }
+
+    ContentLocator locator = siteProfiles.get(host);
+    if (locator != null) {
+      Element candidate = locator.find(document.body());
+      int node = candidate != null ? textStatistics.indexOf(candidate) : -1;
+      if (node >= 0 && extractionHelpers.isClearMatch(node)) {
+        siteProfiles.recordHit();
+        return candidate;
+      }
+      siteProfiles.recordMiss();
+      scratch.scores.clear();
+    }
+
+    Element bestMatchElement = extractionHelpers.findBestMatch();
+    if (bestMatchElement != null) {
+      ContentLocator learned = ContentLocator.of(document.body(), bestMatchElement);
+      if (learned != null) {
+        siteProfiles.put(host, learned);
+      }
+    }
+    return bestMatchElement;
+  }
+
+  /**
+   * Populates the content of {@code target} from {@code bestMatchElement}, which is first copied
+   * (leaving out nodes removed in {@code overlay}) if {@code overlay} is set.
+   *
+   * @return the number of words on the page, as it would have been left without {@code overlay},
+   * or -1 if {@code overlay} is not set.
+   */
+  private long extractContent(Article target, PostprocessHelpers postprocessHelpers, GravityScores scores,
+                              Element bestMatchElement, TextStatistics textStatistics, DocumentOverlay overlay) {
     // Extract images before post-processing, because that step may remove images.
-    article.images = ImageHelpers.extractImages(bestMatchElement);
-    article.document = postprocessHelpers.postprocess(bestMatchElement, article.images);
-    article.imageUrl = StringUtils.makeAbsoluteUrl(article.url, MetadataHelpers.extractImageUrl(document, article.images));
-    return this;
+    target.images = ImageHelpers.extractImages(bestMatchElement, overlay);
+    long wordCount = -1;
+    if (overlay != null) {
+      wordCount = countWords(document.head().text()) + countWords(bestMatchElement != null
+          ? textStatistics.textOutside(bestMatchElement)
+          : textStatistics.text(document.body()));
+      if (bestMatchElement != null) {
+        bestMatchElement = overlay.copyRetained(bestMatchElement, scores, target.images);
+        textStatistics = TextStatistics.of(bestMatchElement);
+      }
+    }
+    if (compactBody) {
+      target.body = postprocessHelpers.postprocessIntoBody(bestMatchElement, target.images, scores, textStatistics);
+      if (overlay != null && bestMatchElement != null) {
+        wordCount += countWords(bestMatchElement.text());
+      }
+    } else {
+      target.document = postprocessHelpers.postprocess(bestMatchElement, target.images, scores, textStatistics,
+          consumeDocument || overlay != null);
+      if (overlay != null) {
+        wordCount += countWords(target.document.text());
+      }
+    }
+    target.imageUrl = StringUtils.makeAbsoluteUrl(target.url, MetadataHelpers.extractImageUrl(metadataIndex(), target.images));
+    return wordCount;
   }
 
   /**
    * Populates {@link Article#estimatedReadingTimeMinutes} based on the parsed content. This method
-   * must only be called after {@link #extractContent()} has already been performed.
+   * must only be called after {@link #extractContent()} has already been performed. For a page read
+   * from a stream, only the part that was read is counted; see
+   * {@link #with(String, ReadableByteChannel, String)}.
    */
   public ArticleExtractor estimateReadingTime() {
     // TODO: Consider handling badly-punctuated text such as missing spaces after periods.
-    long wordCount = document.text().split("\\s+").length;
-    article.estimatedReadingTimeMinutes = (int) Math.ceil(wordCount / AVERAGE_WORDS_PER_MINUTE);
+    long wordCount = preservedWordCount >= 0 ? preservedWordCount : countWords(document().text());
+    if (isContentMoved) {
+      wordCount += countWords(article.document.text());  // No longer part of the page itself.
+    }
+    article.estimatedReadingTimeMinutes = readingTimeMinutes(wordCount);
     return this;
   }
 
+  private static int readingTimeMinutes(long wordCount) {
+    return (int) Math.ceil(wordCount / AVERAGE_WORDS_PER_MINUTE);
+  }
+
+  private static int countWords(String text) {
+    return text.isEmpty() ? 0 : text.split("\\s+").length;
+  }
+
+  private Document document() {
+    if (document == null) {
+      if (html == null) {
+        html = stream.readContent(configuration);
+        stream = null;
+      }
+      document = Jsoup.parse(html);
+    }
+    return document;
+  }
+
+  private MetadataIndex metadataIndex() {
+    if (metadataIndex == null) {
+      metadataIndex = MetadataIndex.of(document());
+    }
+    return metadataIndex;
+  }
+
   public Article article() {
     return article;
   }
@@ -0,0 +1,442 @@
+package com.chimbori.crux.articles;
+
+import com.chimbori.crux.articles.configuration.CompiledConfiguration;
+import com.chimbori.crux.articles.configuration.Configuration;
+import com.chimbori.crux.common.CharsetConverter;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Extracts {@link Article}s from many pages concurrently, on a fixed number of worker threads.
+ * <p>
+ * Inputs are pulled from the caller’s {@link Iterator} only as fast as results are consumed: no
+ * more than {@code workers + queueCapacity} pages are ever in flight, so arbitrarily long (or
+ * slow) input sequences can be processed in bounded memory. Each worker thread reuses its own
+ * helpers & working storage across pages, and the {@link Configuration} is compiled only once
+ * for the entire batch.
+ *
+ * <pre>
+ * BatchArticleExtractor extractor = BatchArticleExtractor.withWorkers(4).queueCapacity(16);
+ * BatchArticleExtractor.Batch batch = extractor.extract(inputs);
+ * while (batch.hasNext()) {
+ *   BatchArticleExtractor.Result result = batch.next();
+ *   // Use result.article, or inspect result.error.
+ * }
+ * Log.i("%s", batch.stats);
+ * extractor.close();
+ * </pre>
+ */
+public final class BatchArticleExtractor implements Closeable {
+  /**
+   * The order in which results are delivered.
+   */
+  public enum Order {
+    /**
+     * Results are delivered in the same order as their inputs. A slow page holds back the delivery
+     * of results for later pages (but not their extraction).
+     */
+    INPUT,
+
+    /**
+     * Results are delivered as soon as they are ready.
+     */
+    COMPLETION
+  }
+
+  /**
+   * A page to extract, as either an HTML string or raw bytes in any encoding.
+   */
+  public static final class Input {
+    public final String url;
+    public final String html;
+    public final byte[] bytes;
+
+    private Input(String url, String html, byte[] bytes) {
+      this.url = url;
+      this.html = html;
+      this.bytes = bytes;
+    }
+
+    public static Input html(String url, String html) {
+      return new Input(url, html, null);
+    }
+
+    /**
+     * The encoding of {@code bytes} is detected from the page itself.
+     */
+    public static Input bytes(String url, byte[] bytes) {
+      return new Input(url, null, bytes);
+    }
+  }
+
+  /**
+   * The outcome of extracting a single {@link Input}: exactly one of {@link #article} and
+   * {@link #error} is non-null.
+   */
+  public static final class Result {
+    public final Input input;
+    public final Article article;
+    public final Exception error;
+
+    /**
+     * Time from when the input was accepted into the batch until its extraction completed,
+     * including any time spent waiting in the queue.
+     */
+    public final long latencyNanos;
+
+    private Result(Input input, Article article, Exception error, long latencyNanos) {
+      this.input = input;
+      this.article = article;
+      this.error = error;
+      this.latencyNanos = latencyNanos;
+    }
+  }
+
+  public interface Callback {
+    /**
+     * Called on the thread that invoked {@link #extract(Iterator, Callback)}, once for each input.
+     */
+    void onResult(Result result);
+  }
+
+  /**
+   * Counters for a single batch, updated as each result is delivered to the caller. Not
+   * thread-safe: read them from the thread consuming the results.
+   */
+  public static final class Stats {
+    private final long startNanos = System.nanoTime();
+    private long endNanos = startNanos;
+
+    private int succeeded = 0;
+    private int failed = 0;
+    private long totalLatencyNanos = 0;
+    private long maxLatencyNanos = 0;
+
+    private void record(Result result) {
+      if (result.error == null) {
+        succeeded++;
+      } else {
+        failed++;
+      }
+      totalLatencyNanos += result.latencyNanos;
+      maxLatencyNanos = Math.max(maxLatencyNanos, result.latencyNanos);
+      endNanos = System.nanoTime();
+    }
+
+    public int succeeded() {
+      return succeeded;
+    }
+
+    public int failed() {
+      return failed;
+    }
+
+    public int completed() {
+      return succeeded + failed;
+    }
+
+    public long maxLatencyNanos() {
+      return maxLatencyNanos;
+    }
+
+    /**
+     * Time from the start of the batch until the most recent result was delivered.
+     */
+    public long elapsedNanos() {
+      return endNanos - startNanos;
+    }
+
+    public double pagesPerSecond() {
+      return elapsedNanos() > 0 ? completed() * 1e9 / elapsedNanos() : 0;
+    }
+
+    public double averageLatencyMillis() {
+      return completed() > 0 ? totalLatencyNanos / 1e6 / completed() : 0;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Stats{succeeded=%d, failed=%d, pagesPerSecond=%.1f, averageLatencyMillis=%.2f, maxLatencyMillis=%.2f}",
+          succeeded, failed, pagesPerSecond(), averageLatencyMillis(), maxLatencyNanos / 1e6);
+    }
+  }
+
+  private final int workers;
+  private int queueCapacity;
+  private CompiledConfiguration configuration = CompiledConfiguration.of(Configuration.standardConfiguration);
+  private Order order = Order.INPUT;
+  private boolean metadataOnly = false;
+  private boolean compactBody = false;
+  private SiteProfiles siteProfiles = null;
+  private BoilerplateFingerprints boilerplate = null;
+
+  private ThreadPoolExecutor executor = null;
+  private ThreadLocal<ExtractionScratch> scratch = null;
+
+  private BatchArticleExtractor(int workers) {
+    this.workers = workers;
+    this.queueCapacity = workers * 2;
+  }
+
+  public static BatchArticleExtractor withWorkers(int workers) {
+    if (workers < 1) {
+      throw new IllegalArgumentException("workers: " + workers);
+    }
+    return new BatchArticleExtractor(workers);
+  }
+
+  /**
+   * Sets the number of inputs that may wait for a free worker, in addition to those being
+   * processed. Defaults to twice the number of workers.
+   */
+  public BatchArticleExtractor queueCapacity(int queueCapacity) {
+    if (queueCapacity < 0) {
+      throw new IllegalArgumentException("queueCapacity: " + queueCapacity);
+    }
+    checkNotStarted();
+    this.queueCapacity = queueCapacity;
+    return this;
+  }
+
+  /**
+   * @see ArticleExtractor#configure(Configuration)
+   */
+  public BatchArticleExtractor configure(Configuration configuration) {
+    checkNotStarted();
+    this.configuration = CompiledConfiguration.of(configuration);
+    return this;
+  }
+
+  public BatchArticleExtractor order(Order order) {
+    this.order = order;
+    return this;
+  }
+
+  /**
+   * @see ArticleExtractor#compactBody(boolean)
+   */
+  public BatchArticleExtractor compactBody(boolean compactBody) {
+    this.compactBody = compactBody;
+    return this;
+  }
+
+  /**
+   * @see ArticleExtractor#siteProfiles(SiteProfiles)
+   */
+  public BatchArticleExtractor siteProfiles(SiteProfiles siteProfiles) {
+    this.siteProfiles = siteProfiles;
+    return this;
+  }
+
+  /**
+   * @see ArticleExtractor#boilerplate(BoilerplateFingerprints)
+   */
+  public BatchArticleExtractor boilerplate(BoilerplateFingerprints boilerplate) {
+    this.boilerplate = boilerplate;
+    return this;
+  }
+
+  /**
+   * If set, each page is processed using {@link ArticleExtractor#extractMetadataFromHead()};
+   * otherwise, using {@link ArticleExtractor#extractMetadata()},
+   * {@link ArticleExtractor#extractContent()} & {@link ArticleExtractor#estimateReadingTime()}.
+   */
+  public BatchArticleExtractor metadataOnly(boolean metadataOnly) {
+    this.metadataOnly = metadataOnly;
+    return this;
+  }
+
+  /**
+   * Starts extracting {@code inputs}; results are delivered via the returned {@link Batch}, which
+   * pulls further inputs as results are consumed from it. The worker threads are started on first
+   * use, and are kept until {@link #close()}.
+   */
+  public synchronized Batch extract(Iterator<Input> inputs) {
+    if (executor == null) {
+      executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<Runnable>(Math.max(1, queueCapacity)),
+          new WorkerThreadFactory(),
+          // Only reached when several batches are running at the same time; running the page on the
+          // submitting thread slows down that submitter, which is exactly the intended backpressure.
+          new ThreadPoolExecutor.CallerRunsPolicy());
+      scratch = new ThreadLocal<>();
+    }
+    return new Batch(inputs, order, metadataOnly);
+  }
+
+  /**
+   * Extracts all {@code inputs}, and blocks until every result has been passed to {@code callback}.
+   */
+  public Stats extract(Iterator<Input> inputs, Callback callback) {
+    Batch batch = extract(inputs);
+    while (batch.hasNext()) {
+      callback.onResult(batch.next());
+    }
+    return batch.stats;
+  }
+
+  /**
+   * Stops the worker threads once all submitted pages have been processed.
+   */
+  @Override
+  public synchronized void close() {
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+
+  private void checkNotStarted() {
+    if (executor != null) {
+      throw new IllegalStateException("Already started");
+    }
+  }
+
+  private Result process(Input input, boolean metadataOnly, long acceptedNanos) {
+    try {
+      ExtractionScratch threadScratch = scratch.get();
+      if (threadScratch == null) {
+        threadScratch = new ExtractionScratch(configuration);
+        scratch.set(threadScratch);
+      }
+
+      String html = input.html;
+      if (html == null) {
+        // Equivalent to CharsetConverter.readStream(), without copying the bytes into a new buffer.
+        int length = Math.min(input.bytes.length, CharsetConverter.DEFAULT_MAX_BYTES);
+        html = CharsetConverter.decode(input.bytes, 0, length, null).content;
+      }
+
+      ArticleExtractor extractor = ArticleExtractor.with(input.url, html)
+          .reuse(threadScratch)
+          .compactBody(compactBody)
+          .siteProfiles(siteProfiles)
+          .boilerplate(boilerplate);
+      Article article = metadataOnly
+          ? extractor.extractMetadataFromHead().article()
+          : extractor.extractMetadata().extractContent().estimateReadingTime().article();
+      return new Result(input, article, null, System.nanoTime() - acceptedNanos);
+
+    } catch (Exception e) {
+      scratch.remove();  // A failed extraction may have left it in an inconsistent state.
+      return new Result(input, null, e, System.nanoTime() - acceptedNanos);
+    }
+  }
+
+  /**
+   * The results of a single call to {@link #extract(Iterator)}. Must be consumed from a single
+   * thread.
+   */
+  public final class Batch implements Iterator<Result> {
+    public final Stats stats = new Stats();
+
+    private final Iterator<Input> inputs;
+    private final Order order;
+    private final boolean metadataOnly;
+    private final int maxInFlight = workers + queueCapacity;
+
+    /**
+     * Pages that have been accepted but not yet delivered, in input order.
+     */
+    private final ArrayDeque<Future<Result>> pending = new ArrayDeque<>();
+    private final CompletionService<Result> completed;
+    private boolean isCancelled = false;
+
+    private Batch(Iterator<Input> inputs, Order order, boolean metadataOnly) {
+      this.inputs = inputs;
+      this.order = order;
+      this.metadataOnly = metadataOnly;
+      this.completed = new ExecutorCompletionService<>(executor);
+    }
+
+    @Override
+    public boolean hasNext() {
+      fill();
+      return !pending.isEmpty();
+    }
+
+    @Override
+    public Result next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      try {
+        Future<Result> future;
+        if (order == Order.INPUT) {
+          future = pending.removeFirst();
+        } else {
+          future = completed.take();
+          pending.remove(future);
+        }
+        Result result = future.get();
+        stats.record(result);
+        return result;
+
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        cancel();
+        throw new IllegalStateException("Interrupted while waiting for results", e);
+      } catch (ExecutionException e) {
+        // Extraction failures are reported via Result#error, so only Errors end up here.
+        cancel();
+        throw new IllegalStateException(e.getCause());
+      }
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Cancels all pages that have been accepted but not yet delivered; no further inputs are read.
+     */
+    public void cancel() {
+      for (Future<Result> future : pending) {
+        future.cancel(false);
+      }
+      pending.clear();
+      isCancelled = true;
+    }
+
+    private void fill() {
+      while (!isCancelled && pending.size() < maxInFlight && inputs.hasNext()) {
+        final Input input = inputs.next();
+        final long acceptedNanos = System.nanoTime();
+        Callable<Result> task = new Callable<Result>() {
+          @Override
+          public Result call() {
+            return process(input, metadataOnly, acceptedNanos);
+          }
+        };
+        pending.addLast(order == Order.INPUT ? executor.submit(task) : completed.submit(task));
+      }
+    }
+  }
+
+  private static class WorkerThreadFactory implements ThreadFactory {
+    private static final AtomicInteger poolCount = new AtomicInteger();
+
+    private final int pool = poolCount.incrementAndGet();
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "crux-batch-" + pool + "-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
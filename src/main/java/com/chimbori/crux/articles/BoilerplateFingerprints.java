@@ -0,0 +1,322 @@
+package com.chimbori.crux.articles;
+
+import com.chimbori.crux.common.FrequencySketch;
+import com.chimbori.crux.common.Log;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Recognizes blocks that a site repeats on many of its pages (navigation, footers, cookie banners,
+ * etc.), so that they can be removed before the page is scored.
+ * <p>
+ * Each block (a {@code div}, {@code nav}, {@code ul}, etc. with at least a few words of text) is
+ * identified by a fingerprint: a hash of its tag structure and of its text, normalized so that case,
+ * whitespace & digits (dates, counters) don’t matter. The number of distinct pages of each site on
+ * which each fingerprint was seen is estimated by a single {@link FrequencySketch} shared by all
+ * sites, so memory use is fixed up front, no matter how many sites & pages are seen. Counts are
+ * halved periodically, so that blocks which are no longer used are gradually forgotten.
+ * <p>
+ * A block is removed once it has been seen on {@link #minPages(int)} other pages of the same site,
+ * unless it holds at least half of the page’s text. The URLs of the most recently recorded
+ * {@link #rememberedPages(int)} pages are kept (as 64-bit hashes, apart from the sketch), and their
+ * blocks are not counted again when they are re-fetched, so that re-fetching a page does not make
+ * its own content look like boilerplate; a page that has since been forgotten is counted again.
+ * Instances are thread-safe, and can be shared by many extractors, including those of a
+ * {@link BatchArticleExtractor}.
+ */
+public final class BoilerplateFingerprints {
+  private static final Set<String> BLOCK_TAGS = new HashSet<>(Arrays.asList(
+      "div", "section", "nav", "header", "footer", "aside", "ul", "ol", "table", "form"
+  ));
+
+  /**
+   * Blocks with fewer words are too generic to be told apart by their text.
+   */
+  private static final int MIN_WORDS = 4;
+
+  private final FrequencySketch sketch;
+  private final LinkedHashSet<Long> recordedPages = new LinkedHashSet<>();
+  private int minPages = 8;
+  private int rememberedPages = 64 * 1024;
+
+  private long pageCount = 0;
+  private long removedCount = 0;
+
+  private BoilerplateFingerprints(int expectedBlocks) {
+    sketch = new FrequencySketch(expectedBlocks);
+  }
+
+  /**
+   * @param expectedBlocks the number of distinct blocks (across all sites) to keep track of at
+   *                       once. The store takes about 8 bytes per expected block.
+   */
+  public static BoilerplateFingerprints withCapacity(int expectedBlocks) {
+    if (expectedBlocks < 1) {
+      throw new IllegalArgumentException("expectedBlocks: " + expectedBlocks);
+    }
+    return new BoilerplateFingerprints(expectedBlocks);
+  }
+
+  /**
+   * Sets the number of other pages of a site that a block must have been seen on to be removed;
+   * between 1 and {@link FrequencySketch#MAX_FREQUENCY}. Defaults to 8.
+   */
+  public synchronized BoilerplateFingerprints minPages(int minPages) {
+    if (minPages < 1 || minPages > FrequencySketch.MAX_FREQUENCY) {
+      throw new IllegalArgumentException("minPages: " + minPages);
+    }
+    this.minPages = minPages;
+    return this;
+  }
+
+  /**
+   * Sets the number of recently recorded pages whose URLs are remembered, so that their blocks are
+   * not counted again if they are re-fetched. Each takes about 80 bytes. Defaults to 65536.
+   */
+  public synchronized BoilerplateFingerprints rememberedPages(int rememberedPages) {
+    if (rememberedPages < 1) {
+      throw new IllegalArgumentException("rememberedPages: " + rememberedPages);
+    }
+    this.rememberedPages = rememberedPages;
+    while (recordedPages.size() > rememberedPages) {
+      forgetOldestPage();
+    }
+    return this;
+  }
+
+  /**
+   * Number of pages whose blocks have been recorded.
+   */
+  public synchronized long pageCount() {
+    return pageCount;
+  }
+
+  /**
+   * Number of blocks removed from pages as boilerplate.
+   */
+  public synchronized long removedCount() {
+    return removedCount;
+  }
+
+  /**
+   * Removes the blocks of {@code root} that were seen on enough other pages of {@code host}, and
+   * records the blocks of this page, unless {@code url} is one of the pages remembered.
+   *
+   * @param overlay if set, nodes already removed in it are skipped, and blocks are removed in it
+   *                instead of from the tree.
+   */
+  void removeBoilerplate(Element root, String host, String url, DocumentOverlay overlay) {
+    Fingerprinter fingerprinter = new Fingerprinter(mix(host.hashCode(), 0), overlay);
+    new NodeTraversor(fingerprinter).traverse(root);
+    int blockCount = fingerprinter.blocks.size();
+    Long pageKey = hash(url);
+
+    boolean[] isBoilerplate = new boolean[blockCount];
+    synchronized (this) {
+      // If this page was recorded before, its own blocks have been counted once already.
+      boolean isRecorded = recordedPages.remove(pageKey);
+      recordedPages.add(pageKey);  // Most recently recorded (or re-fetched) pages last.
+      int threshold = isRecorded ? minPages + 1 : minPages;
+      for (int i = 0; i < blockCount; i++) {
+        isBoilerplate[i] = sketch.frequency(fingerprinter.fingerprints[i]) >= threshold;
+      }
+      if (!isRecorded) {
+        if (recordedPages.size() > rememberedPages) {
+          forgetOldestPage();
+        }
+        pageCount++;
+        Set<Long> recorded = new HashSet<>();
+        for (int i = 0; i < blockCount; i++) {
+          if (recorded.add(fingerprinter.fingerprints[i])) {
+            sketch.increment(fingerprinter.fingerprints[i]);
+          }
+        }
+      }
+    }
+
+    // Blocks are listed in post-order, so going backwards reaches each block before the blocks
+    // within it, which follow it with greater pre-order indices.
+    int removedUntil = Integer.MAX_VALUE;
+    int removed = 0;
+    for (int i = blockCount - 1; i >= 0; i--) {
+      if (fingerprinter.preOrderIndices[i] > removedUntil) {
+        continue;
+      }
+      removedUntil = Integer.MAX_VALUE;
+      if (isBoilerplate[i] && fingerprinter.textLengths[i] * 2 < fingerprinter.rootTextLength) {
+        if (overlay != null) {
+          overlay.remove(fingerprinter.blocks.get(i), "removeBoilerplate");
+        } else {
+          Log.printAndRemove(fingerprinter.blocks.get(i), "removeBoilerplate");
+        }
+        removedUntil = fingerprinter.preOrderIndices[i];
+        removed++;
+      }
+    }
+    synchronized (this) {
+      removedCount += removed;
+    }
+  }
+
+  private void forgetOldestPage() {
+    Iterator<Long> oldest = recordedPages.iterator();
+    oldest.next();
+    oldest.remove();
+  }
+
+  /**
+   * Hashes every element bottom-up in a single walk, keeping those of blocks.
+   */
+  private static final class Fingerprinter implements NodeVisitor {
+    private final long seed;
+    private final DocumentOverlay overlay;
+    private Node removedNode = null;
+
+    private final List<Element> blocks = new ArrayList<>();
+    private long[] fingerprints = new long[64];
+    private int[] preOrderIndices = new int[64];
+    private int[] textLengths = new int[64];
+    private int rootTextLength = 0;
+
+    // Per depth, for the element being visited at that depth.
+    private long[] structureHashes = new long[32];
+    private long[] textHashes = new long[32];
+    private int[] wordCounts = new int[32];
+    private int[] elementTextLengths = new int[32];
+    private int[] elementPreOrderIndices = new int[32];
+    private int preOrderIndex = 0;
+
+    private Fingerprinter(long seed, DocumentOverlay overlay) {
+      this.seed = seed;
+      this.overlay = overlay;
+    }
+
+    @Override
+    public void head(Node node, int depth) {
+      if (removedNode != null) {
+        return;
+      } else if (overlay != null && overlay.isRemoved(node)) {
+        removedNode = node;
+        return;
+      }
+
+      if (node instanceof TextNode) {
+        if (depth > 0) {
+          addText(((TextNode) node).getWholeText(), depth - 1);
+        }
+        return;
+      } else if (!(node instanceof Element)) {
+        return;
+      }
+      if (depth >= structureHashes.length) {
+        int length = depth * 2;
+        structureHashes = Arrays.copyOf(structureHashes, length);
+        textHashes = Arrays.copyOf(textHashes, length);
+        wordCounts = Arrays.copyOf(wordCounts, length);
+        elementTextLengths = Arrays.copyOf(elementTextLengths, length);
+        elementPreOrderIndices = Arrays.copyOf(elementPreOrderIndices, length);
+      }
+      structureHashes[depth] = mix(((Element) node).tagName().hashCode(), seed);
+      textHashes[depth] = 0;
+      wordCounts[depth] = 0;
+      elementTextLengths[depth] = 0;
+      elementPreOrderIndices[depth] = preOrderIndex++;
+    }
+
+    @Override
+    public void tail(Node node, int depth) {
+      if (removedNode != null) {
+        if (node == removedNode) {
+          removedNode = null;
+        }
+        return;
+      }
+      if (!(node instanceof Element)) {
+        return;
+      }
+      long structureHash = mix(structureHashes[depth], 1);
+      if (depth == 0) {
+        rootTextLength = elementTextLengths[0];
+        return;
+      }
+      structureHashes[depth - 1] = mix(structureHashes[depth - 1], structureHash);
+      textHashes[depth - 1] = mix(textHashes[depth - 1], textHashes[depth]);
+      wordCounts[depth - 1] += wordCounts[depth];
+      elementTextLengths[depth - 1] += elementTextLengths[depth];
+
+      if (wordCounts[depth] >= MIN_WORDS && BLOCK_TAGS.contains(((Element) node).tagName())) {
+        int count = blocks.size();
+        if (count == fingerprints.length) {
+          fingerprints = Arrays.copyOf(fingerprints, count * 2);
+          preOrderIndices = Arrays.copyOf(preOrderIndices, count * 2);
+          textLengths = Arrays.copyOf(textLengths, count * 2);
+        }
+        blocks.add((Element) node);
+        fingerprints[count] = mix(structureHash, textHashes[depth]);
+        preOrderIndices[count] = elementPreOrderIndices[depth];
+        textLengths[count] = elementTextLengths[depth];
+      }
+    }
+
+    /**
+     * Adds the normalized words of {@code text} to the element at {@code depth}.
+     */
+    private void addText(String text, int depth) {
+      long textHash = textHashes[depth];
+      int words = 0;
+      int wordHash = 0;
+      boolean inWord = false;
+      for (int i = 0; i < text.length(); i++) {
+        char c = text.charAt(i);
+        if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+          if (inWord) {
+            textHash = mix(textHash, wordHash);
+            words++;
+            wordHash = 0;
+            inWord = false;
+          }
+          continue;
+        }
+        inWord = true;
+        elementTextLengths[depth]++;
+        wordHash = wordHash * 31 + (Character.isDigit(c) ? '0' : Character.toLowerCase(c));
+      }
+      if (inWord) {
+        textHash = mix(textHash, wordHash);
+        words++;
+      }
+      textHashes[depth] = textHash;
+      wordCounts[depth] += words;
+    }
+  }
+
+  /**
+   * 64-bit FNV-1a hash of {@code text}, so that distinct URLs practically never collide.
+   */
+  private static long hash(String text) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < text.length(); i++) {
+      hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  private static long mix(long hash, long value) {
+    long h = (hash ^ value) * 0x9e3779b97f4a7c15L + value;
+    h ^= h >>> 31;
+    h *= 0xbf58476d1ce4e5b9L;
+    return h ^ (h >>> 29);
+  }
+}
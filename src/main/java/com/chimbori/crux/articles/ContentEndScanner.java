@@ -0,0 +1,371 @@
+package com.chimbori.crux.articles;
+
+import com.chimbori.crux.articles.configuration.CompiledConfiguration;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+
+/**
+ * A lightweight, resumable scanner that decides how much of a page needs to be read to extract its
+ * article, so that reading (and parsing) can stop before long footers & comment sections.
+ * <p>
+ * It tracks open elements without building a DOM, and considers the content complete once an
+ * article-like element (an {@code <article>}, {@code <main>}, or one whose class or id matches
+ * {@link CompiledConfiguration#positiveCssClassesAndIds()}) that is not nested within another one
+ * has closed with enough text, and a few more elements have been started after it at the same
+ * level or above (a paragraph there means that the article has not actually ended). Pages without
+ * such an element are read completely.
+ */
+final class ContentEndScanner {
+  /**
+   * Minimum number of non-whitespace characters of paragraph text ({@code <p>}) within an
+   * article-like element for it to be considered the article. Only paragraphs count, so that
+   * containers of headlines, links or forms are not mistaken for the article.
+   */
+  static final int MIN_ARTICLE_TEXT = 1000;
+
+  /**
+   * Number of elements that must follow the article (at the same level or above) before reading can
+   * stop. All but the last of them are included in the content.
+   */
+  static final int TRAILING_SIBLINGS = 3;
+
+  private static final Set<String> VOID_TAGS = new HashSet<>(Arrays.asList(
+      "area", "base", "basefont", "bgsound", "br", "col", "command", "embed", "hr", "img", "input",
+      "keygen", "link", "meta", "param", "source", "track", "wbr"
+  ));
+
+  /**
+   * Start tags whose contents are not markup, and are not counted as text.
+   */
+  private static final Set<String> RAW_TEXT_TAGS = new HashSet<>(Arrays.asList(
+      "script", "style", "textarea", "title", "xmp", "iframe", "noembed", "noframes"
+  ));
+
+  private final Matcher positiveCssClassesAndIds;
+
+  private int position = 0;
+  private int end = -1;
+
+  /**
+   * Number of non-whitespace characters of text within paragraphs seen so far.
+   */
+  private int textLength = 0;
+  private int openParagraphs = 0;
+
+  // Open elements.
+  private int depth = 0;
+  private String[] tagNames = new String[64];
+  private int[] textStart = new int[64];  // Value of textLength when each element was opened.
+  private boolean[] isArticleLike = new boolean[64];
+  private int openArticleLikeElements = 0;
+
+  /**
+   * Stack index of the most recent article that has closed, or -1.
+   */
+  private int articleDepth = -1;
+  private int trailingElements = 0;
+
+  ContentEndScanner(CompiledConfiguration configuration) {
+    positiveCssClassesAndIds = configuration.positiveCssClassesAndIds().matcher("");
+  }
+
+  /**
+   * Scans the part of {@code html} that has not been scanned yet. Each call must pass the same text
+   * as the previous one, with more appended; an incomplete tag at the end is left for the next call.
+   *
+   * @return true once the article is known to be complete; see {@link #end()}.
+   */
+  boolean scan(CharSequence html, boolean endOfInput) {
+    int length = html.length();
+    while (end < 0 && position < length) {
+      char c = html.charAt(position);
+      if (c != '<') {
+        if (openParagraphs > 0 && !isWhitespace(c)) {
+          textLength++;
+        }
+        position++;
+        continue;
+      }
+
+      if (position + 1 >= length) {
+        if (endOfInput) {
+          position = length;
+        }
+        break;
+      }
+      char next = html.charAt(position + 1);
+      int tokenEnd;
+      if (next == '!' || next == '?' || (next == '/' && (position + 2 >= length || !isAsciiLetter(html.charAt(position + 2))))) {
+        if (next == '/' && position + 2 >= length && !endOfInput) {
+          break;
+        }
+        tokenEnd = startsWith(html, position, "<!--") ? indexAfter(html, position + 4, "-->") : indexAfter(html, position + 2, ">");
+
+      } else if (next == '/') {
+        int nameEnd = endOfTagName(html, position + 2);
+        tokenEnd = indexAfter(html, nameEnd, ">");
+        if (tokenEnd >= 0) {
+          endTag(tagName(html, position + 2, nameEnd));
+        }
+
+      } else if (isAsciiLetter(next)) {
+        int nameEnd = endOfTagName(html, position + 1);
+        tokenEnd = endOfTag(html, nameEnd);
+        if (tokenEnd >= 0) {
+          String tagName = tagName(html, position + 1, nameEnd);
+          int contentEnd = tokenEnd;
+          if (RAW_TEXT_TAGS.contains(tagName)) {
+            contentEnd = endOfRawText(html, tokenEnd, tagName);
+            if (contentEnd < 0 && !endOfInput) {
+              break;  // Wait for the end tag, so that the start tag is only processed once.
+            }
+          }
+          if (startTag(html, tagName, nameEnd, tokenEnd)) {
+            end = position;
+            break;
+          }
+          tokenEnd = contentEnd;
+        }
+
+      } else {
+        textLength += openParagraphs > 0 ? 1 : 0;  // A literal '<' in text.
+        position++;
+        continue;
+      }
+
+      if (tokenEnd < 0) {
+        if (endOfInput) {
+          position = length;
+        }
+        break;
+      }
+      position = tokenEnd;
+    }
+    return end >= 0;
+  }
+
+  /**
+   * @return the index at which the article’s content is known to be complete; only valid once
+   * {@link #scan} has returned true.
+   */
+  int end() {
+    return end;
+  }
+
+  /**
+   * @return true if reading can stop before this tag.
+   */
+  private boolean startTag(CharSequence html, String tagName, int attributesStart, int tagEnd) {
+    if (articleDepth >= 0 && depth <= articleDepth) {
+      if (tagName.equals("p")) {
+        articleDepth = -1;  // More paragraphs after the article: it was closed prematurely by bad markup.
+      } else if (++trailingElements >= TRAILING_SIBLINGS) {
+        return true;
+      }
+    }
+    boolean isSelfClosing = html.charAt(tagEnd - 2) == '/';
+    if (VOID_TAGS.contains(tagName) || RAW_TEXT_TAGS.contains(tagName) || isSelfClosing) {
+      return false;
+    }
+
+    if (depth == tagNames.length) {
+      tagNames = Arrays.copyOf(tagNames, depth * 2);
+      textStart = Arrays.copyOf(textStart, depth * 2);
+      isArticleLike = Arrays.copyOf(isArticleLike, depth * 2);
+    }
+    boolean articleLike = tagName.equals("article") || tagName.equals("main")
+        || matchesPositive(attributeValue(html, attributesStart, tagEnd, "class"))
+        || matchesPositive(attributeValue(html, attributesStart, tagEnd, "id"));
+    tagNames[depth] = tagName;
+    textStart[depth] = textLength;
+    isArticleLike[depth] = articleLike;
+    depth++;
+    if (tagName.equals("p")) {
+      openParagraphs++;
+    }
+    if (articleLike) {
+      openArticleLikeElements++;
+    }
+    return false;
+  }
+
+  private void endTag(String tagName) {
+    int match = depth - 1;
+    while (match >= 0 && !tagNames[match].equals(tagName)) {
+      match--;
+    }
+    if (match < 0) {
+      return;  // A stray end tag, which the parser ignores too.
+    }
+    // Closing an element implicitly closes all elements that are still open within it.
+    while (depth > match) {
+      depth--;
+      if (tagNames[depth].equals("p")) {
+        openParagraphs--;
+      }
+      if (isArticleLike[depth]) {
+        openArticleLikeElements--;
+        if (openArticleLikeElements == 0 && textLength - textStart[depth] >= MIN_ARTICLE_TEXT) {
+          articleDepth = depth;
+          trailingElements = 0;
+        }
+      }
+    }
+    if (articleDepth > depth) {
+      articleDepth = depth;  // Elements that follow the article’s parent are just as much “after” it.
+    }
+  }
+
+  private boolean matchesPositive(String value) {
+    return value != null && !value.isEmpty() && positiveCssClassesAndIds.reset(value).find();
+  }
+
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+  }
+
+  private static boolean isAsciiLetter(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+  }
+
+  private static boolean startsWith(CharSequence html, int offset, String prefix) {
+    if (offset + prefix.length() > html.length()) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length(); i++) {
+      if (Character.toLowerCase(html.charAt(offset + i)) != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the index just past the next occurrence of {@code terminator}, or -1 if it has not
+   * been read yet.
+   */
+  private static int indexAfter(CharSequence html, int offset, String terminator) {
+    for (int i = offset; i < html.length(); i++) {
+      if (startsWith(html, i, terminator)) {
+        return i + terminator.length();
+      }
+    }
+    return -1;
+  }
+
+  private static int endOfTagName(CharSequence html, int offset) {
+    int i = offset;
+    while (i < html.length()) {
+      char c = html.charAt(i);
+      if (isWhitespace(c) || c == '/' || c == '>') {
+        break;
+      }
+      i++;
+    }
+    return i;
+  }
+
+  private static String tagName(CharSequence html, int start, int end) {
+    return html.subSequence(start, end).toString().toLowerCase(Locale.ENGLISH);
+  }
+
+  /**
+   * @return the index just past the {@code >} that closes the tag whose attributes start at
+   * {@code offset}, or -1 if it has not been read yet.
+   */
+  private static int endOfTag(CharSequence html, int offset) {
+    int length = html.length();
+    int i = offset;
+    while (i < length) {
+      char c = html.charAt(i++);
+      if (c == '>') {
+        return i;
+      } else if (c == '=') {
+        while (i < length && isWhitespace(html.charAt(i))) {
+          i++;
+        }
+        if (i < length && (html.charAt(i) == '"' || html.charAt(i) == '\'')) {
+          char quote = html.charAt(i++);
+          while (i < length && html.charAt(i) != quote) {
+            i++;
+          }
+          i++;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return the index just past the end tag that closes a raw text element, or -1 if it has not
+   * been read yet.
+   */
+  private static int endOfRawText(CharSequence html, int offset, String tagName) {
+    String endTag = "</" + tagName;
+    for (int i = offset; i < html.length(); i++) {
+      if (html.charAt(i) == '<' && startsWith(html, i, endTag)) {
+        int nameEnd = i + endTag.length();
+        if (nameEnd < html.length() && (isWhitespace(html.charAt(nameEnd))
+            || html.charAt(nameEnd) == '/' || html.charAt(nameEnd) == '>')) {
+          return indexAfter(html, nameEnd, ">");
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return the value of attribute {@code name} within {@code html[start, end)}, or null.
+   */
+  private static String attributeValue(CharSequence html, int start, int end, String name) {
+    int i = start;
+    while (i < end) {
+      while (i < end && (isWhitespace(html.charAt(i)) || html.charAt(i) == '/')) {
+        i++;
+      }
+      int nameStart = i;
+      while (i < end && !isWhitespace(html.charAt(i)) && html.charAt(i) != '=' && html.charAt(i) != '>' && html.charAt(i) != '/') {
+        i++;
+      }
+      int nameEnd = i;
+      while (i < end && isWhitespace(html.charAt(i))) {
+        i++;
+      }
+      if (nameStart == nameEnd) {
+        return null;  // Reached the end of the tag.
+      }
+      String value = "";
+      if (i < end && html.charAt(i) == '=') {
+        i++;
+        while (i < end && isWhitespace(html.charAt(i))) {
+          i++;
+        }
+        int valueStart;
+        int valueEnd;
+        if (i < end && (html.charAt(i) == '"' || html.charAt(i) == '\'')) {
+          char quote = html.charAt(i++);
+          valueStart = i;
+          while (i < end && html.charAt(i) != quote) {
+            i++;
+          }
+          valueEnd = i++;
+        } else {
+          valueStart = i;
+          while (i < end && !isWhitespace(html.charAt(i)) && html.charAt(i) != '>') {
+            i++;
+          }
+          valueEnd = i;
+        }
+        value = html.subSequence(valueStart, Math.min(valueEnd, end)).toString();
+      }
+      if (nameEnd - nameStart == name.length() && startsWith(html, nameStart, name)) {
+        return value;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,241 @@
+package com.chimbori.crux.articles;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The structural path from a page’s {@code <body>} to the element that contains its article, which
+ * can be followed on other pages of the same site without scoring them.
+ * <p>
+ * Each step matches a child element by tag name, id & class names (ignoring their order & extra
+ * whitespace), and picks the n<sup>th</sup> such child, so that sidebars being added or removed
+ * above the article don’t invalidate the path. Written as e.g.
+ * {@code div#page > div.content.main > article:1}; characters that are part of this syntax are
+ * percent-encoded within tag names, ids & class names. Instances are immutable.
+ */
+final class ContentLocator {
+  private static final String SPECIAL_CHARACTERS = "%#.:> \t\r\n";
+
+  private static final class Step {
+    private final String tagName;
+    private final String id;
+    private final String classNames;  // Sorted, and separated by single spaces.
+    private final int index;
+
+    private Step(String tagName, String id, String classNames, int index) {
+      this.tagName = tagName;
+      this.id = id;
+      this.classNames = classNames;
+      this.index = index;
+    }
+
+    private boolean matches(Element element) {
+      return element.tagName().equals(tagName) && element.id().equals(id)
+          && normalizeClassNames(element.className()).equals(classNames);
+    }
+  }
+
+  private final List<Step> steps;
+
+  private ContentLocator(List<Step> steps) {
+    this.steps = steps;
+  }
+
+  /**
+   * @return the path from {@code root} to {@code element}, or null if {@code element} is not a
+   * descendant of {@code root}.
+   */
+  static ContentLocator of(Element root, Element element) {
+    List<Step> steps = new ArrayList<>();
+    for (Element current = element; current != root; current = current.parent()) {
+      Element parent = current.parent();
+      if (parent == null) {
+        return null;
+      }
+      Step step = new Step(current.tagName(), current.id(), normalizeClassNames(current.className()), 0);
+      int index = 0;
+      for (Node sibling : parent.childNodes()) {
+        if (sibling == current) {
+          break;
+        } else if (sibling instanceof Element && step.matches((Element) sibling)) {
+          index++;
+        }
+      }
+      steps.add(new Step(step.tagName, step.id, step.classNames, index));
+    }
+    Collections.reverse(steps);
+    return new ContentLocator(steps);
+  }
+
+  /**
+   * @return the element that this path leads to from {@code root}, or null if there is none.
+   */
+  Element find(Element root) {
+    Element current = root;
+    for (Step step : steps) {
+      Element next = null;
+      int index = step.index;
+      for (Node child : current.childNodes()) {
+        if (child instanceof Element && step.matches((Element) child) && index-- == 0) {
+          next = (Element) child;
+          break;
+        }
+      }
+      if (next == null) {
+        return null;
+      }
+      current = next;
+    }
+    return current;
+  }
+
+  /**
+   * @return the locator written by {@link #toString()}, or null if {@code path} is not valid.
+   */
+  static ContentLocator parse(String path) {
+    List<Step> steps = new ArrayList<>();
+    if (path.trim().isEmpty()) {
+      return new ContentLocator(steps);
+    }
+    for (String token : path.trim().split(" > ", -1)) {
+      Step step = parseStep(token);
+      if (step == null) {
+        return null;
+      }
+      steps.add(step);
+    }
+    return new ContentLocator(steps);
+  }
+
+  private static Step parseStep(String token) {
+    int index = 0;
+    int indexStart = token.indexOf(':');
+    if (indexStart >= 0) {
+      try {
+        index = Integer.parseInt(token.substring(indexStart + 1));
+      } catch (NumberFormatException e) {
+        return null;
+      }
+      token = token.substring(0, indexStart);
+    }
+    int classesStart = token.indexOf('.');
+    int classesEnd = token.length();
+    if (classesStart < 0) {
+      classesStart = classesEnd;
+    }
+    int idStart = token.indexOf('#');
+    if (idStart < 0 || idStart > classesStart) {
+      idStart = classesStart;
+    }
+    if (idStart == 0 || index < 0) {
+      return null;
+    }
+
+    String tagName = decode(token.substring(0, idStart));
+    String id = idStart < classesStart ? decode(token.substring(idStart + 1, classesStart)) : "";
+    StringBuilder classNames = new StringBuilder();
+    if (classesStart < classesEnd) {
+      for (String className : token.substring(classesStart + 1).split("\\.", -1)) {
+        String decoded = decode(className);
+        if (decoded == null) {
+          return null;
+        }
+        classNames.append(classNames.length() > 0 ? " " : "").append(decoded);
+      }
+    }
+    if (tagName == null || id == null) {
+      return null;
+    }
+    return new Step(tagName, id, normalizeClassNames(classNames.toString()), index);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder path = new StringBuilder();
+    for (Step step : steps) {
+      if (path.length() > 0) {
+        path.append(" > ");
+      }
+      encode(path, step.tagName);
+      if (!step.id.isEmpty()) {
+        encode(path.append('#'), step.id);
+      }
+      if (!step.classNames.isEmpty()) {
+        for (String className : step.classNames.split(" ")) {
+          encode(path.append('.'), className);
+        }
+      }
+      if (step.index > 0) {
+        path.append(':').append(step.index);
+      }
+    }
+    return path.toString();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof ContentLocator && toString().equals(o.toString());
+  }
+
+  @Override
+  public int hashCode() {
+    return toString().hashCode();
+  }
+
+  private static String normalizeClassNames(String className) {
+    if (className.isEmpty()) {
+      return "";
+    }
+    String[] classNames = className.trim().split("\\s+");
+    if (classNames.length == 1) {
+      return classNames[0];
+    }
+    Arrays.sort(classNames);
+    StringBuilder normalized = new StringBuilder(className.length());
+    for (String name : classNames) {
+      normalized.append(normalized.length() > 0 ? " " : "").append(name);
+    }
+    return normalized.toString();
+  }
+
+  private static void encode(StringBuilder out, String value) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (SPECIAL_CHARACTERS.indexOf(c) >= 0) {
+        out.append('%').append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xf, 16));
+      } else {
+        out.append(c);
+      }
+    }
+  }
+
+  /**
+   * @return the decoded value, or null if it contains an invalid escape sequence.
+   */
+  private static String decode(String value) {
+    if (value.indexOf('%') < 0) {
+      return value;
+    }
+    StringBuilder out = new StringBuilder(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c != '%') {
+        out.append(c);
+        continue;
+      }
+      int high = i + 2 < value.length() ? Character.digit(value.charAt(i + 1), 16) : -1;
+      int low = high >= 0 ? Character.digit(value.charAt(i + 2), 16) : -1;
+      if (low < 0) {
+        return null;
+      }
+      out.append((char) ((high << 4) | low));
+      i += 2;
+    }
+    return out.toString();
+  }
+}
@@ -0,0 +1,126 @@
+package com.chimbori.crux.articles;
+
+import com.chimbori.crux.common.Log;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The nodes that preprocessing has removed from a document that must be left as it is, recorded
+ * alongside the document instead of being removed from it: nodes named in
+ * {@link com.chimbori.crux.articles.configuration.CompiledConfiguration#strippedNodeNames()} are recognized
+ * by name, and any others (such as boilerplate blocks) are marked in an identity side table.
+ * <p>
+ * Scoring skips removed nodes (see {@link TextStatistics#of(Element, DocumentOverlay)}), and
+ * postprocessing works on a copy of the best match that leaves them out (see
+ * {@link #copyRetained}), so the same document can be extracted from any number of times.
+ */
+final class DocumentOverlay {
+  private final Set<String> strippedNodeNames;
+  private final ElementIntMap removed;
+
+  DocumentOverlay(Set<String> strippedNodeNames) {
+    this(strippedNodeNames, new ElementIntMap());
+  }
+
+  private DocumentOverlay(Set<String> strippedNodeNames, ElementIntMap removed) {
+    this.strippedNodeNames = strippedNodeNames;
+    this.removed = removed;
+  }
+
+  /**
+   * @return an overlay that recognizes {@code strippedNodeNames} instead, but shares the nodes
+   * marked as removed in this one (now & later); this one itself, if the names are the same.
+   */
+  DocumentOverlay withStrippedNodeNames(Set<String> strippedNodeNames) {
+    return this.strippedNodeNames.equals(strippedNodeNames) ? this : new DocumentOverlay(strippedNodeNames, removed);
+  }
+
+  void remove(Element element, String reason) {
+    Log.i(reason, element);
+    removed.set(element, 1);
+  }
+
+  /**
+   * @return whether {@code node} itself has been removed; its descendants are removed along with it,
+   * but are not reported here.
+   */
+  boolean isRemoved(Node node) {
+    return strippedNodeNames.contains(node.nodeName())
+        || node instanceof Element && removed.contains((Element) node);
+  }
+
+  /**
+   * @return whether neither {@code element} nor any of its ancestors have been removed.
+   */
+  boolean isRetained(Element element) {
+    for (Node node = element; node != null; node = node.parentNode()) {
+      if (isRemoved(node)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Copies {@code root} & its retained descendants into a new, detached tree, in a single walk that
+   * follows parent & sibling links instead of recursing. Scores assigned to the original elements
+   * are assigned to their copies too, and images that were copied are updated to refer to their
+   * copies, so that the copy can be postprocessed in place of {@code root}. Like {@code root}, the
+   * copy has a parent (a copy of {@code root}’s parent, without its other children), so that
+   * postprocessing can remove or replace it just the same.
+   */
+  Element copyRetained(Element root, GravityScores scores, List<Article.Image> images) {
+    ElementIntMap imageIndices = new ElementIntMap();
+    for (int i = 0; i < images.size(); i++) {
+      imageIndices.set(images.get(i).element, i);
+    }
+
+    Element rootCopy = (Element) copy(root, scores, images, imageIndices);
+    Element parent = root.parent();
+    if (parent != null) {
+      new Element(parent.tag(), parent.baseUri(), parent.attributes().clone()).appendChild(rootCopy);
+    }
+    Element parentCopy = rootCopy;
+    Node node = root.childNodeSize() > 0 ? root.childNode(0) : null;
+    while (node != null) {
+      if (!isRemoved(node)) {
+        Node copy = copy(node, scores, images, imageIndices);
+        parentCopy.appendChild(copy);
+        if (node.childNodeSize() > 0) {
+          parentCopy = (Element) copy;
+          node = node.childNode(0);
+          continue;
+        }
+      }
+      while (node != root && node.nextSibling() == null) {
+        node = node.parentNode();
+        parentCopy = parentCopy.parent();
+      }
+      node = node != root ? node.nextSibling() : null;
+    }
+    return rootCopy;
+  }
+
+  /**
+   * @return a copy of {@code node} without its child nodes.
+   */
+  private static Node copy(Node node, GravityScores scores, List<Article.Image> images, ElementIntMap imageIndices) {
+    if (!(node instanceof Element)) {
+      return node.clone();  // All other kinds of nodes are leaves.
+    }
+    Element element = (Element) node;
+    Element copy = new Element(element.tag(), element.baseUri(), element.attributes().clone());
+    if (scores.contains(element)) {
+      scores.set(copy, scores.get(element));
+    }
+    int image = imageIndices.get(element, -1);
+    if (image >= 0) {
+      images.get(image).element = copy;
+    }
+    return copy;
+  }
+}
@@ -0,0 +1,134 @@
+package com.chimbori.crux.articles;
+
+import com.chimbori.crux.common.SubstringCounter;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+
+/**
+ * Read-only access to the elements of a page by index, as needed to score candidates for the
+ * article, so that scoring can walk the page with plain ints; JSoup’s nodes are navigated directly,
+ * and text is measured by {@link TextStatistics}, which also maps between elements & their indices.
+ * <p>
+ * Elements are identified by their index in document order, the root of the tree being 0; other
+ * kinds of nodes are not represented. Text measurements are those of {@link TextStatistics}, and
+ * refer to the tree as it was when the instance was created.
+ */
+final class DomTree {
+  /**
+   * Returned when there is no such element.
+   */
+  static final int NONE = -1;
+
+  private final TextStatistics textStatistics;
+
+  private DomTree(TextStatistics textStatistics) {
+    this.textStatistics = textStatistics;
+  }
+
+  static DomTree of(TextStatistics textStatistics) {
+    return new DomTree(textStatistics);
+  }
+
+  /**
+   * @return the number of elements; they are numbered {@code 0} to {@code size() - 1}.
+   */
+  int size() {
+    return textStatistics.size();
+  }
+
+  int parent(int node) {
+    return node == 0 ? NONE : textStatistics.indexOf(element(node).parent());
+  }
+
+  int firstChild(int node) {
+    return firstElement(element(node), 0);
+  }
+
+  int nextSibling(int node) {
+    if (node == 0) {
+      return NONE;
+    }
+    Element element = element(node);
+    return firstElement(element.parent(), element.siblingIndex() + 1);
+  }
+
+  /**
+   * @return the same value as {@link Element#tagName()}.
+   */
+  String tagName(int node) {
+    return element(node).tagName();
+  }
+
+  /**
+   * @return the same value as {@link Element#className()}.
+   */
+  String className(int node) {
+    return element(node).className();
+  }
+
+  /**
+   * @return the same value as {@link Element#id()}.
+   */
+  String id(int node) {
+    return element(node).id();
+  }
+
+  /**
+   * @return the same value as {@link Element#attr(String)}.
+   */
+  String attr(int node, String key) {
+    return element(node).attr(key);
+  }
+
+  /**
+   * @return the same value as {@code element.text().length()}.
+   */
+  int textLength(int node) {
+    return textStatistics.textLength(node);
+  }
+
+  /**
+   * @return the same value as {@code element.ownText().length()}.
+   */
+  int ownTextLength(int node) {
+    return textStatistics.ownTextLength(node);
+  }
+
+  /**
+   * @return the same value as {@code counter.countMatches(element.text())}.
+   */
+  int countMatches(int node, SubstringCounter counter) {
+    return textStatistics.countMatches(node, counter);
+  }
+
+  /**
+   * @return the same value as {@code counter.countMatches(element.ownText())}.
+   */
+  int countOwnMatches(int node, SubstringCounter counter) {
+    return counter.countMatches(element(node).ownText());
+  }
+
+  /**
+   * @return the JSoup element that {@code node} was created from, which scores are assigned to, and
+   * which the rest of the extraction operates on.
+   */
+  Element element(int node) {
+    return textStatistics.element(node);
+  }
+
+  /**
+   * @return the index of the first element among {@code parent}’s child nodes, starting at
+   * {@code from}, skipping elements that were left out of {@link #textStatistics}.
+   */
+  private int firstElement(Element parent, int from) {
+    for (int i = from; i < parent.childNodeSize(); i++) {
+      Node child = parent.childNode(i);
+      int index = child instanceof Element ? textStatistics.indexOf((Element) child) : NONE;
+      if (index != NONE) {
+        return index;
+      }
+    }
+    return NONE;
+  }
+}
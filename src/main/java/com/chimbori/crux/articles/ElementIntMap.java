@@ -0,0 +1,105 @@
+package com.chimbori.crux.articles;
+
+import org.jsoup.nodes.Element;
+
+import java.util.Arrays;
+
+/**
+ * Maps elements to primitive {@code int} values. Elements are keyed by identity, in an
+ * open-addressed table, so that lookups neither box values nor depend on
+ * {@link Element#hashCode()}. Instances are not thread-safe; create one per extraction (or
+ * {@link #clear()} one between extractions).
+ */
+class ElementIntMap {
+  private static final int INITIAL_CAPACITY = 256;
+
+  private Element[] keys;
+  private int[] values;
+  private int size;
+
+  ElementIntMap() {
+    keys = new Element[INITIAL_CAPACITY];
+    values = new int[INITIAL_CAPACITY];
+  }
+
+  /**
+   * @return true if a value has been assigned to this element, even if that value is zero.
+   */
+  boolean contains(Element element) {
+    return keys[indexOf(element, keys)] == element;
+  }
+
+  /**
+   * @return the value assigned to this element, or zero if none has been assigned.
+   */
+  int get(Element element) {
+    return get(element, 0);
+  }
+
+  /**
+   * @return the value assigned to this element, or {@code defaultValue} if none has been assigned.
+   */
+  int get(Element element, int defaultValue) {
+    int index = indexOf(element, keys);
+    return keys[index] == element ? values[index] : defaultValue;
+  }
+
+  void set(Element element, int value) {
+    int index = indexOf(element, keys);
+    if (keys[index] != element) {
+      if ((size + 1) * 2 > keys.length) {
+        grow();
+        index = indexOf(element, keys);
+      }
+      keys[index] = element;
+      size++;
+    }
+    values[index] = value;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Removes all entries, retaining the allocated capacity for reuse by another extraction.
+   */
+  void clear() {
+    Arrays.fill(keys, null);
+    size = 0;
+  }
+
+  /**
+   * @return the slot holding {@code element}, or the empty slot where it should be inserted.
+   */
+  private static int indexOf(Element element, Element[] table) {
+    int mask = table.length - 1;
+    int index = mix(System.identityHashCode(element)) & mask;
+    while (table[index] != null && table[index] != element) {
+      index = (index + 1) & mask;
+    }
+    return index;
+  }
+
+  private void grow() {
+    Element[] oldKeys = keys;
+    int[] oldValues = values;
+    keys = new Element[oldKeys.length * 2];
+    values = new int[oldKeys.length * 2];
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != null) {
+        int index = indexOf(oldKeys[i], keys);
+        keys[index] = oldKeys[i];
+        values[index] = oldValues[i];
+      }
+    }
+  }
+
+  /**
+   * Spreads identity hash codes, whose low bits are poorly distributed on some VMs.
+   */
+  private static int mix(int hash) {
+    hash *= 0x9E3779B9;
+    return hash ^ (hash >>> 16);
+  }
+}
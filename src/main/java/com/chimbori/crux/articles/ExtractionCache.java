@@ -0,0 +1,348 @@
+package com.chimbori.crux.articles;
+
+import com.chimbori.crux.articles.configuration.CompiledConfiguration;
+import com.chimbori.crux.articles.configuration.Configuration;
+import com.chimbori.crux.common.CharsetConverter;
+import com.chimbori.crux.common.FrequencySketch;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers the {@link Article}s extracted from recently seen pages, so that extracting the same
+ * bytes from the same URL again (as when re-crawling a page that has not changed) returns the
+ * earlier result without parsing the page.
+ * <p>
+ * Pages are identified by their URL (against which relative links are resolved), a SHA-256 hash
+ * of their raw bytes, and the identity of the {@link CompiledConfiguration} used; to share results
+ * across calls with a custom configuration, compile it once and pass the same instance each time.
+ * <p>
+ * The cache holds articles up to a total weight, their estimated size in memory. When it is full,
+ * the entries to keep are chosen by how often each page has been requested recently, not just by
+ * how recently (W-TinyLFU): new entries start out in a small window, and are only admitted into
+ * the rest of the cache if they are requested more often than the entry they would displace, so a
+ * burst of pages that are seen only once cannot flush out pages that are requested regularly.
+ * <p>
+ * Articles are extracted as with {@link ArticleExtractor#extractMetadata()},
+ * {@link ArticleExtractor#extractContent()} & {@link ArticleExtractor#estimateReadingTime()}, with
+ * {@link ArticleExtractor#compactBody(boolean)} set, so the content is in {@link Article#body}.
+ * Images do not keep a reference to their element, which would retain the entire parsed page.
+ * Every caller gets its own copy of the cached {@link Article}, which it may modify freely; only
+ * the immutable {@link ArticleBody} is shared.
+ * <p>
+ * Instances are thread-safe. Pages are extracted outside of any lock, so concurrent requests for
+ * the same page that is not yet cached may each extract it.
+ */
+public final class ExtractionCache {
+  private static final class Key {
+    private final String url;
+    private final byte[] digest;
+    private final CompiledConfiguration configuration;
+    private final long hash;
+
+    private Key(String url, byte[] digest, CompiledConfiguration configuration) {
+      this.url = url;
+      this.digest = digest;
+      this.configuration = configuration;
+      long hash = System.identityHashCode(configuration) * 31L + url.hashCode();
+      for (int i = 0; i < 8; i++) {
+        hash = (hash << 8) ^ (hash >>> 56) ^ (digest[i] & 0xff);
+      }
+      this.hash = hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) o;
+      return hash == key.hash && configuration == key.configuration && url.equals(key.url)
+          && Arrays.equals(digest, key.digest);
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) (hash ^ (hash >>> 32));
+    }
+  }
+
+  private static final int WINDOW = 0;
+  private static final int PROBATION = 1;
+  private static final int PROTECTED = 2;
+
+  private static final class Entry {
+    private final Key key;
+    private final Article article;
+    private final long weight;
+    private int queue;
+    private Entry previous;
+    private Entry next;
+
+    private Entry(Key key, Article article, long weight) {
+      this.key = key;
+      this.article = article;
+      this.weight = weight;
+    }
+  }
+
+  private final long maximumWeight;
+  private final long maximumWindowWeight;
+  private final long maximumMainWeight;
+  private final long maximumProtectedWeight;
+
+  private final Map<Key, Entry> entries = new HashMap<>();
+  private final FrequencySketch sketch;
+
+  /**
+   * Sentinels of circular lists, each ordered from least to most recently used. The window holds
+   * new entries; the main part of the cache holds entries on probation (admitted from the window)
+   * and protected ones (requested again while on probation).
+   */
+  private final Entry[] queues = new Entry[3];
+  private final long[] queueWeights = new long[3];
+
+  private long hitCount = 0;
+  private long missCount = 0;
+  private long evictionCount = 0;
+
+  private ExtractionCache(long maximumWeight) {
+    this.maximumWeight = maximumWeight;
+    maximumWindowWeight = Math.max(1, maximumWeight / 100);
+    maximumMainWeight = maximumWeight - maximumWindowWeight;
+    maximumProtectedWeight = maximumMainWeight * 8 / 10;
+    // Assume that articles take about 16 KB each, to size the sketch for the number of entries.
+    sketch = new FrequencySketch((int) Math.min(Integer.MAX_VALUE, Math.max(64, maximumWeight / (16 * 1024))));
+    for (int queue = 0; queue < queues.length; queue++) {
+      Entry sentinel = new Entry(null, null, 0);
+      sentinel.previous = sentinel;
+      sentinel.next = sentinel;
+      queues[queue] = sentinel;
+    }
+  }
+
+  /**
+   * @param maximumWeight the total estimated size of cached articles, in bytes.
+   */
+  public static ExtractionCache withMaximumWeight(long maximumWeight) {
+    if (maximumWeight < 2) {
+      throw new IllegalArgumentException("maximumWeight: " + maximumWeight);
+    }
+    return new ExtractionCache(maximumWeight);
+  }
+
+  /**
+   * Extracts {@code bytes} using the standard configuration, or returns the article extracted from
+   * the same page earlier.
+   */
+  public Article extract(String url, byte[] bytes) {
+    return extract(url, bytes, Configuration.standardConfiguration);
+  }
+
+  /**
+   * Extracts {@code bytes}, whose encoding is detected from the page itself, or returns the article
+   * extracted from the same page earlier.
+   */
+  public Article extract(String url, byte[] bytes, Configuration configuration) {
+    CompiledConfiguration compiledConfiguration = CompiledConfiguration.of(configuration);
+    Key key = new Key(url, digest(bytes), compiledConfiguration);
+    synchronized (this) {
+      sketch.increment(key.hash);
+      Entry entry = entries.get(key);
+      if (entry != null) {
+        hitCount++;
+        onAccess(entry);
+        return entry.article.copy();
+      }
+      missCount++;
+    }
+
+    // Equivalent to CharsetConverter.readStream(), without copying the bytes into a new buffer.
+    int length = Math.min(bytes.length, CharsetConverter.DEFAULT_MAX_BYTES);
+    String html = CharsetConverter.decode(bytes, 0, length, null).content;
+    Article article = ArticleExtractor.with(url, html)
+        .configure(compiledConfiguration)
+        .compactBody(true)
+        .extractMetadata()
+        .extractContent()
+        .estimateReadingTime()
+        .article();
+    for (Article.Image image : article.images) {
+      image.element = null;
+    }
+
+    Entry entry = new Entry(key, article, weigh(article));
+    synchronized (this) {
+      if (entry.weight <= maximumWeight && !entries.containsKey(key)) {
+        entries.put(key, entry);
+        link(entry, WINDOW);
+        evict();
+      }
+    }
+    return article.copy();
+  }
+
+  public synchronized long hitCount() {
+    return hitCount;
+  }
+
+  public synchronized long missCount() {
+    return missCount;
+  }
+
+  /**
+   * Number of articles removed (or never admitted into the main part of the cache) to make room
+   * for others.
+   */
+  public synchronized long evictionCount() {
+    return evictionCount;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Total estimated size of all cached articles, in bytes.
+   */
+  public synchronized long weight() {
+    return queueWeights[WINDOW] + queueWeights[PROBATION] + queueWeights[PROTECTED];
+  }
+
+  public synchronized void clear() {
+    for (Entry entry : entries.values()) {
+      unlink(entry);
+    }
+    entries.clear();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "ExtractionCache{size=" + entries.size() + ", weight=" + weight() + ", hitCount=" + hitCount
+        + ", missCount=" + missCount + ", evictionCount=" + evictionCount + '}';
+  }
+
+  private void onAccess(Entry entry) {
+    if (entry.queue == PROBATION) {
+      unlink(entry);
+      link(entry, PROTECTED);
+      while (queueWeights[PROTECTED] > maximumProtectedWeight) {
+        Entry demoted = queues[PROTECTED].next;
+        unlink(demoted);
+        link(demoted, PROBATION);
+      }
+    } else {
+      int queue = entry.queue;
+      unlink(entry);
+      link(entry, queue);
+    }
+  }
+
+  /**
+   * Moves entries that no longer fit into the window to the main part of the cache, if they are
+   * requested more often than the entries they would displace there.
+   */
+  private void evict() {
+    while (queueWeights[WINDOW] > maximumWindowWeight) {
+      Entry candidate = queues[WINDOW].next;
+      unlink(candidate);
+      admit(candidate);
+    }
+  }
+
+  /**
+   * Admits {@code candidate} into the main part of the cache if the entries that would have to be
+   * evicted to make room for it (least recently used first, those on probation before protected
+   * ones) are all requested less often than it; otherwise, evicts {@code candidate} itself, and
+   * nothing else.
+   */
+  private void admit(Entry candidate) {
+    if (candidate.weight > maximumMainWeight) {
+      remove(candidate);
+      return;
+    }
+    int candidateFrequency = sketch.frequency(candidate.key.hash);
+    long excessWeight = queueWeights[PROBATION] + queueWeights[PROTECTED] + candidate.weight - maximumMainWeight;
+    long freedWeight = 0;
+    int queue = PROBATION;
+    Entry victim = queues[PROBATION].next;
+    while (freedWeight < excessWeight) {
+      if (victim == queues[queue]) {
+        queue = PROTECTED;
+        victim = queues[PROTECTED].next;
+        continue;
+      }
+      if (sketch.frequency(victim.key.hash) >= candidateFrequency) {
+        remove(candidate);
+        return;
+      }
+      freedWeight += victim.weight;
+      victim = victim.next;
+    }
+    while (excessWeight > 0) {
+      victim = queues[PROBATION].next != queues[PROBATION] ? queues[PROBATION].next : queues[PROTECTED].next;
+      excessWeight -= victim.weight;
+      unlink(victim);
+      remove(victim);
+    }
+    link(candidate, PROBATION);
+  }
+
+  private void remove(Entry entry) {
+    entries.remove(entry.key);
+    evictionCount++;
+  }
+
+  private void link(Entry entry, int queue) {
+    Entry sentinel = queues[queue];
+    entry.queue = queue;
+    entry.previous = sentinel.previous;
+    entry.next = sentinel;
+    sentinel.previous.next = entry;
+    sentinel.previous = entry;
+    queueWeights[queue] += entry.weight;
+  }
+
+  private void unlink(Entry entry) {
+    entry.previous.next = entry.next;
+    entry.next.previous = entry.previous;
+    entry.previous = null;
+    entry.next = null;
+    queueWeights[entry.queue] -= entry.weight;
+  }
+
+  /**
+   * Approximate number of bytes of heap retained by {@code article}.
+   */
+  static long weigh(Article article) {
+    long weight = 128 + ArticleBody.sizeOf(article.url) + ArticleBody.sizeOf(article.title)
+        + ArticleBody.sizeOf(article.description) + ArticleBody.sizeOf(article.siteName)
+        + ArticleBody.sizeOf(article.themeColor) + ArticleBody.sizeOf(article.ampUrl)
+        + ArticleBody.sizeOf(article.canonicalUrl) + ArticleBody.sizeOf(article.imageUrl)
+        + ArticleBody.sizeOf(article.videoUrl) + ArticleBody.sizeOf(article.feedUrl)
+        + ArticleBody.sizeOf(article.faviconUrl);
+    if (article.body != null) {
+      weight += article.body.estimatedSizeBytes();
+    }
+    if (article.keywords != null) {
+      for (String keyword : article.keywords) {
+        weight += 32 + ArticleBody.sizeOf(keyword);
+      }
+    }
+    for (Article.Image image : article.images) {
+      weight += 48 + ArticleBody.sizeOf(image.src) + ArticleBody.sizeOf(image.title) + ArticleBody.sizeOf(image.alt);
+    }
+    return weight;
+  }
+
+  private static byte[] digest(byte[] bytes) {
+    try {
+      return MessageDigest.getInstance("SHA-256").digest(bytes);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);  // Every Java platform is required to support SHA-256.
+    }
+  }
+}
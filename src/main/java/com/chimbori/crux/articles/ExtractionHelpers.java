@@ -1,25 +1,91 @@
 package com.chimbori.crux.articles;
 
+import com.chimbori.crux.articles.configuration.CompiledConfiguration;
 import com.chimbori.crux.articles.configuration.Configuration;
-import com.chimbori.crux.common.StringUtils;
-import org.jsoup.nodes.Document;
+import com.chimbori.crux.common.SubstringCounter;
 import org.jsoup.nodes.Element;
 
-import java.util.*;
+import java.util.Arrays;
+import java.util.regex.Matcher;
 
 class ExtractionHelpers {
+  /**
+   * Escaped markup & CSS units, which suggest that text is code or styling rather than prose.
+   */
+  private static final SubstringCounter NOISE = SubstringCounter.of("&quot;", "&lt;", "&gt;", "px");
 
-  static final String GRAVITY_SCORE_ATTRIBUTE = "gravityScore";
-  static final String GRAVITY_SCORE_SELECTOR = String.format("*[%s]", GRAVITY_SCORE_ATTRIBUTE);
+  /**
+   * Once an element weighs more than this, it is taken to be the article without looking further.
+   */
+  private static final int CLEAR_MATCH_WEIGHT = 200;
+
+  private final CompiledConfiguration configuration;
+  private final GravityScores scores;
+  private final DomTree tree;
+
+  // Matchers are reset for each input instead of being created anew; an ExtractionHelpers instance
+  // is confined to a single extraction, so these are never shared across threads.
+  private final Matcher positiveCssClassesAndIds;
+  private final Matcher unlikelyCssClassesAndIds;
+  private final Matcher negativeCssClassesAndIds;
+  private final Matcher negativeCssStyles;
+
+  private ExtractionHelpers(Configuration configuration, GravityScores scores, DomTree tree) {
+    this.configuration = CompiledConfiguration.of(configuration);
+    this.scores = scores;
+    this.tree = tree;
+    positiveCssClassesAndIds = this.configuration.positiveCssClassesAndIds().matcher("");
+    unlikelyCssClassesAndIds = this.configuration.unlikelyCssClassesAndIds().matcher("");
+    negativeCssClassesAndIds = this.configuration.negativeCssClassesAndIds().matcher("");
+    negativeCssStyles = this.configuration.negativeCssStyles().matcher("");
+  }
 
-  private final Configuration configuration;
+  /**
+   * @param scores         receives the gravity scores assigned during this extraction; these are
+   *                       later consumed by {@link PostprocessHelpers#postprocess}.
+   * @param tree           the (already preprocessed) document body.
+   */
+  static ExtractionHelpers configure(Configuration configuration, GravityScores scores, DomTree tree) {
+    return new ExtractionHelpers(configuration, scores, tree);
+  }
 
-  private ExtractionHelpers(Configuration configuration) {
-    this.configuration = configuration;
+  /**
+   * Weights each of the important nodes in document order, until one of them is clearly the
+   * article.
+   *
+   * @return the element with the highest weight, or null if none has a positive weight.
+   */
+  Element findBestMatch() {
+    int maxWeight = 0;
+    int bestMatch = DomTree.NONE;
+    for (int node : getNodes()) {
+      int currentWeight = getWeight(node);
+      if (currentWeight > maxWeight) {
+        maxWeight = currentWeight;
+        bestMatch = node;
+        if (maxWeight > CLEAR_MATCH_WEIGHT) {
+          break;
+        }
+      }
+    }
+    return bestMatch != DomTree.NONE ? tree.element(bestMatch) : null;
   }
 
-  static ExtractionHelpers configure(Configuration configuration) {
-    return new ExtractionHelpers(configuration);
+  /**
+   * Weighs {@code candidate} on its own, instead of every important node up to it. Like
+   * {@link #findBestMatch()}, this first gives every important node on the page its initial score,
+   * which walks the whole tree. The scores of the candidate’s descendants therefore end up the
+   * same as if {@link #findBestMatch()} had settled on it. Other scores may not: weighing a node
+   * adjusts the scores of its children, and the important nodes before the candidate (such as its
+   * parent) are not weighed here, so the candidate itself & elements outside it miss those
+   * adjustments.
+   *
+   * @return whether the candidate weighs enough that {@link #findBestMatch()} would have stopped
+   * there.
+   */
+  boolean isClearMatch(int candidate) {
+    getNodes();
+    return getWeight(candidate) > CLEAR_MATCH_WEIGHT;
   }
 
   /**
@@ -28,12 +94,12 @@ class ExtractionHelpers {
    * names, ids or class names will be used in HTML, major role is played by
    * child nodes
    *
-   * @param e Element to weight, along with child nodes
+   * @param node Element to weight, along with child nodes
    */
-  int getWeight(Element e) {
-    int weight = calcWeight(e);
-    weight += (int) Math.round(e.ownText().length() / 100.0 * 10);
-    weight += weightChildNodes(e);
+  int getWeight(int node) {
+    int weight = calcWeight(node);
+    weight += (int) Math.round(tree.ownTextLength(node) / 100.0 * 10);
+    weight += weightChildNodes(node);
     return weight;
   }
 
@@ -49,132 +115,128 @@ class ExtractionHelpers {
    *
    * @param rootEl Element, who's child nodes will be weighted
    */
-  private int weightChildNodes(Element rootEl) {
+  private int weightChildNodes(int rootEl) {
     int weight = 0;
-    Element caption = null;
-    List<Element> pEls = new ArrayList<>(5);
-    for (Element child : rootEl.children()) {
-      String ownText = child.ownText();
-
+    boolean hasCaption = false;
+    int pEls = 0;
+    for (int child = tree.firstChild(rootEl); child != DomTree.NONE; child = tree.nextSibling(child)) {
       // if you are on a paragraph, grab all the text including that surrounded by additional formatting.
-      if (child.tagName().equals("p"))
-        ownText = child.text();
-
-      int ownTextLength = ownText.length();
+      String tagName = tree.tagName(child);
+      boolean isParagraph = tagName.equals("p");
+      int ownTextLength = isParagraph
+          ? tree.textLength(child)
+          : tree.ownTextLength(child);
       if (ownTextLength < 20)
         continue;
 
       if (ownTextLength > 200)
         weight += Math.max(50, ownTextLength / 10);
 
-      if (child.tagName().equals("h1") || child.tagName().equals("h2")) {
+      if (tagName.equals("h1") || tagName.equals("h2")) {
         weight += 30;
-      } else if (child.tagName().equals("div") || child.tagName().equals("p")) {
-        weight += calcWeightForChild(child, ownText);
-        if (child.tagName().equals("p") && ownTextLength > 50)
-          pEls.add(child);
+      } else if (tagName.equals("div") || tagName.equals("p")) {
+        weight += calcWeightForChild(child, isParagraph);
+        if (tagName.equals("p") && ownTextLength > 50)
+          pEls++;
 
-        if (child.className().toLowerCase().equals("caption"))
-          caption = child;
+        if (tree.className(child).toLowerCase().equals("caption"))
+          hasCaption = true;
       }
     }
 
     // use caption and image
-    if (caption != null)
+    if (hasCaption)
       weight += 30;
 
-    if (pEls.size() >= 2) {
-      for (Element subEl : rootEl.children()) {
-        if ("h1;h2;h3;h4;h5;h6".contains(subEl.tagName())) {
+    if (pEls >= 2) {
+      for (int subEl = tree.firstChild(rootEl); subEl != DomTree.NONE; subEl = tree.nextSibling(subEl)) {
+        String tagName = tree.tagName(subEl);
+        if ("h1;h2;h3;h4;h5;h6".contains(tagName)) {
           weight += 20;
           // headerEls.add(subEl);
-        } else if ("table;li;td;th".contains(subEl.tagName())) {
-          addScore(subEl, -30);
+        } else if ("table;li;td;th".contains(tagName)) {
+          scores.add(tree.element(subEl), -30);
         }
 
-        if ("p".contains(subEl.tagName())) {
-          addScore(subEl, 30);
+        if ("p".contains(tagName)) {
+          scores.add(tree.element(subEl), 30);
         }
       }
     }
     return weight;
   }
 
-  private void addScore(Element el, int score) {
-    setScore(el, getScore(el) + score);
-  }
-
-  private int getScore(Element el) {
-    try {
-      return Integer.parseInt(el.attr(GRAVITY_SCORE_ATTRIBUTE));
-    } catch (NumberFormatException ex) {
-      return 0;
+  /**
+   * @param isParagraph whether to weigh the entire text of {@code child}, rather than its own text.
+   */
+  private int calcWeightForChild(int child, boolean isParagraph) {
+    int c;
+    int textLength;
+    if (isParagraph) {
+      c = tree.countMatches(child, NOISE);
+      textLength = tree.textLength(child);
+    } else {
+      c = tree.countOwnMatches(child, NOISE);
+      textLength = tree.ownTextLength(child);
     }
-  }
-
-  private void setScore(Element el, int score) {
-    el.attr(GRAVITY_SCORE_ATTRIBUTE, Integer.toString(score));
-  }
-
-  private int calcWeightForChild(Element child, String ownText) {
-    int c = StringUtils.countMatches(ownText, "&quot;");
-    c += StringUtils.countMatches(ownText, "&lt;");
-    c += StringUtils.countMatches(ownText, "&gt;");
-    c += StringUtils.countMatches(ownText, "px");
     int val;
     if (c > 5) {
       val = -30;
     } else {
-      val = (int) Math.round(ownText.length() / 25.0);
+      val = (int) Math.round(textLength / 25.0);
     }
 
-    addScore(child, val);
+    scores.add(tree.element(child), val);
     return val;
   }
 
-  private int calcWeight(Element element) {
-    String className = element.className();
-    String id = element.id();
-    String style = element.attr("style");
+  private int calcWeight(int node) {
+    String className = tree.className(node);
+    String id = tree.id(node);
+    String style = tree.attr(node, "style");
 
     int weight = 0;
-    if (configuration.positiveCssClassesAndIds().matcher(className).find()) {
+    if (positiveCssClassesAndIds.reset(className).find()) {
       weight += 35;
     }
-    if (configuration.positiveCssClassesAndIds().matcher(id).find()) {
+    if (positiveCssClassesAndIds.reset(id).find()) {
       weight += 40;
     }
-    if (configuration.unlikelyCssClassesAndIds().matcher(className).find()) {
+    if (unlikelyCssClassesAndIds.reset(className).find()) {
       weight -= 20;
     }
-    if (configuration.unlikelyCssClassesAndIds().matcher(id).find()) {
+    if (unlikelyCssClassesAndIds.reset(id).find()) {
       weight -= 20;
     }
-    if (configuration.negativeCssClassesAndIds().matcher(className).find()) {
+    if (negativeCssClassesAndIds.reset(className).find()) {
       weight -= 50;
     }
-    if (configuration.negativeCssClassesAndIds().matcher(id).find()) {
+    if (negativeCssClassesAndIds.reset(id).find()) {
       weight -= 50;
     }
-    if (style != null && !style.isEmpty() && configuration.negativeCssStyles().matcher(style).find()) {
+    if (style != null && !style.isEmpty() && negativeCssStyles.reset(style).find()) {
       weight -= 50;
     }
     return weight;
   }
 
   /**
-   * @return a set of all important nodes
+   * @return all important nodes, in document order
    */
-  Collection<Element> getNodes(Document doc) {
-    Map<Element, Object> nodes = new LinkedHashMap<>(64);
+  int[] getNodes() {
+    int[] nodes = new int[64];
+    int count = 0;
     int score = 100;
-    for (Element el : doc.select("body").select("*")) {
-      if (configuration.importantNodes().matcher(el.tagName()).matches()) {
-        nodes.put(el, null);
-        setScore(el, score);
+    for (int node = 0; node < tree.size(); node++) {
+      if (configuration.isImportantNode(tree.tagName(node))) {
+        if (count == nodes.length) {
+          nodes = Arrays.copyOf(nodes, count * 2);
+        }
+        nodes[count++] = node;
+        scores.set(tree.element(node), score);
         score = score / 2;
       }
     }
-    return nodes.keySet();
+    return Arrays.copyOf(nodes, count);
   }
 }
@@ -0,0 +1,28 @@
+package com.chimbori.crux.articles;
+
+import com.chimbori.crux.articles.configuration.CompiledConfiguration;
+import com.chimbori.crux.articles.configuration.Configuration;
+
+/**
+ * Helpers & working storage for extracting content with a particular {@link Configuration}, which
+ * can be reused across consecutive extractions instead of being recreated for each page.
+ * <p>
+ * Instances hold reusable {@link java.util.regex.Matcher}s, so they are not thread-safe; each
+ * thread must use its own.
+ */
+final class ExtractionScratch {
+  final CompiledConfiguration configuration;
+  final PreprocessHelpers preprocessHelpers;
+  final PostprocessHelpers postprocessHelpers;
+
+  /**
+   * Always empty between extractions; it retains its capacity, but no references to elements.
+   */
+  final GravityScores scores = new GravityScores();
+
+  ExtractionScratch(Configuration configuration) {
+    this.configuration = CompiledConfiguration.of(configuration);
+    preprocessHelpers = PreprocessHelpers.configure(this.configuration);
+    postprocessHelpers = PostprocessHelpers.configure(this.configuration);
+  }
+}
@@ -0,0 +1,14 @@
+package com.chimbori.crux.articles;
+
+import org.jsoup.nodes.Element;
+
+/**
+ * Gravity scores assigned to elements while looking for the best-match element, kept in a side
+ * table instead of as attributes on the DOM. This avoids formatting & parsing a string attribute on
+ * every score update, and leaves caller-supplied documents free of any extraction artifacts.
+ */
+final class GravityScores extends ElementIntMap {
+  void add(Element element, int score) {
+    set(element, get(element) + score);
+  }
+}
@@ -0,0 +1,194 @@
+package com.chimbori.crux.articles;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * A lightweight scanner that finds where the {@code <head>} of an HTML page ends, without
+ * building a DOM, so that only that prefix needs to be parsed when just the metadata is required.
+ * <p>
+ * Scanning stops at the first tag or text that an HTML parser would place into the body (or at
+ * an explicit {@code <body>}). Tags, comments & doctypes are skipped as a whole, and the contents
+ * of {@code <title>}, {@code <script>}, {@code <style>}, {@code <noframes>} & {@code <noscript>}
+ * are skipped up to their end tag, so markup inside comments, strings or scripts cannot end the
+ * scan early.
+ */
+final class HeadScanner {
+  /**
+   * Start tags that are placed into (or re-parented into) the {@code <head>} by the parser.
+   */
+  private static final Set<String> HEAD_TAGS = new HashSet<>(Arrays.asList(
+      "html", "head", "base", "basefont", "bgsound", "command", "link", "meta",
+      "title", "noframes", "style", "noscript", "script"
+  ));
+
+  /**
+   * Start tags whose contents must not be scanned for tags. JSoup keeps any markup within a
+   * {@code <noscript>} in the {@code <head>} as text, up to its end tag, so it is treated the same.
+   */
+  private static final Set<String> RAW_TEXT_TAGS = new HashSet<>(Arrays.asList(
+      "title", "noframes", "style", "script", "noscript"
+  ));
+
+  /**
+   * End tags that implicitly close the {@code <head>} and open the body.
+   */
+  private static final Set<String> BODY_END_TAGS = new HashSet<>(Arrays.asList(
+      "body", "html", "br"
+  ));
+
+  private HeadScanner() {
+    // Prevent instantiation.
+  }
+
+  /**
+   * @return the index into {@code html} at which body content begins, or {@code html.length()}
+   * if none was found. Parsing {@code html.subSequence(0, endOfHead(html))} yields the same
+   * {@code <head>} as parsing the entire page.
+   */
+  static int endOfHead(CharSequence html) {
+    int length = html.length();
+    int i = 0;
+    while (i < length) {
+      char c = html.charAt(i);
+      if (isWhitespace(c)) {
+        i++;
+        continue;
+      }
+      if (c != '<' || i + 1 >= length) {
+        return i;  // Text content.
+      }
+
+      char next = html.charAt(i + 1);
+      if (next == '!') {
+        i = startsWith(html, i, "<!--") ? skipPast(html, i + 4, "-->") : skipPast(html, i + 2, ">");
+
+      } else if (next == '?') {
+        i = skipPast(html, i + 2, ">");
+
+      } else if (next == '/') {
+        int nameStart = i + 2;
+        if (nameStart >= length || !isAsciiLetter(html.charAt(nameStart))) {
+          i = skipPast(html, nameStart, ">");  // Bogus comment.
+          continue;
+        }
+        int nameEnd = endOfTagName(html, nameStart);
+        if (BODY_END_TAGS.contains(tagName(html, nameStart, nameEnd))) {
+          return i;
+        }
+        i = endOfTag(html, nameEnd);
+
+      } else if (isAsciiLetter(next)) {
+        int nameStart = i + 1;
+        int nameEnd = endOfTagName(html, nameStart);
+        String tagName = tagName(html, nameStart, nameEnd);
+        if (!HEAD_TAGS.contains(tagName)) {
+          return i;
+        }
+        i = endOfTag(html, nameEnd);
+        boolean isSelfClosingScript = tagName.equals("script") && html.charAt(i - 2) == '/';
+        if (RAW_TEXT_TAGS.contains(tagName) && !isSelfClosingScript) {
+          i = endOfRawText(html, i, tagName);
+        }
+
+      } else {
+        return i;  // A literal '<' in text content.
+      }
+    }
+    return length;
+  }
+
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';  // Matches JSoup’s StringUtil.
+  }
+
+  private static boolean isAsciiLetter(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+  }
+
+  private static boolean startsWith(CharSequence html, int offset, String prefix) {
+    if (offset + prefix.length() > html.length()) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length(); i++) {
+      if (Character.toLowerCase(html.charAt(offset + i)) != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the index just past the next occurrence of {@code terminator}, or the end of input.
+   */
+  private static int skipPast(CharSequence html, int offset, String terminator) {
+    for (int i = offset; i < html.length(); i++) {
+      if (startsWith(html, i, terminator)) {
+        return i + terminator.length();
+      }
+    }
+    return html.length();
+  }
+
+  private static int endOfTagName(CharSequence html, int offset) {
+    int i = offset;
+    while (i < html.length()) {
+      char c = html.charAt(i);
+      if (isWhitespace(c) || c == '/' || c == '>') {
+        break;
+      }
+      i++;
+    }
+    return i;
+  }
+
+  private static String tagName(CharSequence html, int start, int end) {
+    return html.subSequence(start, end).toString().toLowerCase(Locale.ENGLISH);
+  }
+
+  /**
+   * @return the index just past the {@code >} that closes the tag whose attributes start at
+   * {@code offset}; a {@code >} within a quoted attribute value does not close the tag.
+   */
+  private static int endOfTag(CharSequence html, int offset) {
+    int length = html.length();
+    int i = offset;
+    while (i < length) {
+      char c = html.charAt(i++);
+      if (c == '>') {
+        return i;
+      } else if (c == '=') {
+        while (i < length && isWhitespace(html.charAt(i))) {
+          i++;
+        }
+        if (i < length && (html.charAt(i) == '"' || html.charAt(i) == '\'')) {
+          char quote = html.charAt(i++);
+          while (i < length && html.charAt(i) != quote) {
+            i++;
+          }
+          i++;
+        }
+      }
+    }
+    return length;
+  }
+
+  /**
+   * @return the index of the end tag that closes a raw text element, or the end of input.
+   */
+  private static int endOfRawText(CharSequence html, int offset, String tagName) {
+    String endTag = "</" + tagName;
+    for (int i = offset; i < html.length(); i++) {
+      if (html.charAt(i) == '<' && startsWith(html, i, endTag)) {
+        int nameEnd = i + endTag.length();
+        if (nameEnd == html.length() || isWhitespace(html.charAt(nameEnd))
+            || html.charAt(nameEnd) == '/' || html.charAt(nameEnd) == '>') {
+          return i;
+        }
+      }
+    }
+    return html.length();
+  }
+}
@@ -0,0 +1,102 @@
+package com.chimbori.crux.articles;
+
+import com.chimbori.crux.articles.configuration.CompiledConfiguration;
+import com.chimbori.crux.common.CharsetConverter;
+import com.chimbori.crux.common.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads a page from a channel chunk by chunk, decoding it as it arrives, and only as far as needed:
+ * up to the end of the {@code <head>} for metadata, or up to the end of the article (as determined
+ * by {@link ContentEndScanner}) for content. Reading resumes where it left off if more is needed
+ * later. The channel is closed once reading stops for good.
+ */
+final class HtmlStream {
+  static final int CHUNK_BYTES = 8 * 1024;
+
+  private final ReadableByteChannel channel;
+  private final CharsetConverter.StreamDecoder decoder;
+  private final int maxBytes;
+  private final ByteBuffer chunk = ByteBuffer.allocate(CHUNK_BYTES);
+  private final StringBuilder html = new StringBuilder();
+
+  private long bytesRead = 0;
+  private boolean endOfInput = false;
+
+  HtmlStream(ReadableByteChannel channel, String contentType, int maxBytes) {
+    this.channel = channel;
+    this.decoder = new CharsetConverter.StreamDecoder(contentType);
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * @return the page up to where body content begins (see {@link HeadScanner#endOfHead}).
+   */
+  String readHead() {
+    while (true) {
+      int end = HeadScanner.endOfHead(html);
+      // A tag at the very end of what has been read so far may still be incomplete.
+      if (endOfInput || (end < html.length() && html.indexOf(">", end) >= 0)) {
+        return html.substring(0, end);
+      }
+      readChunk();
+    }
+  }
+
+  /**
+   * @return the page up to the end of its article, or all of it if no article could be identified
+   * before the end of input. No further bytes are read after this.
+   */
+  String readContent(CompiledConfiguration configuration) {
+    ContentEndScanner scanner = new ContentEndScanner(configuration);
+    while (!scanner.scan(html, endOfInput)) {
+      if (endOfInput) {
+        return html.toString();
+      }
+      readChunk();
+    }
+    close();
+    return html.substring(0, scanner.end());
+  }
+
+  long bytesRead() {
+    return bytesRead;
+  }
+
+  private void readChunk() {
+    chunk.clear();
+    try {
+      int n = channel.read(chunk);
+      if (n < 0) {
+        endOfInput = true;
+      } else {
+        bytesRead += n;
+        if (bytesRead >= maxBytes) {
+          Log.i("maxBytes " + maxBytes + " exceeded. HTML may be broken.");
+          chunk.limit(chunk.position() - (int) (bytesRead - maxBytes));
+          bytesRead = maxBytes;
+          endOfInput = true;
+        }
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+      endOfInput = true;  // Extract whatever was read before the failure.
+    }
+    chunk.flip();
+    decoder.decode(chunk, endOfInput, html);
+    if (endOfInput) {
+      close();
+    }
+  }
+
+  private void close() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      // Ignore.
+    }
+  }
+}
@@ -7,8 +7,10 @@ import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 
 class ImageHelpers {
@@ -16,7 +18,7 @@ class ImageHelpers {
     // Prevent instantiation.
   }
 
-  static String findLargestIcon(Elements iconNodes) {
+  static String findLargestIcon(Collection<Element> iconNodes) {
     Element largestIcon = null;
     long maxSize = -1;
     for (Element iconNode : iconNodes) {
@@ -79,14 +81,21 @@ class ImageHelpers {
    * the postprocess step, because that step removes tags that are useful for image extraction.
    */
   static List<Article.Image> extractImages(Element topNode) {
+    return extractImages(topNode, null);
+  }
+
+  /**
+   * @param overlay the nodes to leave out, along with their descendants; may be null.
+   */
+  static List<Article.Image> extractImages(Element topNode, DocumentOverlay overlay) {
     List<Article.Image> images = new ArrayList<>();
     if (topNode == null) {
       return images;
     }
 
-    Elements imgElements = topNode.select("img");
+    Elements imgElements = retained(topNode.select("img"), overlay);
     if (imgElements.isEmpty() && topNode.parent() != null) {
-      imgElements = topNode.parent().select("img");
+      imgElements = retained(topNode.parent().select("img"), overlay);
     }
 
     int maxWeight = 0;
@@ -141,4 +150,15 @@ class ImageHelpers {
       return o2.weight - o1.weight;
     }
   }
+
+  private static Elements retained(Elements elements, DocumentOverlay overlay) {
+    if (overlay != null) {
+      for (Iterator<Element> iterator = elements.iterator(); iterator.hasNext(); ) {
+        if (!overlay.isRetained(iterator.next())) {
+          iterator.remove();
+        }
+      }
+    }
+    return elements;
+  }
 }
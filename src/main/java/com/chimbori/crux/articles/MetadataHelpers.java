@@ -1,127 +1,150 @@
 package com.chimbori.crux.articles;
 
-import com.chimbori.crux.common.HeuristicString;
+import com.chimbori.crux.common.HeuristicString.Candidate;
 import com.chimbori.crux.common.StringUtils;
 
-import org.jsoup.nodes.Document;
-
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
+import static com.chimbori.crux.common.HeuristicString.firstOf;
+
+/**
+ * Resolves each metadata field from the candidates collected in a {@link MetadataIndex}, in order
+ * of preference.
+ */
 class MetadataHelpers {
+  private static final Candidate<MetadataIndex> TITLE = new Candidate<MetadataIndex>() {
+    @Override
+    public String get(MetadataIndex metadata) {
+      return metadata.title();
+    }
+  };
+
+  private static final Candidate<MetadataIndex> HEAD_TITLE = innerTrimmed(new Candidate<MetadataIndex>() {
+    @Override
+    public String get(MetadataIndex metadata) {
+      return metadata.headTitleText();
+    }
+  });
+
+  private static final Candidate<MetadataIndex> META_TITLE = innerTrimmed(headMetaName("title"));
+  private static final Candidate<MetadataIndex> OG_TITLE = innerTrimmed(headMetaProperty("og:title"));
+  private static final Candidate<MetadataIndex> TWITTER_TITLE = innerTrimmed(headMetaName("twitter:title"));
+
+  private static final Candidate<MetadataIndex> CANONICAL_URL = urlEncoded(headLink("canonical"));
+  private static final Candidate<MetadataIndex> OG_URL = urlEncoded(headMetaProperty("og:url"));
+  private static final Candidate<MetadataIndex> TWITTER_URL = urlEncoded(headMetaName("twitter:url"));
+
+  private static final Candidate<MetadataIndex> DESCRIPTION = innerTrimmed(headMetaName("description"));
+  private static final Candidate<MetadataIndex> OG_DESCRIPTION = innerTrimmed(headMetaProperty("og:description"));
+  private static final Candidate<MetadataIndex> TWITTER_DESCRIPTION = innerTrimmed(headMetaName("twitter:description"));
+
+  private static final Candidate<MetadataIndex> OG_SITE_NAME = innerTrimmed(headMetaProperty("og:site_name"));
+  private static final Candidate<MetadataIndex> APPLICATION_NAME = innerTrimmed(headMetaName("application-name"));
+
+  private static final Candidate<MetadataIndex> TWITTER_IMAGE = urlEncoded(headMetaName("twitter:image"));
+  private static final Candidate<MetadataIndex> OG_IMAGE = urlEncoded(headMetaProperty("og:image"));
+  private static final Candidate<MetadataIndex> PREVIEW_IMAGE = new Candidate<MetadataIndex>() {
+    @Override
+    public String get(MetadataIndex metadata) {
+      return extractPreviewImageUrl(metadata);
+    }
+  };
+
+  private static final Candidate<MetadataIndex> IMAGE_SRC = urlEncoded(link("image_src"));
+  private static final Candidate<MetadataIndex> THUMBNAIL = urlEncoded(headMetaName("thumbnail"));
+
+  private static final Candidate<MetadataIndex> RSS_FEED = link("alternate", "application/rss+xml");
+  private static final Candidate<MetadataIndex> ATOM_FEED = link("alternate", "application/atom+xml");
+
+  private static final Candidate<MetadataIndex> ICON = urlEncoded(new Candidate<MetadataIndex>() {
+    @Override
+    public String get(MetadataIndex metadata) {
+      return ImageHelpers.findLargestIcon(metadata.headLinks("icon"));
+    }
+  });
+
+  private static final Candidate<MetadataIndex> APPLE_TOUCH_ICON = urlEncoded(new Candidate<MetadataIndex>() {
+    @Override
+    public String get(MetadataIndex metadata) {
+      return ImageHelpers.findLargestIcon(metadata.headLinksWithRelPrefix("apple-touch-icon"));
+    }
+  });
+
+  private static final Candidate<MetadataIndex> SHORTCUT_ICON = urlEncoded(new Candidate<MetadataIndex>() {
+    @Override
+    public String get(MetadataIndex metadata) {
+      return metadata.linkHrefWithRelPrefixInHeadOrSuffix("shortcut", "icon");
+    }
+  });
+
   private MetadataHelpers() {
     // Prevent instantiation.
   }
 
-  static String extractTitle(Document doc) {
-    try {
-      return StringUtils.cleanTitle(new HeuristicString(doc.title())
-          .or(StringUtils.innerTrim(doc.select("head title").text()))
-          .or(StringUtils.innerTrim(doc.select("head meta[name=title]").attr("content")))
-          .or(StringUtils.innerTrim(doc.select("head meta[property=og:title]").attr("content")))
-          .or(StringUtils.innerTrim(doc.select("head meta[name=twitter:title]").attr("content")))
-          .toString());
-    } catch (HeuristicString.CandidateFound candidateFound) {
-      return StringUtils.cleanTitle(candidateFound.candidate);
-    }
+  static String extractTitle(MetadataIndex metadata) {
+    return StringUtils.cleanTitle(firstOf(metadata, TITLE, HEAD_TITLE, META_TITLE, OG_TITLE, TWITTER_TITLE));
   }
 
-  static String extractAmpUrl(Document doc) {
-    try {
-      return new HeuristicString(StringUtils.urlEncodeSpaceCharacter(doc.select("link[rel=amphtml]").attr("href")))
-          .toString();
-    } catch (HeuristicString.CandidateFound candidateFound) {
-      return candidateFound.candidate;
-    }
+  static String extractAmpUrl(MetadataIndex metadata) {
+    return StringUtils.urlEncodeSpaceCharacter(metadata.linkHref("amphtml"));
   }
 
-  static String extractCanonicalUrl(Document doc) {
-    try {
-      return new HeuristicString(null)
-          .or(StringUtils.urlEncodeSpaceCharacter(doc.select("head link[rel=canonical]").attr("href")))
-          .or(StringUtils.urlEncodeSpaceCharacter(doc.select("head meta[property=og:url]").attr("content")))
-          .or(StringUtils.urlEncodeSpaceCharacter(doc.select("head meta[name=twitter:url]").attr("content")))
-          .toString();
-    } catch (HeuristicString.CandidateFound candidateFound) {
-      return candidateFound.candidate;
-    }
+  static String extractCanonicalUrl(MetadataIndex metadata) {
+    return firstOf(metadata, CANONICAL_URL, OG_URL, TWITTER_URL);
   }
 
-  static String extractDescription(Document doc) {
-    try {
-      return new HeuristicString(null)
-          .or(StringUtils.innerTrim(doc.select("head meta[name=description]").attr("content")))
-          .or(StringUtils.innerTrim(doc.select("head meta[property=og:description]").attr("content")))
-          .or(StringUtils.innerTrim(doc.select("head meta[name=twitter:description]").attr("content")))
-          .toString();
-    } catch (HeuristicString.CandidateFound candidateFound) {
-      return candidateFound.candidate;
-    }
+  static String extractDescription(MetadataIndex metadata) {
+    return firstOf(metadata, DESCRIPTION, OG_DESCRIPTION, TWITTER_DESCRIPTION);
   }
 
-  static String extractSiteName(Document doc) {
-    try {
-      return new HeuristicString(null)
-          .or(StringUtils.innerTrim(doc.select("head meta[property=og:site_name]").attr("content")))
-          .or(StringUtils.innerTrim(doc.select("head meta[name=application-name]").attr("content")))
-          .toString();
-    } catch (HeuristicString.CandidateFound candidateFound) {
-      return candidateFound.candidate;
-    }
+  static String extractSiteName(MetadataIndex metadata) {
+    return firstOf(metadata, OG_SITE_NAME, APPLICATION_NAME);
   }
 
-  static String extractThemeColor(Document doc) {
-    return doc.select("meta[name=theme-color]").attr("content");
-  }
-
-  static String extractImageUrl(Document doc, List<Article.Image> images) {
-    try {
-      return new HeuristicString(null)
-          // Twitter Cards and Open Graph images are usually higher quality, so rank them first.
-          .or(StringUtils.urlEncodeSpaceCharacter(doc.select("head meta[name=twitter:image]").attr("content")))
-          .or(StringUtils.urlEncodeSpaceCharacter(doc.select("head meta[property=og:image]").attr("content")))
-          // Then, grab any hero images from the article itself.
-          .or(images != null && images.size() > 0 ? StringUtils.urlEncodeSpaceCharacter(images.get(0).src) : null)
-          // image_src or thumbnails are usually low quality, so prioritize them *after* article images.
-          .or(StringUtils.urlEncodeSpaceCharacter(doc.select("link[rel=image_src]").attr("href")))
-          .or(StringUtils.urlEncodeSpaceCharacter(doc.select("head meta[name=thumbnail]").attr("content")))
-          .toString();
-    } catch (HeuristicString.CandidateFound candidateFound) {
-      return candidateFound.candidate;
-    }
+  static String extractThemeColor(MetadataIndex metadata) {
+    return metadata.metaNameContent("theme-color");
   }
 
-  static String extractFeedUrl(Document doc) {
-    try {
-      return new HeuristicString(null)
-          .or(doc.select("link[rel=alternate]").select("link[type=application/rss+xml]").attr("href"))
-          .or(doc.select("link[rel=alternate]").select("link[type=application/atom+xml]").attr("href"))
-          .toString();
-    } catch (HeuristicString.CandidateFound candidateFound) {
-      return candidateFound.candidate;
-    }
+  /**
+   * Images declared specifically for link previews, which take precedence over all other images.
+   */
+  static String extractPreviewImageUrl(MetadataIndex metadata) {
+    // Twitter Cards and Open Graph images are usually higher quality, so rank them first.
+    return firstOf(metadata, TWITTER_IMAGE, OG_IMAGE);
   }
 
-  static String extractVideoUrl(Document doc) {
-    return StringUtils.urlEncodeSpaceCharacter(doc.select("head meta[property=og:video]").attr("content"));
+  static String extractImageUrl(MetadataIndex metadata, final List<Article.Image> images) {
+    return firstOf(metadata,
+        PREVIEW_IMAGE,
+        // Then, grab any hero images from the article itself.
+        new Candidate<MetadataIndex>() {
+          @Override
+          public String get(MetadataIndex metadata) {
+            return images != null && images.size() > 0 ? StringUtils.urlEncodeSpaceCharacter(images.get(0).src) : null;
+          }
+        },
+        // image_src or thumbnails are usually low quality, so prioritize them *after* article images.
+        IMAGE_SRC,
+        THUMBNAIL);
   }
 
-  static String extractFaviconUrl(Document doc) {
-    try {
-      return new HeuristicString(null)
-          .or(StringUtils.urlEncodeSpaceCharacter(ImageHelpers.findLargestIcon(doc.select("head link[rel=icon]"))))
-          .or(StringUtils.urlEncodeSpaceCharacter(ImageHelpers.findLargestIcon(doc.select("head link[rel^=apple-touch-icon]"))))
-          .or(StringUtils.urlEncodeSpaceCharacter(doc.select("head link[rel^=shortcut],link[rel$=icon]").attr("href")))
-          .toString();
-    } catch (HeuristicString.CandidateFound candidateFound) {
-      return candidateFound.candidate;
-    }
+  static String extractFeedUrl(MetadataIndex metadata) {
+    return firstOf(metadata, RSS_FEED, ATOM_FEED);
+  }
+
+  static String extractVideoUrl(MetadataIndex metadata) {
+    return StringUtils.urlEncodeSpaceCharacter(metadata.headMetaPropertyContent("og:video"));
+  }
+
+  static String extractFaviconUrl(MetadataIndex metadata) {
+    return firstOf(metadata, ICON, APPLE_TOUCH_ICON, SHORTCUT_ICON);
   }
 
-  static Collection<String> extractKeywords(Document doc) {
-    String content = StringUtils.innerTrim(doc.select("head meta[name=keywords]").attr("content"));
+  static Collection<String> extractKeywords(MetadataIndex metadata) {
+    String content = StringUtils.innerTrim(metadata.headMetaNameContent("keywords"));
 
     if (content.startsWith("[") && content.endsWith("]")) {
       content = content.substring(1, content.length() - 1);
@@ -133,4 +156,67 @@ class MetadataHelpers {
     }
     return Collections.emptyList();
   }
+
+  private static Candidate<MetadataIndex> headMetaName(final String name) {
+    return new Candidate<MetadataIndex>() {
+      @Override
+      public String get(MetadataIndex metadata) {
+        return metadata.headMetaNameContent(name);
+      }
+    };
+  }
+
+  private static Candidate<MetadataIndex> headMetaProperty(final String property) {
+    return new Candidate<MetadataIndex>() {
+      @Override
+      public String get(MetadataIndex metadata) {
+        return metadata.headMetaPropertyContent(property);
+      }
+    };
+  }
+
+  private static Candidate<MetadataIndex> headLink(final String rel) {
+    return new Candidate<MetadataIndex>() {
+      @Override
+      public String get(MetadataIndex metadata) {
+        return metadata.headLinkHref(rel);
+      }
+    };
+  }
+
+  private static Candidate<MetadataIndex> link(final String rel) {
+    return new Candidate<MetadataIndex>() {
+      @Override
+      public String get(MetadataIndex metadata) {
+        return metadata.linkHref(rel);
+      }
+    };
+  }
+
+  private static Candidate<MetadataIndex> link(final String rel, final String type) {
+    return new Candidate<MetadataIndex>() {
+      @Override
+      public String get(MetadataIndex metadata) {
+        return metadata.linkHref(rel, type);
+      }
+    };
+  }
+
+  private static Candidate<MetadataIndex> innerTrimmed(final Candidate<MetadataIndex> candidate) {
+    return new Candidate<MetadataIndex>() {
+      @Override
+      public String get(MetadataIndex metadata) {
+        return StringUtils.innerTrim(candidate.get(metadata));
+      }
+    };
+  }
+
+  private static Candidate<MetadataIndex> urlEncoded(final Candidate<MetadataIndex> candidate) {
+    return new Candidate<MetadataIndex>() {
+      @Override
+      public String get(MetadataIndex metadata) {
+        return StringUtils.urlEncodeSpaceCharacter(candidate.get(metadata));
+      }
+    };
+  }
 }
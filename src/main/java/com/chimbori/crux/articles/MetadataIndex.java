@@ -0,0 +1,262 @@
+package com.chimbori.crux.articles;
+
+import org.jsoup.helper.StringUtil;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * All {@code <title>}, {@code <meta>} and {@code <link>} elements of a document, collected in a
+ * single traversal and bucketed by their {@code name}, {@code property} and {@code rel}
+ * attributes, so that each metadata field can be resolved without walking the document again.
+ * <p>
+ * Lookups reproduce the JSoup selectors they replace: attribute values are trimmed and compared
+ * case-insensitively (as {@code [attr=value]} does), elements are considered in document order,
+ * and an attribute is read from the first matching element that has it (as
+ * {@link org.jsoup.select.Elements#attr(String)} does). Lookups whose selector is prefixed with
+ * {@code head} consider only elements within {@code <head>}.
+ */
+final class MetadataIndex {
+  private static final String HEAD = "head";
+
+  private Element firstTitle = null;
+  private final List<Element> headTitles = new ArrayList<>(1);
+  private final List<Element> links = new ArrayList<>();
+  private final List<Element> headLinks = new ArrayList<>();
+
+  private final Map<String, List<Element>> metaByName = new HashMap<>();
+  private final Map<String, List<Element>> headMetaByName = new HashMap<>();
+  private final Map<String, List<Element>> headMetaByProperty = new HashMap<>();
+  private final Map<String, List<Element>> linkByRel = new HashMap<>();
+  private final Map<String, List<Element>> headLinkByRel = new HashMap<>();
+
+  private MetadataIndex() {
+  }
+
+  static MetadataIndex of(Document doc) {
+    final MetadataIndex index = new MetadataIndex();
+    new NodeTraversor(new NodeVisitor() {
+      private int headDepth = 0;
+
+      @Override
+      public void head(Node node, int depth) {
+        if (node instanceof Element) {
+          Element element = (Element) node;
+          index.add(element, headDepth > 0);
+          if (element.tagName().equals(HEAD)) {
+            headDepth++;
+          }
+        }
+      }
+
+      @Override
+      public void tail(Node node, int depth) {
+        if (node instanceof Element && ((Element) node).tagName().equals(HEAD)) {
+          headDepth--;
+        }
+      }
+    }).traverse(doc);
+    return index;
+  }
+
+  private void add(Element element, boolean isInHead) {
+    String tagName = element.tagName();
+    if (tagName.equals("title")) {
+      if (firstTitle == null) {
+        firstTitle = element;
+      }
+      if (isInHead) {
+        headTitles.add(element);
+      }
+
+    } else if (tagName.equals("meta")) {
+      if (element.hasAttr("name")) {
+        String name = key(element.attr("name"));
+        put(metaByName, name, element);
+        if (isInHead) {
+          put(headMetaByName, name, element);
+        }
+      }
+      if (isInHead && element.hasAttr("property")) {
+        put(headMetaByProperty, key(element.attr("property")), element);
+      }
+
+    } else if (tagName.equals("link")) {
+      links.add(element);
+      if (isInHead) {
+        headLinks.add(element);
+      }
+      if (element.hasAttr("rel")) {
+        String rel = key(element.attr("rel"));
+        put(linkByRel, rel, element);
+        if (isInHead) {
+          put(headLinkByRel, rel, element);
+        }
+      }
+    }
+  }
+
+  /**
+   * Equivalent to {@code doc.title()}.
+   */
+  String title() {
+    return firstTitle != null ? StringUtil.normaliseWhitespace(firstTitle.text()).trim() : "";
+  }
+
+  /**
+   * Equivalent to {@code doc.select("head title").text()}.
+   */
+  String headTitleText() {
+    if (headTitles.size() == 1) {
+      return headTitles.get(0).text();
+    }
+    StringBuilder text = new StringBuilder();
+    for (Element title : headTitles) {
+      if (text.length() != 0) {
+        text.append(" ");
+      }
+      text.append(title.text());
+    }
+    return text.toString();
+  }
+
+  /**
+   * Equivalent to {@code doc.select("head meta[name=<name>]").attr("content")}.
+   */
+  String headMetaNameContent(String name) {
+    return firstAttr(headMetaByName.get(key(name)), "content");
+  }
+
+  /**
+   * Equivalent to {@code doc.select("head meta[property=<property>]").attr("content")}.
+   */
+  String headMetaPropertyContent(String property) {
+    return firstAttr(headMetaByProperty.get(key(property)), "content");
+  }
+
+  /**
+   * Equivalent to {@code doc.select("meta[name=<name>]").attr("content")}.
+   */
+  String metaNameContent(String name) {
+    return firstAttr(metaByName.get(key(name)), "content");
+  }
+
+  /**
+   * Equivalent to {@code doc.select("link[rel=<rel>]").attr("href")}.
+   */
+  String linkHref(String rel) {
+    return firstAttr(linkByRel.get(key(rel)), "href");
+  }
+
+  /**
+   * Equivalent to {@code doc.select("head link[rel=<rel>]").attr("href")}.
+   */
+  String headLinkHref(String rel) {
+    return firstAttr(headLinkByRel.get(key(rel)), "href");
+  }
+
+  /**
+   * Equivalent to {@code doc.select("link[rel=<rel>]").select("link[type=<type>]").attr("href")}.
+   */
+  String linkHref(String rel, String type) {
+    List<Element> candidates = linkByRel.get(key(rel));
+    if (candidates != null) {
+      for (Element link : candidates) {
+        if (link.hasAttr("type") && link.attr("type").trim().equalsIgnoreCase(type) && link.hasAttr("href")) {
+          return link.attr("href");
+        }
+      }
+    }
+    return "";
+  }
+
+  /**
+   * Equivalent to {@code doc.select("head link[rel=<rel>]")}.
+   */
+  List<Element> headLinks(String rel) {
+    List<Element> candidates = headLinkByRel.get(key(rel));
+    return candidates != null ? candidates : Collections.<Element>emptyList();
+  }
+
+  /**
+   * Equivalent to {@code doc.select("head link[rel^=<relPrefix>]")}.
+   */
+  List<Element> headLinksWithRelPrefix(String relPrefix) {
+    List<Element> matches = new ArrayList<>();
+    for (Element link : headLinks) {
+      if (link.hasAttr("rel") && link.attr("rel").toLowerCase().startsWith(relPrefix)) {
+        matches.add(link);
+      }
+    }
+    return matches;
+  }
+
+  /**
+   * Equivalent to {@code doc.select("head link[rel^=<headRelPrefix>],link[rel$=<relSuffix>]").attr("href")}.
+   */
+  String linkHrefWithRelPrefixInHeadOrSuffix(String headRelPrefix, String relSuffix) {
+    int headIndex = 0;
+    for (Element link : links) {
+      boolean isInHead = headIndex < headLinks.size() && headLinks.get(headIndex) == link;
+      if (isInHead) {
+        headIndex++;
+      }
+      if (!link.hasAttr("rel") || !link.hasAttr("href")) {
+        continue;
+      }
+      String rel = link.attr("rel").toLowerCase();
+      if ((isInHead && rel.startsWith(headRelPrefix)) || rel.endsWith(relSuffix)) {
+        return link.attr("href");
+      }
+    }
+    return "";
+  }
+
+  private static String firstAttr(List<Element> elements, String attributeKey) {
+    if (elements != null) {
+      for (Element element : elements) {
+        if (element.hasAttr(attributeKey)) {
+          return element.attr(attributeKey);
+        }
+      }
+    }
+    return "";
+  }
+
+  private static void put(Map<String, List<Element>> buckets, String key, Element element) {
+    List<Element> bucket = buckets.get(key);
+    if (bucket == null) {
+      bucket = new ArrayList<>(1);
+      buckets.put(key, bucket);
+    }
+    bucket.add(element);
+  }
+
+  /**
+   * Canonicalizes an attribute value such that two values produce the same key if and only if
+   * {@code a.trim().equalsIgnoreCase(b.trim())}, which is how JSoup compares {@code [attr=value]}.
+   */
+  private static String key(String value) {
+    String trimmed = value.trim();
+    char[] key = null;
+    for (int i = 0; i < trimmed.length(); i++) {
+      char c = trimmed.charAt(i);
+      char canonical = Character.toLowerCase(Character.toUpperCase(c));
+      if (canonical != c && key == null) {
+        key = trimmed.toCharArray();
+      }
+      if (key != null) {
+        key[i] = canonical;
+      }
+    }
+    return key == null ? trimmed : new String(key);
+  }
+}
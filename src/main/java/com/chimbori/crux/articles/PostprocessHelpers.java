@@ -1,16 +1,20 @@
 package com.chimbori.crux.articles;
 
+import com.chimbori.crux.articles.PostprocessPipeline.Order;
+import com.chimbori.crux.articles.PostprocessPipeline.Scope;
+import com.chimbori.crux.articles.PostprocessPipeline.Stage;
+import com.chimbori.crux.articles.configuration.CompiledConfiguration;
 import com.chimbori.crux.articles.configuration.Configuration;
 import com.chimbori.crux.common.Log;
 import com.chimbori.crux.common.StringUtils;
 import org.jsoup.nodes.*;
 import org.jsoup.select.Elements;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-
-import static com.chimbori.crux.articles.ExtractionHelpers.GRAVITY_SCORE_ATTRIBUTE;
-import static com.chimbori.crux.articles.ExtractionHelpers.GRAVITY_SCORE_SELECTOR;
+import java.util.regex.Matcher;
 
 /**
  * Cleans up the best-match Element after one has been picked, in order to provide a sanitized
@@ -18,142 +22,320 @@ import static com.chimbori.crux.articles.ExtractionHelpers.GRAVITY_SCORE_SELECTO
  */
 class PostprocessHelpers {
 
-  private final Configuration configuration;
+  private final CompiledConfiguration configuration;
+  private final Matcher unlikelyCssStyles;
+  private final RemoveNodesWithNegativeScores removeNodesWithNegativeScores = new RemoveNodesWithNegativeScores();
+
+  /**
+   * The cleanup rules, in the order in which they take effect.
+   */
+  private final PostprocessPipeline pipeline = new PostprocessPipeline(Arrays.asList(
+      removeNodesWithNegativeScores,
+      new UnwrapFigures(),
+      new ReplaceLineBreaksWithSpaces(),
+      new RemoveUnlikelyChildNodes(),
+      new RemoveTagsButRetainContent(),
+      new RemoveTagsNotLikelyToBeParagraphs(),
+      new RemoveTopLevelTagsNotLikelyToBeParagraphs(),
+      new RemoveShortParagraphs(),
+      new RemoveDisallowedAttributes()));
 
   private PostprocessHelpers(Configuration configuration) {
-    this.configuration = configuration;
+    this.configuration = CompiledConfiguration.of(configuration);
+    unlikelyCssStyles = this.configuration.unlikelyCssStyles().matcher("");
   }
 
   static PostprocessHelpers configure(Configuration config) {
     return new PostprocessHelpers(config);
   }
 
-  Document postprocess(Element topNode, List<Article.Image> images) {
+  /**
+   * @param textStatistics text measurements taken before postprocessing began, i.e. after scoring.
+   * @param moveContent    whether to move the retained nodes out of {@code topNode}’s document into
+   *                       the returned one, rather than copying them.
+   */
+  Document postprocess(Element topNode, List<Article.Image> images, GravityScores scores, TextStatistics textStatistics,
+                       boolean moveContent) {
     Log.i("postprocess");
     Document doc = new Document("");
     if (topNode == null) {
       return doc;
     }
 
-    removeNodesWithNegativeScores(topNode, extractImageWithPositiveScore(images));
-    unwrapFigures(topNode);
-    replaceLineBreaksWithSpaces(topNode);
-    removeUnlikelyChildNodes(topNode);
-    removeTagsButRetainContent(topNode);
-    removeTagsNotLikelyToBeParagraphs(topNode);
-    removeTopLevelTagsNotLikelyToBeParagraphs(topNode);
-    removeShortParagraphs(topNode);
-    removeDisallowedAttributes(topNode);
-
-    for (Node node : topNode.childNodes()) {
-      doc.appendChild(node.clone());  // TODO: Don’t copy each item separately.
+    cleanUp(topNode, images, scores, textStatistics);
+    if (moveContent) {
+      // Appending each node to the new document detaches it from topNode.
+      for (Node node : new ArrayList<>(topNode.childNodes())) {
+        doc.appendChild(node);
+      }
+    } else {
+      for (Node node : topNode.childNodes()) {
+        doc.appendChild(node.clone());
+      }
     }
     return doc;
   }
 
-  private void unwrapFigures(Element topNode) {
-    for (Element element : topNode.select("figure")) {
-      Element childNode = element.getElementsByTag("img").first();
-      if (childNode != null) {
-        element.replaceWith(childNode);
-      }
+  /**
+   * Same as {@link #postprocess}, but produces the compact {@link ArticleBody} directly from the
+   * cleaned-up tree, instead of copying it into a new {@link Document}.
+   */
+  ArticleBody postprocessIntoBody(Element topNode, List<Article.Image> images, GravityScores scores,
+                                  TextStatistics textStatistics) {
+    Log.i("postprocessIntoBody");
+    if (topNode == null) {
+      return ArticleBody.of(Collections.<Node>emptyList(), "");
     }
+    cleanUp(topNode, images, scores, textStatistics);
+    return ArticleBody.of(topNode.childNodes(), topNode.baseUri());
   }
 
-  private void replaceLineBreaksWithSpaces(Element topNode) {
-    for (Element brNextToBrElement : topNode.select("br + br")) {
-      brNextToBrElement.remove();
+  private void cleanUp(Element topNode, List<Article.Image> images, GravityScores scores, TextStatistics textStatistics) {
+    removeNodesWithNegativeScores.prepare(scores, textStatistics, extractImageWithPositiveScore(images));
+    pipeline.run(topNode);
+  }
+
+  /**
+   * Elements are visited in document order, so removing one never changes the text of an element
+   * visited later; this lets text lengths be read from {@code textStatistics}, which were measured
+   * before any removals.
+   */
+  private class RemoveNodesWithNegativeScores extends Stage {
+    private GravityScores scores;
+    private TextStatistics textStatistics;
+    private Elements imageElements;
+
+    RemoveNodesWithNegativeScores() {
+      super(Order.PRE_ORDER, Scope.ALL, false, true);
     }
-    for (Element brElement : topNode.select("br")) {
-      if (brElement.previousSibling() != null) {
-        brElement.previousSibling().after(" • ");
-      } else {
-        brElement.parent().append(" • ");
+
+    void prepare(GravityScores scores, TextStatistics textStatistics, Elements imageElements) {
+      this.scores = scores;
+      this.textStatistics = textStatistics;
+      this.imageElements = imageElements;
+    }
+
+    @Override
+    Element apply(Element element, int depth) {
+      // Retain images that have previously been identified by a high score.
+      if (!scores.contains(element) || imageElements.contains(element)) {
+        return element;
       }
-      brElement.unwrap();
+
+      int score = scores.get(element);
+      if (score < 0 || textStatistics.textLength(element) < configuration.minLengthForParagraphs()) {
+        Log.printAndRemove(element, "removeNodesWithNegativeScores");
+        return null;
+      }
+      return element;
     }
   }
 
-  private void removeTopLevelTagsNotLikelyToBeParagraphs(Element element) {
-    for (Element childElement : element.children()) {
-      if (!configuration.retainTagsTopLevel().contains(childElement.tagName())) {
-        Log.printAndRemove(childElement, "removeTopLevelTagsNotLikelyToBeParagraphs");
+  /**
+   * Looks for the first image anywhere within each figure, so it needs the figure’s descendants to
+   * have been through all earlier stages.
+   */
+  private class UnwrapFigures extends Stage {
+    UnwrapFigures() {
+      super(Order.PRE_ORDER, Scope.ALL, true, true);
+    }
+
+    @Override
+    Element apply(Element element, int depth) {
+      if (!element.tagName().equals("figure")) {
+        return element;
+      }
+      Element childNode = element.getElementsByTag("img").first();
+      if (childNode == null) {
+        return element;
       }
+      element.replaceWith(childNode);
+      return childNode;
     }
   }
 
-  private void removeTagsNotLikelyToBeParagraphs(Element element) {
-    for (Element childElement : element.children()) {
-      if (!configuration.retainTags().contains(childElement.tagName())) {
-        Log.printAndRemove(childElement, "removeTagsNotLikelyToBeParagraphs");
-      } else if (childElement.children().size() > 0) {
-        removeTagsNotLikelyToBeParagraphs(childElement);
+  /**
+   * Replaces each {@code <br>} with a bullet, and drops those that directly follow another one
+   * (ignoring text in between). The bullet is placed before the line break, or at the end of its
+   * parent if the line break came first. Later stages of the same walk may already have removed
+   * elements preceding a line break, so both decisions are based on the siblings seen by this stage,
+   * tracked separately at each depth.
+   */
+  private static class ReplaceLineBreaksWithSpaces extends Stage {
+    private Element[] parents = new Element[16];
+    private boolean[] followsLineBreak = new boolean[16];
+    private boolean[] followsElement = new boolean[16];
+
+    ReplaceLineBreaksWithSpaces() {
+      super(Order.PRE_ORDER, Scope.DESCENDANTS, false, true);
+    }
+
+    @Override
+    void start() {
+      Arrays.fill(parents, null);
+    }
+
+    @Override
+    Element apply(Element element, int depth) {
+      if (depth >= parents.length) {
+        parents = Arrays.copyOf(parents, depth * 2);
+        followsLineBreak = Arrays.copyOf(followsLineBreak, depth * 2);
+        followsElement = Arrays.copyOf(followsElement, depth * 2);
+      }
+      Element parent = element.parent();
+      if (parents[depth] != parent) {
+        parents[depth] = parent;
+        followsLineBreak[depth] = false;
+        followsElement[depth] = false;
+      }
+
+      if (!element.tagName().equals("br")) {
+        followsLineBreak[depth] = false;
+        followsElement[depth] = true;
+        return element;
+      }
+      if (followsLineBreak[depth]) {
+        element.remove();
+        return null;
       }
+      followsLineBreak[depth] = true;
+      if (element.previousSibling() != null || followsElement[depth]) {
+        element.before(" • ");
+      } else {
+        parent.append(" • ");
+      }
+      element.unwrap();
+      return null;
     }
   }
 
-  private void removeTagsButRetainContent(Element element) {
-    for (Element childElement : element.children()) {
-      removeTagsButRetainContent(childElement);
-      if (configuration.removeTagsButRetainContent().contains(childElement.tagName())) {
-        Log.i("removeTagsButRetainContent: [%s] %s", childElement.tagName(), childElement.outerHtml());
-        childElement.tagName("p");  // Set the wrapper tag to <p> instead of unwrapping them.
+  private class RemoveUnlikelyChildNodes extends Stage {
+    RemoveUnlikelyChildNodes() {
+      super(Order.PRE_ORDER, Scope.DESCENDANTS, false, true);
+    }
+
+    @Override
+    Element apply(Element element, int depth) {
+      if (isUnlikely(element)) {
+        Log.printAndRemove(element, "removeUnlikelyChildNodes");
+        return null;
       }
+      return element;
     }
   }
 
-  private void removeShortParagraphs(Element topNode) {
-    for (int i = topNode.childNodeSize() - 1; i >= 0; i--) {
-      Node childNode = topNode.childNode(i);
+  /**
+   * Depends only on the element’s own tag name, so it can rename elements on the way down, before
+   * {@link RemoveTagsNotLikelyToBeParagraphs} looks at them.
+   */
+  private class RemoveTagsButRetainContent extends Stage {
+    RemoveTagsButRetainContent() {
+      super(Order.PRE_ORDER, Scope.DESCENDANTS, false, true);
+    }
 
-      String text = null;
-      boolean isExemptFromMinTextLengthCheck = false;
-      boolean isExemptFromTextRequirement = true;
+    @Override
+    Element apply(Element element, int depth) {
+      if (configuration.removeTagsButRetainContent().contains(element.tagName())) {
+        Log.i("removeTagsButRetainContent: [%s] %s", element.tagName(), element.outerHtml());
+        element.tagName("p");  // Set the wrapper tag to <p> instead of unwrapping them.
+      }
+      return element;
+    }
+  }
 
-      if (childNode instanceof TextNode) {
-        text = ((TextNode) childNode).text().trim();
+  private class RemoveTagsNotLikelyToBeParagraphs extends Stage {
+    RemoveTagsNotLikelyToBeParagraphs() {
+      super(Order.PRE_ORDER, Scope.DESCENDANTS, false, true);
+    }
 
-      } else if (childNode instanceof Element) {
-        Element childElement = (Element) childNode;
-        text = childElement.text().trim();
-        isExemptFromTextRequirement = !configuration.tagsExemptFromEmptyTextCheck().contains(childElement.tagName());
-        isExemptFromMinTextLengthCheck = configuration.tagsExemptFromMinLengthCheck().contains(childElement.tagName());
+    @Override
+    Element apply(Element element, int depth) {
+      if (!configuration.retainTags().contains(element.tagName())) {
+        Log.printAndRemove(element, "removeTagsNotLikelyToBeParagraphs");
+        return null;
       }
+      return element;
+    }
+  }
 
-      Log.i("removeShortParagraphs: [%s] isExemptFromMinTextLengthCheck : %b", childNode, isExemptFromMinTextLengthCheck);
+  private class RemoveTopLevelTagsNotLikelyToBeParagraphs extends Stage {
+    RemoveTopLevelTagsNotLikelyToBeParagraphs() {
+      super(Order.PRE_ORDER, Scope.CHILDREN, false, true);
+    }
 
-      if (text == null ||
-              (!isExemptFromTextRequirement && text.isEmpty()) ||
-              (!isExemptFromMinTextLengthCheck && text.length() < configuration.minLengthForParagraphs()) ||
-              text.length() > StringUtils.countLetters(text) * 2) {
-        Log.printAndRemove(childNode, "removeShortParagraphs:");
+    @Override
+    Element apply(Element element, int depth) {
+      if (!configuration.retainTagsTopLevel().contains(element.tagName())) {
+        Log.printAndRemove(element, "removeTopLevelTagsNotLikelyToBeParagraphs");
+        return null;
       }
+      return element;
     }
   }
 
-  private void removeUnlikelyChildNodes(Element element) {
-    for (Element childElement : element.children()) {
-      if (isUnlikely(childElement)) {
-        Log.printAndRemove(childElement, "removeUnlikelyChildNodes");
-      } else if (childElement.children().size() > 0) {
-        removeUnlikelyChildNodes(childElement);
+  private class RemoveShortParagraphs extends Stage {
+    RemoveShortParagraphs() {
+      super(Order.POST_ORDER, Scope.TOP_NODE, true, true);
+    }
+
+    @Override
+    Element apply(Element topNode, int depth) {
+      // Earlier steps have rewritten the tree, so measurements taken before postprocessing are stale.
+      TextStatistics textStatistics = TextStatistics.of(topNode);
+
+      for (int i = topNode.childNodeSize() - 1; i >= 0; i--) {
+        Node childNode = topNode.childNode(i);
+
+        int textLength = -1;
+        int letterCount = 0;
+        boolean isExemptFromMinTextLengthCheck = false;
+        boolean isExemptFromTextRequirement = true;
+
+        if (childNode instanceof TextNode) {
+          String text = ((TextNode) childNode).text().trim();
+          textLength = text.length();
+          letterCount = StringUtils.countLetters(text);
+
+        } else if (childNode instanceof Element) {
+          Element childElement = (Element) childNode;
+          textLength = textStatistics.textLength(childElement);
+          letterCount = textStatistics.letterCount(childElement);
+          isExemptFromTextRequirement = !configuration.tagsExemptFromEmptyTextCheck().contains(childElement.tagName());
+          isExemptFromMinTextLengthCheck = configuration.tagsExemptFromMinLengthCheck().contains(childElement.tagName());
+        }
+
+        Log.i("removeShortParagraphs: [%s] isExemptFromMinTextLengthCheck : %b", childNode, isExemptFromMinTextLengthCheck);
+
+        if (textLength < 0 ||
+                (!isExemptFromTextRequirement && textLength == 0) ||
+                (!isExemptFromMinTextLengthCheck && textLength < configuration.minLengthForParagraphs()) ||
+                textLength > letterCount * 2) {
+          Log.printAndRemove(childNode, "removeShortParagraphs:");
+        }
       }
+      return topNode;
     }
   }
 
-  private void removeNodesWithNegativeScores(Element topNode, Elements imageElements) {
-    Elements elementsWithGravityScore = topNode.select(GRAVITY_SCORE_SELECTOR);
+  private class RemoveDisallowedAttributes extends Stage {
+    private final List<String> keysToRemove = new ArrayList<>();
 
-    for (Element element : elementsWithGravityScore) {
-      // Retain images that have previously been identified by a high score.
-      if (imageElements.contains(element)) {
-        continue;
-      }
+    RemoveDisallowedAttributes() {
+      super(Order.POST_ORDER, Scope.ALL, false, false);
+    }
 
-      int score = Integer.parseInt(element.attr(GRAVITY_SCORE_ATTRIBUTE));
-      if (score < 0 || element.text().length() < configuration.minLengthForParagraphs()) {
-        Log.printAndRemove(element, "removeNodesWithNegativeScores");
+    @Override
+    Element apply(Element element, int depth) {
+      keysToRemove.clear();
+      for (Attribute attribute : element.attributes()) {
+        if (!configuration.attributesToRetainInHtml().contains(attribute.getKey())) {
+          keysToRemove.add(attribute.getKey());
+        }
       }
+      for (String key : keysToRemove) {
+        element.removeAttr(key);
+      }
+      return element;
     }
   }
 
@@ -173,22 +355,7 @@ class PostprocessHelpers {
     String styleAttribute = element.attr("style");
     String classAttribute = element.attr("class");
     return classAttribute != null && classAttribute.toLowerCase().contains("caption")
-            || configuration.unlikelyCssStyles().matcher(styleAttribute).find()
-            || classAttribute != null && configuration.unlikelyCssStyles().matcher(classAttribute).find();
-  }
-
-  private void removeDisallowedAttributes(Element node) {
-    for (Element childElement : node.children()) {
-      removeDisallowedAttributes(childElement);
-    }
-    List<String> keysToRemove = new LinkedList<>();
-    for (Attribute attribute : node.attributes()) {
-      if (!configuration.attributesToRetainInHtml().contains(attribute.getKey())) {
-        keysToRemove.add(attribute.getKey());
-      }
-    }
-    for (String key : keysToRemove) {
-      node.removeAttr(key);
-    }
+            || unlikelyCssStyles.reset(styleAttribute).find()
+            || classAttribute != null && unlikelyCssStyles.reset(classAttribute).find();
   }
 }
@@ -0,0 +1,197 @@
+package com.chimbori.crux.articles;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Applies a sequence of {@link Stage}s to a tree, with the same result as running each stage over
+ * the entire tree in turn, but in as few walks over the tree as possible: consecutive stages are
+ * fused into a single walk (in which each element passes through all of them before the walk moves
+ * on) unless a stage needs to see the result of an earlier one on parts of the tree that the walk
+ * has not reached yet.
+ */
+final class PostprocessPipeline {
+  enum Order {
+    /**
+     * Elements are visited before their descendants, which are skipped if the element is removed.
+     */
+    PRE_ORDER,
+
+    /**
+     * Elements are visited after their descendants.
+     */
+    POST_ORDER
+  }
+
+  /**
+   * Which elements a stage is applied to, relative to the top node of the walk.
+   */
+  enum Scope {
+    TOP_NODE,
+    CHILDREN,
+    DESCENDANTS,
+    ALL
+  }
+
+  /**
+   * A single cleanup rule. A stage looks at (and changes) the element it is applied to; only those
+   * that declare {@link #inspectsDescendants} may base their decisions on the element’s descendants.
+   */
+  abstract static class Stage {
+    final Order order;
+    final Scope scope;
+
+    /**
+     * Whether the stage’s decision for an element depends on the element’s descendants.
+     */
+    final boolean inspectsDescendants;
+
+    /**
+     * Whether the stage adds, removes, moves or renames nodes, rather than only editing attributes.
+     */
+    final boolean changesStructure;
+
+    Stage(Order order, Scope scope, boolean inspectsDescendants, boolean changesStructure) {
+      this.order = order;
+      this.scope = scope;
+      this.inspectsDescendants = inspectsDescendants;
+      this.changesStructure = changesStructure;
+    }
+
+    /**
+     * Called before each walk that includes this stage, to reset any state kept between elements.
+     */
+    void start() {
+    }
+
+    /**
+     * @param depth 0 for the top node, 1 for its children, and so on.
+     * @return the element that now stands in place of {@code element} (usually {@code element}
+     * itself), which the remaining stages are applied to; or {@code null} if it was removed.
+     */
+    abstract Element apply(Element element, int depth);
+
+    private boolean appliesAt(int depth) {
+      switch (scope) {
+        case TOP_NODE:
+          return depth == 0;
+        case CHILDREN:
+          return depth == 1;
+        case DESCENDANTS:
+          return depth > 0;
+        default:
+          return true;
+      }
+    }
+  }
+
+  private final List<Stage[]> preOrderStages = new ArrayList<>();
+  private final List<Stage[]> postOrderStages = new ArrayList<>();
+
+  PostprocessPipeline(List<Stage> stages) {
+    List<Stage> preOrder = new ArrayList<>();
+    List<Stage> postOrder = new ArrayList<>();
+    boolean changesStructure = false;
+    boolean inspectsDescendantsPostOrder = false;
+    boolean changesStructurePostOrder = false;
+
+    for (Stage stage : stages) {
+      boolean needsNewWalk;
+      if (stage.order == Order.PRE_ORDER) {
+        // In pre-order, a stage would run on an element before the post-order stages that precede
+        // it, and before the earlier stages of the walk have reached the element’s descendants.
+        needsNewWalk = !postOrder.isEmpty() || (stage.inspectsDescendants && changesStructure);
+      } else {
+        needsNewWalk = false;
+      }
+      // A post-order stage that inspects descendants must see them before later stages change them,
+      // and one that removes nodes must do so before later stages have already reached them.
+      needsNewWalk |= (stage.changesStructure && inspectsDescendantsPostOrder) || changesStructurePostOrder;
+
+      if (needsNewWalk) {
+        addWalk(preOrder, postOrder);
+        preOrder.clear();
+        postOrder.clear();
+        changesStructure = false;
+        inspectsDescendantsPostOrder = false;
+        changesStructurePostOrder = false;
+      }
+
+      (stage.order == Order.PRE_ORDER ? preOrder : postOrder).add(stage);
+      changesStructure |= stage.changesStructure;
+      inspectsDescendantsPostOrder |= stage.order == Order.POST_ORDER && stage.inspectsDescendants;
+      changesStructurePostOrder |= stage.order == Order.POST_ORDER && stage.changesStructure;
+    }
+    if (!preOrder.isEmpty() || !postOrder.isEmpty()) {
+      addWalk(preOrder, postOrder);
+    }
+  }
+
+  private void addWalk(List<Stage> preOrder, List<Stage> postOrder) {
+    preOrderStages.add(preOrder.toArray(new Stage[preOrder.size()]));
+    postOrderStages.add(postOrder.toArray(new Stage[postOrder.size()]));
+  }
+
+  int walkCount() {
+    return preOrderStages.size();
+  }
+
+  /**
+   * Runs all stages over {@code topNode} and its descendants. The top node is never skipped: if a
+   * stage removes or replaces it, it is only detached from its parent, and its children are still
+   * visited by all stages.
+   */
+  void run(Element topNode) {
+    for (int walk = 0; walk < preOrderStages.size(); walk++) {
+      Stage[] preOrder = preOrderStages.get(walk);
+      Stage[] postOrder = postOrderStages.get(walk);
+      for (Stage stage : preOrder) {
+        stage.start();
+      }
+      for (Stage stage : postOrder) {
+        stage.start();
+      }
+      visit(topNode, 0, preOrder, postOrder);
+    }
+  }
+
+  private static void visit(Element element, int depth, Stage[] preOrder, Stage[] postOrder) {
+    Element current = applyAll(element, depth, preOrder);
+    if (current == null) {
+      return;
+    }
+
+    // Stages change only the element they are applied to, nodes inserted right before it, or the
+    // end of its parent, so the next sibling is unaffected by visiting the current child.
+    Node child = current.childNodeSize() > 0 ? current.childNode(0) : null;
+    while (child != null) {
+      Node nextSibling = child.nextSibling();
+      if (child instanceof Element) {
+        visit((Element) child, depth + 1, preOrder, postOrder);
+      }
+      child = nextSibling;
+    }
+
+    applyAll(current, depth, postOrder);
+  }
+
+  private static Element applyAll(Element element, int depth, Stage[] stages) {
+    Element current = element;
+    for (Stage stage : stages) {
+      if (!stage.appliesAt(depth)) {
+        continue;
+      }
+      Element result = stage.apply(current, depth);
+      if (depth > 0) {
+        if (result == null) {
+          return null;
+        }
+        current = result;
+      }
+    }
+    return current;
+  }
+}
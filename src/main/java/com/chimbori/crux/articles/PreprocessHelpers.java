@@ -1,21 +1,23 @@
 package com.chimbori.crux.articles;
 
+import com.chimbori.crux.articles.configuration.CompiledConfiguration;
 import com.chimbori.crux.articles.configuration.Configuration;
 import com.chimbori.crux.common.Log;
 
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.nodes.Node;
-import org.jsoup.select.Elements;
+
+import java.util.Set;
 
 /**
  * Performs basic sanitization before starting the extraction process.
  */
 class PreprocessHelpers {
-  private final Configuration configuration;
+  private final CompiledConfiguration configuration;
 
   private PreprocessHelpers(Configuration configuration) {
-    this.configuration = configuration;
+    this.configuration = CompiledConfiguration.of(configuration);
   }
 
   static PreprocessHelpers configure(Configuration configuration) {
@@ -23,10 +25,26 @@ class PreprocessHelpers {
   }
 
   void preprocess(Document doc) {
+    preprocess(doc, null, null, null);
+  }
+
+  /**
+   * Also removes blocks that {@code boilerplate} has seen on many other pages of the same site as
+   * {@code url}, if both are set.
+   *
+   * @param overlay if set, nodes are recorded in it as removed instead of being removed from
+   *                {@code doc}, which is left unmodified.
+   */
+  void preprocess(Document doc, String url, BoilerplateFingerprints boilerplate, DocumentOverlay overlay) {
     Log.i("preprocess");
-    stripUnlikelyCandidates(doc);
-    removeScriptsStyles(doc);
-    removeComments(doc.body());
+    if (overlay == null) {
+      stripUnlikelyCandidates(doc);
+      removeStrippedNodes(doc);  // Otherwise, the overlay recognizes these by name.
+    }
+    String host = boilerplate != null && url != null ? SiteProfiles.hostOf(url) : null;
+    if (host != null && doc.body() != null) {
+      boilerplate.removeBoilerplate(doc.body(), host, url, overlay);
+    }
   }
 
   /**
@@ -47,32 +65,43 @@ class PreprocessHelpers {
     }
   }
 
-  private void removeScriptsStyles(Document doc) {
-    Elements scripts = doc.getElementsByTag("script");
-    for (Element item : scripts) {
-      Log.printAndRemove(item, "removeScriptsStyles('script')");
-    }
-
-    Elements noscripts = doc.getElementsByTag("noscript");
-    for (Element item : noscripts) {
-      Log.printAndRemove(item, "removeScriptsStyles('noscript')");
+  /**
+   * Removes all nodes named in {@link CompiledConfiguration#strippedNodeNames()} (scripts, styles, comments,
+   * etc.) in a single walk over the document. The walk follows parent & sibling links instead of
+   * recursing, so arbitrarily deeply nested markup cannot overflow the stack.
+   */
+  private void removeStrippedNodes(Document doc) {
+    Set<String> strippedNodeNames = configuration.strippedNodeNames();
+    if (strippedNodeNames.isEmpty()) {
+      return;
     }
 
-    Elements styles = doc.getElementsByTag("style");
-    for (Element item : styles) {
-      Log.printAndRemove(item, "removeScriptsStyles('style')");
+    Node node = doc.childNodeSize() > 0 ? doc.childNode(0) : null;
+    while (node != null) {
+      if (strippedNodeNames.contains(node.nodeName())) {
+        Node next = nextSkippingChildren(doc, node);
+        Log.printAndRemove(node, "removeStrippedNodes");
+        node = next;
+      } else if (node.childNodeSize() > 0) {
+        node = node.childNode(0);
+      } else {
+        node = nextSkippingChildren(doc, node);
+      }
     }
   }
 
-  private void removeComments(Node node) {
-    for (int i = 0; i < node.childNodes().size();) {
-      Node child = node.childNode(i);
-      if (child.nodeName().equals("#comment"))
-        Log.printAndRemove(child, "removeComments");
-      else {
-        removeComments(child);
-        i++;
+  /**
+   * The node that follows {@code node} & all its descendants in document order, or {@code null} if
+   * there are none left within {@code root}.
+   */
+  private static Node nextSkippingChildren(Node root, Node node) {
+    while (node != root) {
+      Node nextSibling = node.nextSibling();
+      if (nextSibling != null) {
+        return nextSibling;
       }
+      node = node.parent();
     }
+    return null;
   }
 }
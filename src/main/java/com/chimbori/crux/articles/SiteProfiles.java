@@ -0,0 +1,148 @@
+package com.chimbori.crux.articles;
+
+import com.chimbori.crux.common.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Remembers, for each site, where its pages keep the article, so that
+ * {@link ArticleExtractor#extractContent()} can go straight to it on later pages from the same site
+ * instead of scoring every candidate element.
+ * <p>
+ * After the article has been found by scoring, the path to it from the {@code <body>} (by tag
+ * names, ids & class names) is recorded for the page’s host. On the next page from that host, the
+ * element at the end of that path is weighed on its own, and accepted if its weight is high enough
+ * that scoring would have stopped there too (i.e. it directly contains plenty of paragraph text);
+ * otherwise, the page is scored as usual, and the profile is updated with the new result.
+ * <p>
+ * At most {@code maximumSize} sites are remembered; the least recently used ones are forgotten
+ * first. Profiles can be saved with {@link #exportTo(Writer)} and restored with
+ * {@link #importFrom(Reader)}, so that they survive restarts. Instances are thread-safe, and can be
+ * shared by many extractors, including those of a {@link BatchArticleExtractor}.
+ */
+public final class SiteProfiles {
+  private final int maximumSize;
+  private final LinkedHashMap<String, ContentLocator> locators;
+
+  private long hitCount = 0;
+  private long missCount = 0;
+
+  private SiteProfiles(int maximumSize) {
+    this.maximumSize = maximumSize;
+    this.locators = new LinkedHashMap<>(16, 0.75f, true);  // Access-order, least recently used first.
+  }
+
+  public static SiteProfiles withMaximumSize(int maximumSize) {
+    if (maximumSize < 1) {
+      throw new IllegalArgumentException("maximumSize: " + maximumSize);
+    }
+    return new SiteProfiles(maximumSize);
+  }
+
+  /**
+   * @return the host name that profiles are recorded for, or null if {@code url} has none.
+   */
+  static String hostOf(String url) {
+    try {
+      String host = new URI(url).getHost();
+      return host != null ? host.toLowerCase(Locale.ROOT) : null;
+    } catch (URISyntaxException e) {
+      return null;
+    }
+  }
+
+  synchronized ContentLocator get(String host) {
+    return locators.get(host);
+  }
+
+  synchronized void put(String host, ContentLocator locator) {
+    locators.put(host, locator);
+    if (locators.size() > maximumSize) {
+      Iterator<String> eldest = locators.keySet().iterator();
+      eldest.next();
+      eldest.remove();
+    }
+  }
+
+  synchronized void recordHit() {
+    hitCount++;
+  }
+
+  synchronized void recordMiss() {
+    missCount++;
+  }
+
+  /**
+   * Number of pages whose article was found at the location recorded for their site.
+   */
+  public synchronized long hitCount() {
+    return hitCount;
+  }
+
+  /**
+   * Number of pages from a known site whose article had to be found by scoring the page.
+   */
+  public synchronized long missCount() {
+    return missCount;
+  }
+
+  public synchronized int size() {
+    return locators.size();
+  }
+
+  public int maximumSize() {
+    return maximumSize;
+  }
+
+  /**
+   * Writes all profiles as text, one per line: the host, a tab, and the path to the article. Sites
+   * are written from least to most recently used, so that importing them preserves their order.
+   */
+  public void exportTo(Writer writer) throws IOException {
+    Map<String, ContentLocator> snapshot;
+    synchronized (this) {
+      snapshot = new LinkedHashMap<>(locators);
+    }
+    for (Map.Entry<String, ContentLocator> entry : snapshot.entrySet()) {
+      writer.write(entry.getKey());
+      writer.write('\t');
+      writer.write(entry.getValue().toString());
+      writer.write('\n');
+    }
+    writer.flush();
+  }
+
+  /**
+   * Adds the profiles written by {@link #exportTo(Writer)}, replacing any existing profiles for the
+   * same sites. Blank lines, and lines that are not valid profiles, are skipped.
+   *
+   * @return the number of profiles read.
+   */
+  public int importFrom(Reader reader) throws IOException {
+    BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    int count = 0;
+    String line;
+    while ((line = lines.readLine()) != null) {
+      int tab = line.indexOf('\t');
+      ContentLocator locator = tab > 0 ? ContentLocator.parse(line.substring(tab + 1)) : null;
+      if (locator == null) {
+        if (!line.trim().isEmpty()) {
+          Log.i("importFrom: skipping invalid profile [%s]", line);
+        }
+        continue;
+      }
+      put(line.substring(0, tab), locator);
+      count++;
+    }
+    return count;
+  }
+}
@@ -0,0 +1,392 @@
+package com.chimbori.crux.articles;
+
+import com.chimbori.crux.common.SubstringCounter;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
+
+import java.util.Arrays;
+
+/**
+ * Text measurements for every element in a sub-tree, computed in a single pass, so that scoring &
+ * cleanup never have to call {@link Element#text()} (which walks the entire sub-tree each time) or
+ * materialize strings just to measure them.
+ * <p>
+ * The whole sub-tree’s text is accumulated once into a single buffer, normalized exactly as JSoup’s
+ * {@link Element#text()} does, and each element records the range of that buffer it produced.
+ * Trimming that range yields exactly {@code element.text()}, because the only characters that
+ * differ between an element’s text in isolation and its text in context are leading whitespace
+ * & separators, which are trimmed away in both cases. {@link Element#ownText()} is accumulated
+ * alongside, per element.
+ * <p>
+ * Elements are also numbered in document order (the root being 0).
+ * <p>
+ * Measurements reflect the tree at the time they were computed; they must be recomputed after the
+ * tree has been modified in a way that changes its text. Nodes removed by a {@link DocumentOverlay}
+ * are measured as if they were not part of the tree at all.
+ */
+final class TextStatistics {
+  private final Element root;
+  private final DocumentOverlay overlay;
+  private final StringBuilder text = new StringBuilder();
+  private final ElementIntMap indices = new ElementIntMap();
+
+  private int count = 0;
+  private Element[] elements = new Element[256];
+  private int[] textStart = new int[256];
+  private int[] textEnd = new int[256];
+  private int[] ownTextLength = new int[256];
+  private int[] letterCount = new int[256];
+  private int[] linkTextLength = new int[256];
+
+  private TextStatistics(Element root, DocumentOverlay overlay) {
+    this.root = root;
+    this.overlay = overlay;
+  }
+
+  static TextStatistics of(Element root) {
+    return of(root, null);
+  }
+
+  /**
+   * @param overlay the nodes to leave out, along with their descendants; may be null.
+   */
+  static TextStatistics of(Element root, DocumentOverlay overlay) {
+    TextStatistics statistics = new TextStatistics(root, overlay);
+    if (root != null) {
+      new NodeTraversor(statistics.new Collector()).traverse(root);
+    }
+    return statistics;
+  }
+
+  Element root() {
+    return root;
+  }
+
+  /**
+   * @return the number of elements in the tree.
+   */
+  int size() {
+    return count;
+  }
+
+  /**
+   * @return the index of {@code element} in document order, or -1 if it is not part of the tree.
+   */
+  int indexOf(Element element) {
+    return indices.get(element, -1);
+  }
+
+  Element element(int index) {
+    return elements[index];
+  }
+
+  /**
+   * @return the same value as {@code element.text().length()}.
+   */
+  int textLength(Element element) {
+    int index = indices.get(element, -1);
+    return index >= 0 ? textLength(index) : element.text().length();
+  }
+
+  int textLength(int index) {
+    return textEnd[index] - textStart[index];
+  }
+
+  /**
+   * @return the same value as {@code element.ownText().length()}.
+   */
+  int ownTextLength(Element element) {
+    int index = indices.get(element, -1);
+    return index >= 0 ? ownTextLength[index] : element.ownText().length();
+  }
+
+  int ownTextLength(int index) {
+    return ownTextLength[index];
+  }
+
+  /**
+   * @return the same value as {@code StringUtils.countLetters(element.text())}.
+   */
+  int letterCount(Element element) {
+    int index = indices.get(element, -1);
+    if (index < 0) {
+      String elementText = element.text();
+      int letters = 0;
+      for (int i = 0; i < elementText.length(); i++) {
+        letters += Character.isLetter(elementText.charAt(i)) ? 1 : 0;
+      }
+      return letters;
+    }
+    return letterCount[index];
+  }
+
+  /**
+   * @return the number of characters of {@code element.text()} that are part of a link’s text.
+   */
+  int linkTextLength(Element element) {
+    int index = indices.get(element, -1);
+    return index >= 0 ? linkTextLength[index] : 0;
+  }
+
+  /**
+   * @return the same value as {@code element.text()}, without re-traversing the sub-tree.
+   */
+  String text(Element element) {
+    int index = indices.get(element, -1);
+    return index >= 0 ? text.substring(textStart[index], textEnd[index]) : element.text();
+  }
+
+  /**
+   * @return the root’s text, without the text of {@code element}, which must be part of the tree.
+   */
+  String textOutside(Element element) {
+    int index = indices.get(element, -1);
+    return (text.substring(textStart[0], textStart[index]) + ' ' + text.substring(textEnd[index], textEnd[0])).trim();
+  }
+
+  /**
+   * @return the same value as {@code counter.countMatches(element.text())}, without materializing
+   * the text.
+   */
+  int countMatches(Element element, SubstringCounter counter) {
+    int index = indices.get(element, -1);
+    return index >= 0 ? countMatches(index, counter) : counter.countMatches(element.text());
+  }
+
+  int countMatches(int index, SubstringCounter counter) {
+    return counter.countMatches(text, textStart[index], textEnd[index]);
+  }
+
+  private int add(Element element) {
+    if (count == textStart.length) {
+      int capacity = count * 2;
+      elements = Arrays.copyOf(elements, capacity);
+      textStart = Arrays.copyOf(textStart, capacity);
+      textEnd = Arrays.copyOf(textEnd, capacity);
+      ownTextLength = Arrays.copyOf(ownTextLength, capacity);
+      letterCount = Arrays.copyOf(letterCount, capacity);
+      linkTextLength = Arrays.copyOf(linkTextLength, capacity);
+    }
+    indices.set(element, count);
+    elements[count] = element;
+    return count++;
+  }
+
+  private static boolean isTrimmable(char c) {
+    return c <= ' ';  // Matches String#trim().
+  }
+
+  private static boolean isWhitespace(int c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';  // Matches JSoup’s StringUtil.
+  }
+
+  private static boolean preserveWhitespace(Node node) {
+    if (node instanceof Element) {
+      Element element = (Element) node;
+      return element.tag().preserveWhitespace()
+          || element.parent() != null && element.parent().tag().preserveWhitespace();
+    }
+    return false;
+  }
+
+  /**
+   * Visits every node once, in document order, mirroring the traversal in {@link Element#text()}.
+   * Text that is being accumulated for an element’s own text is tracked in parallel arrays indexed
+   * by the element, since an element’s direct text nodes may be interleaved with its children.
+   */
+  private class Collector implements NodeVisitor {
+    private int[] openElements = new int[64];
+    private int depth = 0;
+    private int letters = 0;
+    private int linkCharacters = 0;
+    private int linkDepth = 0;
+
+    /**
+     * The node removed by {@link #overlay} whose sub-tree is being skipped, if any.
+     */
+    private Node removedNode = null;
+
+    // Own-text accumulators, indexed by element. Trimming is applied when the element is closed.
+    private int[] ownLength = new int[256];
+    private int[] ownLeadingTrimmable = new int[256];
+    private int[] ownTrailingTrimmable = new int[256];
+    private boolean[] ownHasContent = new boolean[256];
+    private boolean[] ownEndsWithSpace = new boolean[256];
+
+    @Override
+    public void head(Node node, int nodeDepth) {
+      if (removedNode != null) {
+        return;
+      } else if (overlay != null && overlay.isRemoved(node)) {
+        removedNode = node;
+        return;
+      }
+
+      if (node instanceof TextNode) {
+        appendText((TextNode) node);
+
+      } else if (node instanceof Element) {
+        Element element = (Element) node;
+        boolean isBreak = element.tagName().equals("br");
+        if (text.length() > 0 && (element.isBlock() || isBreak) && !endsWithSpace()) {
+          appendToText(' ');
+        }
+        if (isBreak && depth > 0) {
+          int parent = openElements[depth - 1];
+          if (!ownEndsWithSpace[parent]) {
+            appendToOwnText(parent, ' ');
+          }
+        }
+
+        int index = add(element);
+        ensureOwnCapacity(index);
+        textStart[index] = text.length();
+        letterCount[index] = letters;
+        linkTextLength[index] = linkCharacters;
+        if (depth == openElements.length) {
+          openElements = Arrays.copyOf(openElements, depth * 2);
+        }
+        openElements[depth++] = index;
+        if (element.tagName().equals("a")) {
+          linkDepth++;
+        }
+      }
+    }
+
+    @Override
+    public void tail(Node node, int nodeDepth) {
+      if (removedNode != null) {
+        if (node == removedNode) {
+          removedNode = null;
+        }
+        return;
+      }
+      if (!(node instanceof Element)) {
+        return;
+      }
+      int index = openElements[--depth];
+      if (((Element) node).tagName().equals("a")) {
+        linkDepth--;
+      }
+
+      int start = textStart[index];
+      int end = text.length();
+      while (start < end && isTrimmable(text.charAt(start))) {
+        start++;
+      }
+      while (end > start && isTrimmable(text.charAt(end - 1))) {
+        end--;
+      }
+      textStart[index] = start;
+      textEnd[index] = end;
+      // Trimmed characters are never letters, so counts over the untrimmed range are exact.
+      letterCount[index] = letters - letterCount[index];
+      linkTextLength[index] = Math.min(linkCharacters - linkTextLength[index], end - start);
+      ownTextLength[index] = ownHasContent[index]
+          ? ownLength[index] - ownLeadingTrimmable[index] - ownTrailingTrimmable[index]
+          : 0;
+    }
+
+    private void appendText(TextNode textNode) {
+      String wholeText = textNode.getWholeText();
+      int parent = depth > 0 ? openElements[depth - 1] : -1;
+
+      if (preserveWhitespace(textNode.parentNode())) {
+        for (int i = 0; i < wholeText.length(); i++) {
+          appendToText(wholeText.charAt(i));
+          if (parent >= 0) {
+            appendToOwnText(parent, wholeText.charAt(i));
+          }
+        }
+        return;
+      }
+
+      appendNormalized(wholeText, -1, endsWithSpace());
+      if (parent >= 0) {
+        appendNormalized(wholeText, parent, ownEndsWithSpace[parent]);
+      }
+    }
+
+    /**
+     * Mirrors JSoup’s {@code StringUtil.appendNormalisedWhitespace}, appending either to the
+     * shared text buffer (if {@code ownTextOf} is negative) or to an element’s own text.
+     */
+    private void appendNormalized(String string, int ownTextOf, boolean stripLeading) {
+      boolean lastWasWhite = false;
+      boolean reachedNonWhite = false;
+      int length = string.length();
+      int c;
+      for (int i = 0; i < length; i += Character.charCount(c)) {
+        c = string.codePointAt(i);
+        if (isWhitespace(c)) {
+          if ((stripLeading && !reachedNonWhite) || lastWasWhite) {
+            continue;
+          }
+          append(ownTextOf, ' ');
+          lastWasWhite = true;
+        } else {
+          if (Character.isBmpCodePoint(c)) {
+            append(ownTextOf, (char) c);
+          } else {
+            append(ownTextOf, Character.highSurrogate(c));
+            append(ownTextOf, Character.lowSurrogate(c));
+          }
+          lastWasWhite = false;
+          reachedNonWhite = true;
+        }
+      }
+    }
+
+    private void append(int ownTextOf, char c) {
+      if (ownTextOf < 0) {
+        appendToText(c);
+      } else {
+        appendToOwnText(ownTextOf, c);
+      }
+    }
+
+    private void appendToText(char c) {
+      text.append(c);
+      if (Character.isLetter(c)) {
+        letters++;
+      }
+      if (linkDepth > 0) {
+        linkCharacters++;
+      }
+    }
+
+    private void appendToOwnText(int index, char c) {
+      ownLength[index]++;
+      if (isTrimmable(c)) {
+        if (ownHasContent[index]) {
+          ownTrailingTrimmable[index]++;
+        } else {
+          ownLeadingTrimmable[index]++;
+        }
+      } else {
+        ownHasContent[index] = true;
+        ownTrailingTrimmable[index] = 0;
+      }
+      ownEndsWithSpace[index] = c == ' ';
+    }
+
+    private boolean endsWithSpace() {
+      return text.length() != 0 && text.charAt(text.length() - 1) == ' ';
+    }
+
+    private void ensureOwnCapacity(int index) {
+      if (index == ownLength.length) {
+        int capacity = index * 2;
+        ownLength = Arrays.copyOf(ownLength, capacity);
+        ownLeadingTrimmable = Arrays.copyOf(ownLeadingTrimmable, capacity);
+        ownTrailingTrimmable = Arrays.copyOf(ownTrailingTrimmable, capacity);
+        ownHasContent = Arrays.copyOf(ownHasContent, capacity);
+        ownEndsWithSpace = Arrays.copyOf(ownEndsWithSpace, capacity);
+      }
+    }
+  }
+}
@@ -0,0 +1,191 @@
+package com.chimbori.crux.articles.configuration;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * An immutable snapshot of a {@link Configuration}, taken once so that extraction never compiles a
+ * {@link Pattern} or builds a {@link Set} while scoring & cleaning up individual elements.
+ * {@link StandardConfiguration} (like most implementations) creates new objects on every call,
+ * and these methods are called several times for each element of a page.
+ * <p>
+ * Sets are copied into unmodifiable {@link HashSet}s: tag names produced by JSoup for known tags
+ * are interned and cache their hash codes, so a lookup is a single probe & identity comparison.
+ * Instances are thread-safe, and can be shared across concurrent extractions.
+ */
+@SuppressWarnings("unused")
+public final class CompiledConfiguration implements Configuration {
+    /**
+     * Upper bound on the number of distinct tag names whose {@link #importantNodes()} match result
+     * is remembered, since pages can contain arbitrarily many custom tag names.
+     */
+    private static final int MAX_CACHED_TAG_NAMES = 512;
+
+    private static final CompiledConfiguration STANDARD = new CompiledConfiguration(standardConfiguration);
+    private static final CompiledConfiguration STANDARD_WITH_IMAGES = new CompiledConfiguration(standardConfigurationWithImages);
+
+    private final Configuration source;
+
+    private final int minLengthForParagraphs;
+
+    private final Set<String> removeTagsButRetainContent;
+    private final Set<String> retainTags;
+    private final Set<String> tagsExemptFromMinLengthCheck;
+    private final Set<String> attributesToRetainInHtml;
+    private final Set<String> retainTagsTopLevel;
+    private final Set<String> tagsExemptFromEmptyTextCheck;
+    private final Set<String> strippedNodeNames;
+
+    private final Pattern unlikelyCssStyles;
+    private final Pattern importantNodes;
+    private final Pattern unlikelyCssClassesAndIds;
+    private final Pattern positiveCssClassesAndIds;
+    private final Pattern negativeCssClassesAndIds;
+    private final Pattern negativeCssStyles;
+
+    private final ConcurrentHashMap<String, Boolean> isImportantNodeByTagName = new ConcurrentHashMap<>();
+
+    private CompiledConfiguration(Configuration source) {
+        this.source = source;
+        minLengthForParagraphs = source.minLengthForParagraphs();
+
+        removeTagsButRetainContent = snapshot(source.removeTagsButRetainContent());
+        retainTags = snapshot(source.retainTags());
+        tagsExemptFromMinLengthCheck = snapshot(source.tagsExemptFromMinLengthCheck());
+        attributesToRetainInHtml = snapshot(source.attributesToRetainInHtml());
+        retainTagsTopLevel = snapshot(source.retainTagsTopLevel());
+        tagsExemptFromEmptyTextCheck = snapshot(source.tagsExemptFromEmptyTextCheck());
+        strippedNodeNames = snapshot(source instanceof StandardConfiguration
+            ? ((StandardConfiguration) source).strippedNodeNames()
+            : ((StandardConfiguration) standardConfiguration).strippedNodeNames());
+
+        unlikelyCssStyles = source.unlikelyCssStyles();
+        importantNodes = source.importantNodes();
+        unlikelyCssClassesAndIds = source.unlikelyCssClassesAndIds();
+        positiveCssClassesAndIds = source.positiveCssClassesAndIds();
+        negativeCssClassesAndIds = source.negativeCssClassesAndIds();
+        negativeCssStyles = source.negativeCssStyles();
+    }
+
+    /**
+     * Returns a compiled snapshot of {@code configuration}. Snapshots of the standard configurations
+     * are created only once; compiling an already-compiled configuration returns it unchanged.
+     */
+    public static CompiledConfiguration of(Configuration configuration) {
+        if (configuration instanceof CompiledConfiguration) {
+            return (CompiledConfiguration) configuration;
+        } else if (configuration == standardConfiguration) {
+            return STANDARD;
+        } else if (configuration == standardConfigurationWithImages) {
+            return STANDARD_WITH_IMAGES;
+        }
+        return new CompiledConfiguration(configuration);
+    }
+
+    /**
+     * The {@link Configuration} this snapshot was taken from.
+     */
+    public Configuration source() {
+        return source;
+    }
+
+    /**
+     * Equivalent to {@code importantNodes().matcher(tagName).matches()}, but remembers the result
+     * for each tag name instead of creating a new {@link java.util.regex.Matcher} every time.
+     */
+    public boolean isImportantNode(String tagName) {
+        Boolean isImportant = isImportantNodeByTagName.get(tagName);
+        if (isImportant == null) {
+            isImportant = importantNodes.matcher(tagName).matches();
+            if (isImportantNodeByTagName.size() < MAX_CACHED_TAG_NAMES) {
+                isImportantNodeByTagName.put(tagName, isImportant);
+            }
+        }
+        return isImportant;
+    }
+
+    public int minLengthForParagraphs() {
+        return minLengthForParagraphs;
+    }
+
+    public Set<String> removeTagsButRetainContent() {
+        return removeTagsButRetainContent;
+    }
+
+    public Set<String> retainTags() {
+        return retainTags;
+    }
+
+    public Set<String> tagsExemptFromMinLengthCheck() {
+        return tagsExemptFromMinLengthCheck;
+    }
+
+    public Set<String> attributesToRetainInHtml() {
+        return attributesToRetainInHtml;
+    }
+
+    public Set<String> retainTagsTopLevel() {
+        return retainTagsTopLevel;
+    }
+
+    public Set<String> tagsExemptFromEmptyTextCheck() {
+        return tagsExemptFromEmptyTextCheck;
+    }
+
+    /**
+     * @see StandardConfiguration#strippedNodeNames()
+     */
+    public Set<String> strippedNodeNames() {
+        return strippedNodeNames;
+    }
+
+    public Pattern unlikelyCssStyles() {
+        return unlikelyCssStyles;
+    }
+
+    public Pattern importantNodes() {
+        return importantNodes;
+    }
+
+    public Pattern unlikelyCssClassesAndIds() {
+        return unlikelyCssClassesAndIds;
+    }
+
+    public Pattern positiveCssClassesAndIds() {
+        return positiveCssClassesAndIds;
+    }
+
+    public Pattern negativeCssClassesAndIds() {
+        return negativeCssClassesAndIds;
+    }
+
+    public Pattern negativeCssStyles() {
+        return negativeCssStyles;
+    }
+
+    /**
+     * Whether {@code other} picks the same article as this configuration on every page, with the
+     * same scores, i.e. whether the two only differ in how the article is cleaned up afterwards.
+     */
+    public boolean scoresLike(CompiledConfiguration other) {
+        return other == this || strippedNodeNames.equals(other.strippedNodeNames)
+            && samePattern(importantNodes, other.importantNodes)
+            && samePattern(unlikelyCssClassesAndIds, other.unlikelyCssClassesAndIds)
+            && samePattern(positiveCssClassesAndIds, other.positiveCssClassesAndIds)
+            && samePattern(negativeCssClassesAndIds, other.negativeCssClassesAndIds)
+            && samePattern(negativeCssStyles, other.negativeCssStyles);
+    }
+
+    private static boolean samePattern(Pattern a, Pattern b) {
+        return a == b || a.pattern().equals(b.pattern()) && a.flags() == b.flags();
+    }
+
+    private static Set<String> snapshot(Set<String> source) {
+        return source.isEmpty()
+            ? Collections.<String>emptySet()
+            : Collections.unmodifiableSet(new HashSet<>(source));
+    }
+}
@@ -78,6 +78,20 @@ public class StandardConfiguration implements Configuration {
         return emptySet();
     }
 
+    /**
+     * Nodes that are removed from the page, along with everything inside them, before extraction
+     * begins. Names are as reported by {@link org.jsoup.nodes.Node#nodeName()}: tag names for
+     * elements, and {@code #comment} for comments.
+     * <p>
+     * This is not part of {@link Configuration}, so that existing implementations of it keep
+     * compiling; configurations that do not extend this class strip these same nodes.
+     */
+    public Set<String> strippedNodeNames() {
+        return new HashSet<>(Arrays.asList(
+            "script", "noscript", "style", "#comment"
+        ));
+    }
+
     public Pattern importantNodes() {
         return Pattern.compile("p|div|td|h1|h2|article|section");
     }
@@ -1,28 +1,160 @@
 package com.chimbori.crux.common;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
 
 /**
- * This class is not thread safe. Use one new instance every time due to encoding variable.
+ * Reads HTML from a stream, and decodes it using the encoding declared by the page itself.
  */
 public class CharsetConverter {
-  private final static String UTF8 = "UTF-8";
+  private final static String UTF8_LOWER_CASE = "utf-8";
   private final static String ISO = "ISO-8859-1";
   private final static int K2 = 2048;
-  private static final int DEFAULT_MAX_BYTES = 500 * 1024;
+
+  /**
+   * Pages are truncated to this many bytes, unless a different limit is passed to
+   * {@link #readStream(InputStream, String, ReadBuffer, int)}.
+   */
+  public static final int DEFAULT_MAX_BYTES = 500 * 1024;
 
   public static class StringWithEncoding {
     public final String content;
     public final String encoding;
 
-    StringWithEncoding(String content, String encoding) {
+    /**
+     * The raw bytes that {@link #content} was decoded from are {@code bytes[offset]} through
+     * {@code bytes[offset + length - 1]}, including any byte order mark. When read via a
+     * {@link ReadBuffer}, {@code bytes} is that buffer’s storage, and is overwritten by its next use.
+     * When decoded from a {@link ByteBuffer} without an accessible array, {@code bytes} is null.
+     */
+    public final byte[] bytes;
+    public final int offset;
+    public final int length;
+
+    StringWithEncoding(String content, String encoding, byte[] bytes, int offset, int length) {
       this.content = content;
       this.encoding = encoding;
+      this.bytes = bytes;
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+
+  /**
+   * Storage for the bytes read by {@link #readStream(InputStream, String, ReadBuffer, int)}, which
+   * grows as needed and is retained across calls, so that reading many pages does not allocate
+   * (and repeatedly grow) a new buffer for each one. Not thread-safe: use one per thread.
+   */
+  public static final class ReadBuffer {
+    private byte[] bytes;
+
+    public ReadBuffer() {
+      this(K2 * 8);
+    }
+
+    public ReadBuffer(int initialCapacity) {
+      bytes = new byte[Math.max(initialCapacity, K2)];
+    }
+
+    public int capacity() {
+      return bytes.length;
+    }
+
+    private byte[] grow(int maxBytes) {
+      bytes = Arrays.copyOf(bytes, (int) Math.min((long) bytes.length * 2, maxBytes));
+      return bytes;
+    }
+  }
+
+  /**
+   * Decodes a page that arrives in chunks (e.g. from a network channel), detecting its encoding as
+   * described in {@link #readStream(InputStream, String, ReadBuffer, int)} from the first
+   * {@code 2048} bytes, so that decoding can start before the entire page has been read. The decoded
+   * text is the same as if the complete page had been passed to {@link #decode}. Not thread-safe.
+   */
+  public static final class StreamDecoder {
+    private final String declaredCharset;
+    private ByteBuffer pending = ByteBuffer.allocate(K2 * 4);
+    private final CharBuffer chars = CharBuffer.allocate(K2 * 4);
+    private CharsetDecoder decoder = null;
+    private String encoding = null;
+
+    public StreamDecoder(String contentType) {
+      this.declaredCharset = charsetParameter(contentType);
+    }
+
+    /**
+     * @return the detected encoding, or null if not enough bytes have been decoded to detect it.
+     */
+    public String encoding() {
+      return encoding;
+    }
+
+    /**
+     * Consumes all of {@code input}, and appends as much of it as can be decoded to {@code out}. Any
+     * bytes that cannot be decoded yet (such as an incomplete multi-byte sequence, or a prefix that
+     * is still too short to detect the encoding from) are retained until the next call.
+     *
+     * @param endOfInput whether {@code input} contains the last bytes of the page, in which case all
+     *                   retained bytes are decoded, and this decoder must not be used again.
+     */
+    public void decode(ByteBuffer input, boolean endOfInput, StringBuilder out) {
+      if (pending.remaining() < input.remaining()) {
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + input.remaining()));
+        pending.flip();
+        pending = grown.put(pending);
+      }
+      pending.put(input);
+
+      if (decoder == null) {
+        if (pending.position() < CharsetSniffer.PRESCAN_BYTES && !endOfInput) {
+          return;
+        }
+        detectEncoding();
+      }
+
+      pending.flip();
+      while (decoder.decode(pending, chars, endOfInput).isOverflow()) {
+        drain(out);
+      }
+      if (endOfInput) {
+        while (decoder.flush(chars).isOverflow()) {
+          drain(out);
+        }
+      }
+      drain(out);
+      pending.compact();
+    }
+
+    private void detectEncoding() {
+      byte[] bytes = pending.array();
+      int length = pending.position();
+      encoding = CharsetSniffer.sniffByteOrderMark(bytes, 0, length);
+      int byteOrderMarkLength = 0;
+      if (encoding != null) {
+        byteOrderMarkLength = CharsetSniffer.byteOrderMarkLength(encoding);
+      } else {
+        encoding = CharsetConverter.detectEncoding(bytes, 0, length, declaredCharset);
+      }
+      decoder = Charset.forName(encoding).newDecoder()
+          .onMalformedInput(CodingErrorAction.REPLACE)
+          .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+      pending.flip();
+      pending.position(byteOrderMarkLength);
+      pending.compact();
+    }
+
+    private void drain(StringBuilder out) {
+      chars.flip();
+      out.append(chars);
+      chars.clear();
     }
   }
 
@@ -30,6 +162,19 @@ public class CharsetConverter {
   }
 
   public static String extractEncoding(String contentType) {
+    String charset = charsetParameter(contentType);
+
+    // http1.1 says ISO-8859-1 is the default charset
+    if (charset.length() == 0)
+      charset = ISO;
+
+    return charset;
+  }
+
+  /**
+   * @return the value of the {@code charset} parameter in {@code contentType}, or an empty string.
+   */
+  private static String charsetParameter(String contentType) {
     String[] values;
     if (contentType != null)
       values = contentType.split(";");
@@ -44,144 +189,146 @@ public class CharsetConverter {
       if (value.startsWith("charset="))
         charset = value.substring("charset=".length());
     }
-
-    // http1.1 says ISO-8859-1 is the default charset
-    if (charset.length() == 0)
-      charset = ISO;
-
     return charset;
   }
 
   public static StringWithEncoding readStream(InputStream inputStream) {
-    // HTTP 1.1 standardConfiguration is iso-8859-1 not utf8 but we force utf-8 as YouTube assumes it.
-    String encoding = UTF8;
-
-    BufferedInputStream in = null;
-    try {
-      in = new BufferedInputStream(inputStream, K2);
-      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-
-      // detect encoding with the help of meta tag
-      try {
-        in.mark(K2 * 2);
-        String tmpEnc = detectCharset("charset=", outputStream, in, encoding);
-        if (tmpEnc != null)
-          encoding = tmpEnc;
-        else {
-          Log.i("no charset found in first stage");
-          // detect with the help of xml beginning ala encoding="charset"
-          tmpEnc = detectCharset("encoding=", outputStream, in, encoding);
-          if (tmpEnc != null) {
-            encoding = tmpEnc;
-          } else {
-            Log.i("no charset found in second stage");
-          }
-        }
+    return readStream(inputStream, null);
+  }
 
-        if (!Charset.isSupported(encoding))
-          throw new UnsupportedEncodingException(encoding);
-      } catch (UnsupportedEncodingException e) {
-        Log.i("Using default encoding:" + UTF8 + " problem:" + e.getMessage() + " encoding:" + encoding);
-        encoding = UTF8;
-      }
+  public static StringWithEncoding readStream(InputStream inputStream, String contentType) {
+    return readStream(inputStream, contentType, new ReadBuffer(), DEFAULT_MAX_BYTES);
+  }
 
+  /**
+   * Reads up to {@code maxBytes} from {@code inputStream} into {@code buffer}, and decodes them
+   * using the first encoding found among:
+   * <ol>
+   * <li>a byte order mark,</li>
+   * <li>the {@code charset} parameter of {@code contentType} (e.g. from an HTTP header), if any,</li>
+   * <li>a {@code <meta>} declaration in the page (per the WHATWG prescan algorithm),</li>
+   * <li>an XML declaration,</li>
+   * <li>UTF-8, by default.</li>
+   * </ol>
+   * The bytes are decoded exactly once, directly from the buffer they were read into. Any bytes
+   * beyond {@code maxBytes} are left unread.
+   */
+  public static StringWithEncoding readStream(InputStream inputStream, String contentType,
+                                              ReadBuffer buffer, int maxBytes) {
+    if (maxBytes <= 0) {
+      throw new IllegalArgumentException("maxBytes: " + maxBytes);
+    }
+    try {
+      byte[] bytes = buffer.bytes;
+      int length = 0;
       // SocketException: Connection reset
       // IOException: missing CR    => problem on server (probably some xml character thing?)
       // IOException: Premature EOF => socket unexpectedly closed from server
-      int bytesRead = outputStream.size();
-      byte[] arr = new byte[K2];
       while (true) {
-        if (bytesRead >= DEFAULT_MAX_BYTES) {
-          Log.i("maxBytes " + DEFAULT_MAX_BYTES + " exceeded. HTML may be broken.");
+        if (length >= maxBytes) {
+          Log.i("maxBytes " + maxBytes + " exceeded. HTML may be broken.");
           break;
         }
-
-        int n = in.read(arr);
+        if (length == bytes.length) {
+          bytes = buffer.grow(maxBytes);
+        }
+        int n = inputStream.read(bytes, length, Math.min(bytes.length, maxBytes) - length);
         if (n < 0)
           break;
-        bytesRead += n;
-        outputStream.write(arr, 0, n);
+        length += n;
       }
-
-      return new StringWithEncoding(outputStream.toString(encoding), encoding.toLowerCase());
+      return decode(bytes, 0, length, contentType);
 
     } catch (IOException e) {
       e.printStackTrace();
     } finally {
-      if (in != null) {
-        try {
-          in.close();
-        } catch (IOException e) {
-          // Ignore.
-        }
+      try {
+        inputStream.close();
+      } catch (IOException e) {
+        // Ignore.
       }
     }
     return null;
   }
 
   /**
-   * This method detects the charset even if the first call only returns some
-   * bytes. It will read until 4K bytes are reached and then try to determine
-   * the encoding.
+   * Detects the encoding of a page that is already in memory, as described in
+   * {@link #readStream(InputStream, String, ReadBuffer, int)}, and decodes it without copying
+   * {@code bytes} first. Unlike {@code readStream}, no limit is applied to {@code length}.
    */
-  private static String detectCharset(String key, ByteArrayOutputStream bos, BufferedInputStream in,
-                               String enc) throws IOException {
-
-    // Grab better encoding from stream
-    byte[] arr = new byte[K2];
-    int nSum = 0;
-    while (nSum < K2) {
-      int n = in.read(arr);
-      if (n < 0)
-        break;
-
-      nSum += n;
-      bos.write(arr, 0, n);
-    }
-
-    String str = bos.toString(enc);
-    int encIndex = str.indexOf(key);
-    int clength = key.length();
-    if (encIndex > 0) {
-      char startChar = str.charAt(encIndex + clength);
-      int lastEncIndex;
-      if (startChar == '\'')
-        // if we have charset='something'
-        lastEncIndex = str.indexOf("'", ++encIndex + clength);
-      else if (startChar == '\"')
-        // if we have charset="something"
-        lastEncIndex = str.indexOf("\"", ++encIndex + clength);
-      else {
-        // if we have "text/html; charset=utf-8"
-        int first = str.indexOf("\"", encIndex + clength);
-        if (first < 0)
-          first = Integer.MAX_VALUE;
-
-        // or "text/html; charset=utf-8 "
-        int sec = str.indexOf(" ", encIndex + clength);
-        if (sec < 0)
-          sec = Integer.MAX_VALUE;
-        lastEncIndex = Math.min(first, sec);
-
-        // or "text/html; charset=utf-8 '
-        int third = str.indexOf("'", encIndex + clength);
-        if (third > 0)
-          lastEncIndex = Math.min(lastEncIndex, third);
-      }
+  public static StringWithEncoding decode(byte[] bytes, int offset, int length, String contentType) {
+    return decodeArray(bytes, offset, length, charsetParameter(contentType));
+  }
 
-      // re-read byte array with different encoding
-      // assume that the encoding string cannot be greater than 40 chars
-      if (lastEncIndex > encIndex + clength && lastEncIndex < encIndex + clength + 40) {
-        String tmpEnc = StringUtils.encodingCleanup(str.substring(encIndex + clength, lastEncIndex));
-        try {
-          in.reset();
-          bos.reset();
-          return tmpEnc;
-        } catch (IOException e) {
-          Log.i("Couldn't reset stream to re-read with new encoding %s %s %s", tmpEnc, e.toString(), e);
-        }
-      }
+  /**
+   * Detects the encoding of the page between {@code buffer}’s position & limit (e.g. a slice of a
+   * memory-mapped file), and decodes it directly from the buffer, without copying it into an
+   * intermediate array. The buffer’s position is not modified.
+   *
+   * @param charsetHint the encoding declared by the transport (such as the {@code charset} of an
+   *                    HTTP response), which takes precedence over any declared by the page
+   *                    itself; may be null.
+   */
+  public static StringWithEncoding decode(ByteBuffer buffer, String charsetHint) {
+    if (buffer.hasArray()) {
+      return decodeArray(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), charsetHint);
     }
-    return null;
+
+    // Only a prefix is needed for sniffing, so only that is copied out of the buffer.
+    byte[] prefix = new byte[Math.min(buffer.remaining(), CharsetSniffer.PRESCAN_BYTES)];
+    ByteBuffer input = buffer.duplicate();
+    input.get(prefix);
+    input.position(buffer.position());
+
+    String encoding = CharsetSniffer.sniffByteOrderMark(prefix, 0, prefix.length);
+    if (encoding != null) {
+      input.position(input.position() + CharsetSniffer.byteOrderMarkLength(encoding));
+    } else {
+      encoding = detectEncoding(prefix, 0, prefix.length, charsetHint);
+    }
+
+    CharsetDecoder decoder = Charset.forName(encoding).newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    CharBuffer output = CharBuffer.allocate((int) Math.ceil(input.remaining() * (double) decoder.maxCharsPerByte()));
+    decoder.decode(input, output, true);
+    decoder.flush(output);
+    output.flip();
+    return new StringWithEncoding(output.toString(), encoding, null, buffer.position(), buffer.remaining());
+  }
+
+  private static StringWithEncoding decodeArray(byte[] bytes, int offset, int length, String declaredCharset) {
+    String encoding = CharsetSniffer.sniffByteOrderMark(bytes, offset, length);
+    int byteOrderMarkLength = 0;
+    if (encoding != null) {
+      byteOrderMarkLength = CharsetSniffer.byteOrderMarkLength(encoding);
+    } else {
+      encoding = detectEncoding(bytes, offset, length, declaredCharset);
+    }
+    String content = new String(bytes, offset + byteOrderMarkLength, length - byteOrderMarkLength, Charset.forName(encoding));
+    return new StringWithEncoding(content, encoding, bytes, offset, length);
+  }
+
+  /**
+   * @param declaredCharset the encoding declared by the transport, which takes precedence over any
+   *                        declared by the page itself; may be null or empty.
+   */
+  private static String detectEncoding(byte[] bytes, int offset, int length, String declaredCharset) {
+    String encoding = CharsetSniffer.supportedEncoding(declaredCharset);
+    if (encoding != null) {
+      return encoding;
+    }
+    encoding = CharsetSniffer.prescan(bytes, offset, length);
+    if (encoding != null) {
+      return encoding;
+    }
+    Log.i("no charset found in first stage");
+    encoding = CharsetSniffer.sniffXmlDeclaration(bytes, offset, length);
+    if (encoding != null) {
+      return encoding;
+    }
+    Log.i("no charset found in second stage");
+    // HTTP 1.1 standardConfiguration is iso-8859-1 not utf8 but we force utf-8 as YouTube assumes it.
+    return UTF8_LOWER_CASE;
   }
 }
@@ -0,0 +1,394 @@
+package com.chimbori.crux.common;
+
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Determines the character encoding of an HTML document by inspecting its raw bytes, without
+ * decoding them into a {@link String} first.
+ * <p>
+ * Declarations are looked for following the WHATWG “prescan a byte stream to determine its
+ * encoding” algorithm: comments & other markup are skipped, and only {@code <meta charset>} or
+ * {@code <meta http-equiv="Content-Type" content="…; charset=…">} are considered. The algorithm
+ * only sees ASCII-compatible bytes, so it works regardless of the document’s actual encoding.
+ *
+ * @see <a href="https://html.spec.whatwg.org/multipage/parsing.html#prescan-a-byte-stream-to-determine-its-encoding">Prescan a byte stream to determine its encoding</a>
+ */
+final class CharsetSniffer {
+  /**
+   * Number of bytes to prescan. The specification suggests 1024, but pages that declare their
+   * encoding a little later than that are common enough that we look a little further.
+   */
+  static final int PRESCAN_BYTES = 2048;
+
+  private static final String UTF_8 = "utf-8";
+  private static final String UTF_16BE = "utf-16be";
+  private static final String UTF_16LE = "utf-16le";
+
+  private CharsetSniffer() {
+  }
+
+  /**
+   * @return the encoding indicated by a byte order mark at the start of {@code bytes}, or
+   * {@code null}.
+   */
+  static String sniffByteOrderMark(byte[] bytes, int offset, int length) {
+    if (length >= 3 && (bytes[offset] & 0xFF) == 0xEF && (bytes[offset + 1] & 0xFF) == 0xBB && (bytes[offset + 2] & 0xFF) == 0xBF) {
+      return UTF_8;
+    } else if (length >= 2 && (bytes[offset] & 0xFF) == 0xFE && (bytes[offset + 1] & 0xFF) == 0xFF) {
+      return UTF_16BE;
+    } else if (length >= 2 && (bytes[offset] & 0xFF) == 0xFF && (bytes[offset + 1] & 0xFF) == 0xFE) {
+      return UTF_16LE;
+    }
+    return null;
+  }
+
+  /**
+   * @return the length of the byte order mark for an encoding returned by
+   * {@link #sniffByteOrderMark}.
+   */
+  static int byteOrderMarkLength(String encoding) {
+    return UTF_8.equals(encoding) ? 3 : 2;
+  }
+
+  /**
+   * @return the supported encoding declared by a {@code <meta>} tag within the first
+   * {@link #PRESCAN_BYTES} bytes, in lower case, or {@code null} if there is none.
+   */
+  static String prescan(byte[] bytes, int offset, int length) {
+    return new Prescanner(bytes, offset, Math.min(offset + length, offset + PRESCAN_BYTES)).prescan();
+  }
+
+  /**
+   * @return the supported encoding declared by an XML declaration ({@code <?xml … encoding="…"?>})
+   * at the start of {@code bytes}, in lower case, or {@code null} if there is none.
+   */
+  static String sniffXmlDeclaration(byte[] bytes, int offset, int length) {
+    int end = offset + Math.min(length, PRESCAN_BYTES);
+    if (!matchesIgnoreCase(bytes, offset, end, "<?xml")) {
+      return null;
+    }
+    for (int i = offset + 5; i < end && bytes[i] != '>'; i++) {
+      if (matchesIgnoreCase(bytes, i, end, "encoding")) {
+        int j = i + "encoding".length();
+        while (j < end && isWhitespace(bytes[j])) {
+          j++;
+        }
+        if (j >= end || bytes[j] != '=') {
+          continue;
+        }
+        j++;
+        while (j < end && isWhitespace(bytes[j])) {
+          j++;
+        }
+        if (j >= end || (bytes[j] != '"' && bytes[j] != '\'')) {
+          return null;
+        }
+        byte quote = bytes[j++];
+        int valueStart = j;
+        while (j < end && bytes[j] != quote) {
+          j++;
+        }
+        return j < end ? supportedEncoding(ascii(bytes, valueStart, j)) : null;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return {@code label}, cleaned up & in lower case, if it names an encoding supported by this
+   * JVM, or {@code null} otherwise.
+   */
+  static String supportedEncoding(String label) {
+    if (label == null) {
+      return null;
+    }
+    String encoding = StringUtils.encodingCleanup(label).toLowerCase(Locale.ENGLISH);
+    if (encoding.isEmpty()) {
+      return null;
+    }
+    try {
+      return Charset.isSupported(encoding) ? encoding : null;
+    } catch (IllegalCharsetNameException e) {
+      return null;
+    }
+  }
+
+  private static boolean isWhitespace(int b) {
+    return b == 0x09 || b == 0x0A || b == 0x0C || b == 0x0D || b == 0x20;
+  }
+
+  private static boolean isAsciiLetter(int b) {
+    return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+  }
+
+  private static int toLowerCase(int b) {
+    return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b;
+  }
+
+  private static boolean matchesIgnoreCase(byte[] bytes, int offset, int end, String lowerCase) {
+    if (offset + lowerCase.length() > end) {
+      return false;
+    }
+    for (int i = 0; i < lowerCase.length(); i++) {
+      if (toLowerCase(bytes[offset + i]) != lowerCase.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String ascii(byte[] bytes, int start, int end) {
+    char[] chars = new char[end - start];
+    for (int i = start; i < end; i++) {
+      chars[i - start] = (char) (bytes[i] & 0xFF);
+    }
+    return new String(chars);
+  }
+
+  /**
+   * Implements “extracting a character encoding from a meta element”, which finds the value of
+   * {@code charset=} within the {@code content} of a {@code <meta http-equiv>}.
+   */
+  static String extractCharsetFromContent(String content) {
+    String lowerCase = content.toLowerCase(Locale.ENGLISH);
+    int position = 0;
+    while (true) {
+      int index = lowerCase.indexOf("charset", position);
+      if (index < 0) {
+        return null;
+      }
+      position = index + "charset".length();
+      while (position < content.length() && isWhitespace(content.charAt(position))) {
+        position++;
+      }
+      if (position >= content.length() || content.charAt(position) != '=') {
+        continue;
+      }
+      position++;
+      while (position < content.length() && isWhitespace(content.charAt(position))) {
+        position++;
+      }
+      if (position >= content.length()) {
+        return null;
+      }
+      char c = content.charAt(position);
+      if (c == '"' || c == '\'') {
+        int end = content.indexOf(c, position + 1);
+        return end >= 0 ? content.substring(position + 1, end) : null;
+      }
+      int end = position;
+      while (end < content.length() && !isWhitespace(content.charAt(end)) && content.charAt(end) != ';') {
+        end++;
+      }
+      return content.substring(position, end);
+    }
+  }
+
+  /**
+   * State of a single prescan. Reaching {@link #end} at any point aborts the prescan.
+   */
+  private static class Prescanner {
+    private final byte[] bytes;
+    private final int end;
+    private int position;
+
+    // The most recently read attribute.
+    private String name;
+    private String value;
+
+    Prescanner(byte[] bytes, int offset, int end) {
+      this.bytes = bytes;
+      this.position = offset;
+      this.end = end;
+    }
+
+    String prescan() {
+      while (position < end) {
+        if (matchesIgnoreCase(bytes, position, end, "<!--")) {
+          position = indexOf("-->", position + 2);  // As specified, "<!-->" is a complete comment.
+          if (position < 0) {
+            return null;
+          }
+          position += 3;
+
+        } else if (matchesIgnoreCase(bytes, position, end, "<meta")
+            && position + 5 < end && (isWhitespace(bytes[position + 5]) || bytes[position + 5] == '/')) {
+          position += 6;
+          String encoding = processMeta();
+          if (encoding != null) {
+            return encoding;
+          }
+
+        } else if (bytes[position] == '<' && position + 1 < end
+            && (isAsciiLetter(bytes[position + 1])
+            || (bytes[position + 1] == '/' && position + 2 < end && isAsciiLetter(bytes[position + 2])))) {
+          // Skip over any other tag, along with its attributes.
+          while (position < end && !isWhitespace(bytes[position]) && bytes[position] != '>') {
+            position++;
+          }
+          while (readAttribute()) {
+            // Ignore.
+          }
+          position++;
+
+        } else if (matchesIgnoreCase(bytes, position, end, "<!")
+            || matchesIgnoreCase(bytes, position, end, "</")
+            || matchesIgnoreCase(bytes, position, end, "<?")) {
+          position = indexOf(">", position + 2);
+          if (position < 0) {
+            return null;
+          }
+          position++;
+
+        } else {
+          position++;
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Reads the attributes of a {@code <meta>} tag, and returns the encoding it declares (if any).
+     */
+    private String processMeta() {
+      Set<String> attributeNames = new HashSet<>();
+      boolean gotPragma = false;
+      Boolean needPragma = null;
+      String charset = null;
+
+      while (readAttribute()) {
+        if (!attributeNames.add(name)) {
+          continue;
+        }
+        if (name.equals("http-equiv")) {
+          gotPragma = gotPragma || value.equals("content-type");
+        } else if (name.equals("content")) {
+          String extracted = supportedEncoding(extractCharsetFromContent(value));
+          if (extracted != null && charset == null) {
+            charset = extracted;
+            needPragma = true;
+          }
+        } else if (name.equals("charset")) {
+          charset = value;
+          needPragma = false;
+        }
+      }
+
+      if (needPragma == null || (needPragma && !gotPragma)) {
+        return null;
+      }
+      String encoding = supportedEncoding(charset);
+      if (encoding == null) {
+        return null;
+      }
+      if (encoding.equals(UTF_16BE) || encoding.equals(UTF_16LE) || encoding.equals("utf-16")) {
+        return UTF_8;  // A document that can declare its encoding in ASCII cannot be in UTF-16.
+      } else if (encoding.equals("x-user-defined")) {
+        return "windows-1252";
+      }
+      return encoding;
+    }
+
+    /**
+     * Implements “get an attribute”, storing the result in {@link #name} & {@link #value}.
+     *
+     * @return false if there are no more attributes in the current tag.
+     */
+    private boolean readAttribute() {
+      while (position < end && (isWhitespace(bytes[position]) || bytes[position] == '/')) {
+        position++;
+      }
+      if (position >= end || bytes[position] == '>') {
+        return false;
+      }
+
+      StringBuilder attributeName = new StringBuilder();
+      StringBuilder attributeValue = new StringBuilder();
+      name = "";
+      value = "";
+
+      // Attribute name.
+      while (true) {
+        if (position >= end) {
+          return false;
+        }
+        int b = bytes[position] & 0xFF;
+        if (b == '=' && attributeName.length() > 0) {
+          position++;
+          break;
+        } else if (isWhitespace(b)) {
+          while (position < end && isWhitespace(bytes[position])) {
+            position++;
+          }
+          if (position >= end) {
+            return false;
+          }
+          if (bytes[position] != '=') {
+            name = attributeName.toString();
+            return true;
+          }
+          position++;
+          break;
+        } else if (b == '/' || b == '>') {
+          name = attributeName.toString();
+          return true;
+        }
+        attributeName.append((char) toLowerCase(b));
+        position++;
+      }
+      name = attributeName.toString();
+
+      // Attribute value.
+      while (position < end && isWhitespace(bytes[position])) {
+        position++;
+      }
+      if (position >= end) {
+        return false;
+      }
+      int b = bytes[position] & 0xFF;
+      if (b == '"' || b == '\'') {
+        int quote = b;
+        while (true) {
+          position++;
+          if (position >= end) {
+            return false;
+          }
+          b = bytes[position] & 0xFF;
+          if (b == quote) {
+            position++;
+            value = attributeValue.toString();
+            return true;
+          }
+          attributeValue.append((char) toLowerCase(b));
+        }
+      } else if (b == '>') {
+        return true;
+      }
+      while (true) {
+        if (position >= end) {
+          return false;
+        }
+        b = bytes[position] & 0xFF;
+        if (isWhitespace(b) || b == '>') {
+          value = attributeValue.toString();
+          return true;
+        }
+        attributeValue.append((char) toLowerCase(b));
+        position++;
+      }
+    }
+
+    private int indexOf(String needle, int from) {
+      for (int i = from; i + needle.length() <= end; i++) {
+        if (matchesIgnoreCase(bytes, i, end, needle)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+  }
+}
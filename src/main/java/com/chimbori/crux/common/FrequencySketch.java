@@ -0,0 +1,84 @@
+package com.chimbori.crux.common;
+
+/**
+ * Estimates how often each item has been seen recently, in a fixed amount of memory regardless of
+ * the number of distinct items (a count-min sketch of 4-bit counters).
+ * <p>
+ * Each item is counted in four counters, chosen by different hashes, and its estimate is the
+ * smallest of them, so estimates may be too high (when items share counters) but never too low,
+ * up to the maximum of {@link #MAX_FREQUENCY}. Once {@code 10 × expectedItems} increments have
+ * been recorded, all counters are halved, so that items which were popular long ago are gradually
+ * forgotten. Instances are not thread-safe.
+ */
+public final class FrequencySketch {
+  public static final int MAX_FREQUENCY = 15;
+
+  private static final long[] SEEDS = {
+      0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+  };
+
+  private static final long HALF_OF_EACH_COUNTER = 0x7777777777777777L;
+
+  /**
+   * Each long holds 16 counters: four groups of four, one group for each hash function.
+   */
+  private final long[] table;
+  private final int tableMask;
+  private final int sampleSize;
+  private int increments = 0;
+
+  public FrequencySketch(int expectedItems) {
+    int length = Integer.highestOneBit(Math.max(8, Math.min(expectedItems, 1 << 24)) - 1) << 1;
+    table = new long[length];
+    tableMask = length - 1;
+    sampleSize = Math.max(10, 10 * Math.min(expectedItems, 1 << 24));
+  }
+
+  public int frequency(long item) {
+    int frequency = MAX_FREQUENCY;
+    for (int depth = 0; depth < 4; depth++) {
+      long hash = hash(item, depth);
+      int shift = counterShift(hash, depth);
+      frequency = Math.min(frequency, (int) ((table[index(hash)] >>> shift) & 0xfL));
+    }
+    return frequency;
+  }
+
+  public void increment(long item) {
+    boolean added = false;
+    for (int depth = 0; depth < 4; depth++) {
+      long hash = hash(item, depth);
+      int index = index(hash);
+      int shift = counterShift(hash, depth);
+      if (((table[index] >>> shift) & 0xfL) < MAX_FREQUENCY) {
+        table[index] += 1L << shift;
+        added = true;
+      }
+    }
+    if (added && ++increments == sampleSize) {
+      halve();
+    }
+  }
+
+  private void halve() {
+    for (int i = 0; i < table.length; i++) {
+      table[i] = (table[i] >>> 1) & HALF_OF_EACH_COUNTER;
+    }
+    increments /= 2;
+  }
+
+  private int index(long hash) {
+    return (int) (hash >>> 32) & tableMask;
+  }
+
+  private static int counterShift(long hash, int depth) {
+    return ((depth << 2) + (int) (hash & 3)) << 2;
+  }
+
+  private static long hash(long item, int depth) {
+    long hash = (item + SEEDS[depth]) * 0x9e3779b97f4a7c15L;
+    hash ^= hash >>> 29;
+    hash *= 0xbf58476d1ce4e5b9L;
+    return hash ^ (hash >>> 32);
+  }
+}
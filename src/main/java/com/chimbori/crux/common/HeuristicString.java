@@ -9,10 +9,43 @@ package com.chimbori.crux.common;
  * When a candidate is found, it is returned via the {@link CandidateFound} Exception. This is to
  * ensure that other pending calls to {@link #or(String)} are not executed, and the caller can skip
  * evaluating other candidates as soon as the first one is found.
+ *
+ * Arguments to {@link #or(String)} are still computed before the call, though, and each candidate
+ * found costs an Exception; {@link #firstOf} avoids both, by only computing each candidate when it
+ * is needed.
  */
 public class HeuristicString {
+  /**
+   * A candidate value that is computed lazily from some source, e.g. a DOM element.
+   */
+  public interface Candidate<T> {
+    String get(T source);
+  }
+
   private String string = null;
 
+  /**
+   * Computes each of {@code candidates} in turn, and stops at the first one that is non-empty.
+   *
+   * @return the same value as {@code new HeuristicString(c0).or(c1)…or(cN)} would have found: the
+   * first non-empty candidate if any, otherwise an empty string if any candidate was non-null, or
+   * else null.
+   */
+  @SafeVarargs
+  public static <T> String firstOf(T source, Candidate<? super T>... candidates) {
+    String found = null;
+    for (Candidate<? super T> candidate : candidates) {
+      String value = candidate.get(source);
+      if (value != null) {
+        if (!value.isEmpty()) {
+          return value;
+        }
+        found = value;
+      }
+    }
+    return found;
+  }
+
   public HeuristicString(String string) throws CandidateFound {
     this.string = string;
     if (string != null && !string.isEmpty()) {
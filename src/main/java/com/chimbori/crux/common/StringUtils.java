@@ -15,33 +15,135 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class StringUtils {
-  private static final String WHITESPACE = "[ \r\t\n]+";
-
   private static final String UTF8 = "UTF-8";
 
   private StringUtils() {
     // Prevent instantiation.
   }
 
+  /**
+   * Trims {@code url}, and replaces each run of whitespace within it with {@code %20}.
+   *
+   * @return {@code url} itself, if nothing needed to be replaced.
+   */
   public static String urlEncodeSpaceCharacter(String url) {
-    return url.isEmpty() ? url : url.trim().replaceAll(WHITESPACE, "%20");
+    int start = trimmedStart(url);
+    int end = trimmedEnd(url, start);
+    if (start == 0 && end == url.length() && indexOfWhitespace(url, start, end) < 0) {
+      return url;
+    }
+    return appendUrlEncodedSpaces(new StringBuilder(end - start + 8), url).toString();
+  }
+
+  /**
+   * Appends {@code url} to {@code out}, as {@link #urlEncodeSpaceCharacter(String)} would return it.
+   */
+  public static StringBuilder appendUrlEncodedSpaces(StringBuilder out, CharSequence url) {
+    return appendReplacingWhitespace(out, url, "%20");
   }
 
+  /**
+   * @return the number of non-overlapping occurrences of {@code substring} in {@code str}. To count
+   * several substrings in the same text, use a {@link SubstringCounter} instead.
+   */
   public static int countMatches(String str, String substring) {
+    if (substring.isEmpty()) {
+      return 0;
+    }
     int count = 0;
-    int indexOf = str.indexOf(substring);
-    if (indexOf >= 0) {
+    for (int index = str.indexOf(substring); index >= 0; index = str.indexOf(substring, index + substring.length())) {
       count++;
-      count += countMatches(str.substring(indexOf + substring.length()), substring);
     }
     return count;
   }
 
   /**
    * Remove more than two spaces or newlines
+   *
+   * @return {@code str} itself, if nothing needed to be removed.
    */
   public static String innerTrim(String str) {
-    return str.replaceAll(WHITESPACE, " ").trim();
+    int start = trimmedStart(str);
+    int end = trimmedEnd(str, start);
+    if (start == 0 && end == str.length()) {
+      int whitespace = indexOfWhitespace(str, start, end);
+      while (whitespace >= 0 && str.charAt(whitespace) == ' ' && !isWhitespace(str.charAt(whitespace + 1))) {
+        whitespace = indexOfWhitespace(str, whitespace + 1, end);
+      }
+      if (whitespace < 0) {
+        return str;  // Every run of whitespace is already a single space.
+      }
+    }
+    return appendInnerTrimmed(new StringBuilder(end - start), str).toString();
+  }
+
+  /**
+   * Appends {@code str} to {@code out}, as {@link #innerTrim(String)} would return it.
+   */
+  public static StringBuilder appendInnerTrimmed(StringBuilder out, CharSequence str) {
+    return appendReplacingWhitespace(out, str, " ");
+  }
+
+  /**
+   * Matches the {@code [ \r\t\n]} character class that was formerly used to find runs of whitespace.
+   */
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\r' || c == '\t' || c == '\n';
+  }
+
+  /**
+   * @return the index of the first character that {@link String#trim()} would keep.
+   */
+  private static int trimmedStart(CharSequence str) {
+    int start = 0;
+    while (start < str.length() && str.charAt(start) <= ' ') {
+      start++;
+    }
+    return start;
+  }
+
+  /**
+   * @return the index just past the last character that {@link String#trim()} would keep.
+   */
+  private static int trimmedEnd(CharSequence str, int start) {
+    int end = str.length();
+    while (end > start && str.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    return end;
+  }
+
+  private static int indexOfWhitespace(CharSequence str, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (isWhitespace(str.charAt(i))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Trims {@code str} as {@link String#trim()} does, and replaces each run of whitespace within it
+   * with {@code replacement}, in a single pass. Trimming first is equivalent to trimming after the
+   * replacement, because the trimmed range always starts & ends with a non-whitespace character.
+   */
+  private static StringBuilder appendReplacingWhitespace(StringBuilder out, CharSequence str, String replacement) {
+    int start = trimmedStart(str);
+    int end = trimmedEnd(str, start);
+    int i = start;
+    while (i < end) {
+      char c = str.charAt(i);
+      if (isWhitespace(c)) {
+        out.append(replacement);
+        do {
+          i++;
+        } while (i < end && isWhitespace(str.charAt(i)));
+      } else {
+        out.append(c);
+        i++;
+      }
+    }
+    return out;
   }
 
   /**
@@ -69,43 +171,31 @@ public class StringUtils {
    * @return the longest substring as str1.substring(result[0], result[1]);
    */
   static String getLongestSubstring(String str1, String str2) {
-    int res[] = longestSubstring(str1, str2);
+    return getLongestSubstring(str1, str2, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Like {@link #getLongestSubstring(String, String)}, but stops searching as soon as a common
+   * substring of {@code maxLength} characters has been found, and returns that one instead. This
+   * is sufficient, and faster, when only common substrings above some length are of interest.
+   */
+  static String getLongestSubstring(String str1, String str2, int maxLength) {
+    int res[] = longestSubstring(str1, str2, maxLength);
     if (res == null || res[0] >= res[1])
       return "";
 
     return str1.substring(res[0], res[1]);
   }
 
-  private static int[] longestSubstring(String str1, String str2) {
+  /**
+   * Runs in O(n + m) time & memory, using a suffix automaton of {@code str2}. Among several longest
+   * common substrings, the one that ends earliest in {@code str1} is returned.
+   */
+  private static int[] longestSubstring(String str1, String str2, int maxLength) {
     if (str1 == null || str1.isEmpty() || str2 == null || str2.isEmpty())
       return null;
 
-    // dynamic programming => save already identical length into array
-    // to understand this algo simply print identical length in every entry of the array
-    // i+1, j+1 then reuses information from i,j
-    // java initializes them already with 0
-    int[][] num = new int[str1.length()][str2.length()];
-    int maxlen = 0;
-    int lastSubstrBegin = 0;
-    int endIndex = 0;
-    for (int i = 0; i < str1.length(); i++) {
-      for (int j = 0; j < str2.length(); j++) {
-        if (str1.charAt(i) == str2.charAt(j)) {
-          if ((i == 0) || (j == 0))
-            num[i][j] = 1;
-          else
-            num[i][j] = 1 + num[i - 1][j - 1];
-
-          if (num[i][j] > maxlen) {
-            maxlen = num[i][j];
-            // generate substring from str1 => i
-            lastSubstrBegin = i - num[i][j] + 1;
-            endIndex = i + 1;
-          }
-        }
-      }
-    }
-    return new int[]{lastSubstrBegin, endIndex};
+    return SuffixAutomaton.of(str2).longestCommonSubstring(str1, maxLength);
   }
 
   static String estimateDate(String url) {
@@ -249,7 +339,7 @@ public class StringUtils {
       res.append(part);
       counter++;
     }
-    return innerTrim(res.toString());
+    return appendInnerTrimmed(new StringBuilder(res.length()), res).toString();
   }
 
   /**
@@ -0,0 +1,177 @@
+package com.chimbori.crux.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Counts the occurrences of several substrings at once, in a single pass over the text, without
+ * creating any intermediate strings (an Aho-Corasick automaton).
+ * <p>
+ * The result is always the same as the sum of {@link StringUtils#countMatches} for each needle,
+ * i.e. occurrences of the same needle never overlap, but occurrences of different needles may.
+ * Instances are immutable, and can be shared across threads.
+ */
+public final class SubstringCounter {
+  /**
+   * Transitions out of state {@code s} are {@code labels[i] → targets[i]}, for
+   * {@code firstEdge[s] <= i < firstEdge[s + 1]}, sorted by label.
+   */
+  private final int[] firstEdge;
+  private final char[] labels;
+  private final int[] targets;
+
+  private final int[] failure;
+
+  /**
+   * Index of the needle that ends at each state, or -1; then the nearest state along the failure
+   * chain at which some needle ends, or -1.
+   */
+  private final int[] needleAt;
+  private final int[] nextOutput;
+
+  private final int[] needleLengths;
+
+  /**
+   * False if no needle can overlap with another occurrence of itself (e.g. “aa” or “abab” can), in
+   * which case every occurrence can be counted without tracking where the last one ended.
+   */
+  private final boolean needsOverlapCheck;
+
+  private SubstringCounter(String[] needles) {
+    // Build the trie.
+    List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+    trie.add(new TreeMap<Character, Integer>());
+    List<Integer> needleAtState = new ArrayList<>();
+    needleAtState.add(-1);
+    List<String> needleList = new ArrayList<>();
+    for (String needle : needles) {
+      if (needle == null || needle.isEmpty()) {
+        throw new IllegalArgumentException("Needles must not be empty");
+      }
+      int state = 0;
+      for (int i = 0; i < needle.length(); i++) {
+        Integer next = trie.get(state).get(needle.charAt(i));
+        if (next == null) {
+          next = trie.size();
+          trie.get(state).put(needle.charAt(i), next);
+          trie.add(new TreeMap<Character, Integer>());
+          needleAtState.add(-1);
+        }
+        state = next;
+      }
+      if (needleAtState.get(state) >= 0) {
+        throw new IllegalArgumentException("Needles must be distinct: " + needle);
+      }
+      needleAtState.set(state, needleList.size());
+      needleList.add(needle);
+    }
+
+    // Flatten it.
+    int stateCount = trie.size();
+    firstEdge = new int[stateCount + 1];
+    labels = new char[stateCount - 1];
+    targets = new int[stateCount - 1];
+    needleAt = new int[stateCount];
+    int edge = 0;
+    for (int state = 0; state < stateCount; state++) {
+      firstEdge[state] = edge;
+      for (Map.Entry<Character, Integer> transition : trie.get(state).entrySet()) {
+        labels[edge] = transition.getKey();
+        targets[edge] = transition.getValue();
+        edge++;
+      }
+      needleAt[state] = needleAtState.get(state);
+    }
+    firstEdge[stateCount] = edge;
+
+    // Failure & output links, breadth-first.
+    failure = new int[stateCount];
+    nextOutput = new int[stateCount];
+    nextOutput[0] = -1;
+    int[] queue = new int[stateCount];
+    int head = 0;
+    int tail = 0;
+    queue[tail++] = 0;
+    while (head < tail) {
+      int state = queue[head++];
+      for (int i = firstEdge[state]; i < firstEdge[state + 1]; i++) {
+        int child = targets[i];
+        failure[child] = state == 0 ? 0 : step(failure[state], labels[i]);
+        nextOutput[child] = needleAt[failure[child]] >= 0 ? failure[child] : nextOutput[failure[child]];
+        queue[tail++] = child;
+      }
+    }
+
+    needleLengths = new int[needleList.size()];
+    boolean overlaps = false;
+    for (int i = 0; i < needleLengths.length; i++) {
+      needleLengths[i] = needleList.get(i).length();
+      overlaps |= hasBorder(needleList.get(i));
+    }
+    needsOverlapCheck = overlaps;
+  }
+
+  public static SubstringCounter of(String... needles) {
+    return new SubstringCounter(needles);
+  }
+
+  public int countMatches(CharSequence text) {
+    return countMatches(text, 0, text.length());
+  }
+
+  /**
+   * Counts occurrences that lie entirely within {@code text[start, end)}.
+   */
+  public int countMatches(CharSequence text, int start, int end) {
+    int[] lastMatchEnd = null;
+    if (needsOverlapCheck) {
+      lastMatchEnd = new int[needleLengths.length];
+      Arrays.fill(lastMatchEnd, start);
+    }
+
+    int count = 0;
+    int state = 0;
+    for (int i = start; i < end; i++) {
+      state = step(state, text.charAt(i));
+      for (int output = needleAt[state] >= 0 ? state : nextOutput[state]; output >= 0; output = nextOutput[output]) {
+        if (lastMatchEnd != null) {
+          int needle = needleAt[output];
+          if (i + 1 - needleLengths[needle] < lastMatchEnd[needle]) {
+            continue;  // Overlaps the previous occurrence of the same needle.
+          }
+          lastMatchEnd[needle] = i + 1;
+        }
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private int step(int state, char c) {
+    while (true) {
+      int edge = Arrays.binarySearch(labels, firstEdge[state], firstEdge[state + 1], c);
+      if (edge >= 0) {
+        return targets[edge];
+      }
+      if (state == 0) {
+        return 0;
+      }
+      state = failure[state];
+    }
+  }
+
+  /**
+   * @return whether some proper prefix of {@code needle} is also a suffix of it.
+   */
+  private static boolean hasBorder(String needle) {
+    for (int length = 1; length < needle.length(); length++) {
+      if (needle.regionMatches(0, needle, needle.length() - length, length)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
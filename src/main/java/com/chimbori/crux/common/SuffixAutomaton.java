@@ -0,0 +1,155 @@
+package com.chimbori.crux.common;
+
+import java.util.Arrays;
+
+/**
+ * The suffix automaton of a string: the smallest automaton that accepts exactly its substrings,
+ * built in linear time & space. Walking another string through it finds, for each position, the
+ * longest common substring ending there, without comparing every pair of positions.
+ * <p>
+ * A string of length {@code n} has at most {@code 2n} states and {@code 3n} transitions, which are
+ * kept in flat arrays (transitions as per-state linked lists), so no objects are created per
+ * character.
+ */
+final class SuffixAutomaton {
+  // Per state.
+  private int[] length;
+  private int[] link;
+  private int[] firstEdge;
+
+  // Per transition.
+  private char[] edgeLabel;
+  private int[] edgeTarget;
+  private int[] nextEdge;
+
+  private int stateCount = 0;
+  private int edgeCount = 0;
+
+  private SuffixAutomaton(int capacity) {
+    int states = Math.max(2, 2 * capacity);
+    length = new int[states];
+    link = new int[states];
+    firstEdge = new int[states];
+    int edges = Math.max(4, 3 * capacity);
+    edgeLabel = new char[edges];
+    edgeTarget = new int[edges];
+    nextEdge = new int[edges];
+  }
+
+  static SuffixAutomaton of(CharSequence str) {
+    SuffixAutomaton automaton = new SuffixAutomaton(str.length());
+    int last = automaton.addState(0, -1);
+    for (int i = 0; i < str.length(); i++) {
+      last = automaton.extend(last, str.charAt(i));
+    }
+    return automaton;
+  }
+
+  /**
+   * Finds the longest substring of {@code str} that also occurs in the string this automaton was
+   * built from; if there are several, the one that ends first in {@code str}. The search stops early
+   * once a common substring of length {@code enough} is found.
+   *
+   * @return {@code {start, end}} within {@code str}; {@code start == end} if there is no common
+   * character.
+   */
+  int[] longestCommonSubstring(CharSequence str, int enough) {
+    int state = 0;
+    int matched = 0;
+    int bestLength = 0;
+    int bestEnd = 0;
+    for (int i = 0; i < str.length() && bestLength < enough; i++) {
+      char c = str.charAt(i);
+      int next;
+      while ((next = transition(state, c)) < 0 && state != 0) {
+        state = link[state];
+        matched = length[state];
+      }
+      if (next < 0) {
+        matched = 0;  // Not even this character occurs; restart from the empty string.
+      } else {
+        state = next;
+        matched++;
+      }
+      if (matched > bestLength) {
+        bestLength = matched;
+        bestEnd = i + 1;
+      }
+    }
+    return new int[]{bestEnd - bestLength, bestEnd};
+  }
+
+  private int extend(int last, char c) {
+    int current = addState(length[last] + 1, -1);
+    int p = last;
+    while (p >= 0 && transition(p, c) < 0) {
+      addEdge(p, c, current);
+      p = link[p];
+    }
+    if (p < 0) {
+      link[current] = 0;
+      return current;
+    }
+    int q = transition(p, c);
+    if (length[p] + 1 == length[q]) {
+      link[current] = q;
+      return current;
+    }
+
+    int clone = addState(length[p] + 1, link[q]);
+    for (int edge = firstEdge[q]; edge >= 0; edge = nextEdge[edge]) {
+      addEdge(clone, edgeLabel[edge], edgeTarget[edge]);
+    }
+    while (p >= 0 && transition(p, c) == q) {
+      setTransition(p, c, clone);
+      p = link[p];
+    }
+    link[q] = clone;
+    link[current] = clone;
+    return current;
+  }
+
+  private int addState(int stateLength, int stateLink) {
+    if (stateCount == length.length) {
+      int capacity = stateCount * 2;
+      length = Arrays.copyOf(length, capacity);
+      link = Arrays.copyOf(link, capacity);
+      firstEdge = Arrays.copyOf(firstEdge, capacity);
+    }
+    length[stateCount] = stateLength;
+    link[stateCount] = stateLink;
+    firstEdge[stateCount] = -1;
+    return stateCount++;
+  }
+
+  private void addEdge(int state, char label, int target) {
+    if (edgeCount == edgeLabel.length) {
+      int capacity = edgeCount * 2;
+      edgeLabel = Arrays.copyOf(edgeLabel, capacity);
+      edgeTarget = Arrays.copyOf(edgeTarget, capacity);
+      nextEdge = Arrays.copyOf(nextEdge, capacity);
+    }
+    edgeLabel[edgeCount] = label;
+    edgeTarget[edgeCount] = target;
+    nextEdge[edgeCount] = firstEdge[state];
+    firstEdge[state] = edgeCount++;
+  }
+
+  private int transition(int state, char c) {
+    for (int edge = firstEdge[state]; edge >= 0; edge = nextEdge[edge]) {
+      if (edgeLabel[edge] == c) {
+        return edgeTarget[edge];
+      }
+    }
+    return -1;
+  }
+
+  private void setTransition(int state, char c, int target) {
+    for (int edge = firstEdge[state]; edge >= 0; edge = nextEdge[edge]) {
+      if (edgeLabel[edge] == c) {
+        edgeTarget[edge] = target;
+        return;
+      }
+    }
+  }
+}
@@ -1,6 +1,6 @@
 package com.chimbori.crux.images;
 
-import com.chimbori.crux.common.HeuristicString;
+import com.chimbori.crux.common.HeuristicString.Candidate;
 import com.chimbori.crux.common.StringUtils;
 
 import org.apache.commons.lang3.StringEscapeUtils;
@@ -10,6 +10,7 @@ import org.jsoup.select.Elements;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import static com.chimbori.crux.common.HeuristicString.firstOf;
 import static com.chimbori.crux.common.StringUtils.anyChildTagWithAttr;
 
 /**
@@ -28,6 +29,15 @@ public class ImageUrlExtractor {
 
   private static final Pattern CSS_URL = Pattern.compile("url\\([\\\"']{0,1}(.+?)[\\\"']{0,1}\\)");
 
+  private static final Candidate<Element> SRC = attr("src");
+  private static final Candidate<Element> DATA_SRC = attr("data-src");
+  private static final Candidate<Element> IMG_SRC = anyChildWithAttr("img", "src");
+  private static final Candidate<Element> IMG_DATA_SRC = anyChildWithAttr("img", "data-src");
+  private static final Candidate<Element> ANY_SRC = anyChildWithAttr("*", "src");
+  private static final Candidate<Element> ANY_DATA_SRC = anyChildWithAttr("*", "data-src");
+  private static final Candidate<Element> ROLE_IMG_STYLE = imageUrlFromStyleAttr("[role=img]");
+  private static final Candidate<Element> ANY_STYLE = imageUrlFromStyleAttr("*");
+
   private ImageUrlExtractor(String url, Element root) {
     this.url = url;
     this.root = root;
@@ -38,24 +48,41 @@ public class ImageUrlExtractor {
   }
 
   public ImageUrlExtractor findImage() {
-    try {
-      imageUrl = new HeuristicString(root.attr("src"))
-          .or(root.attr("data-src"))
-          .or(anyChildTagWithAttr(root.select("img"), "src"))
-          .or(anyChildTagWithAttr(root.select("img"), "data-src"))
-          .or(anyChildTagWithAttr(root.select("*"), "src"))
-          .or(anyChildTagWithAttr(root.select("*"), "data-src"))
-          .or(parseImageUrlFromStyleAttr(root.select("[role=img]")))
-          .or(parseImageUrlFromStyleAttr(root.select("*")))
-          .toString();
-    } catch (HeuristicString.CandidateFound candidateFound) {
-      imageUrl = candidateFound.candidate;
-    }
+    // Each candidate is only computed if all previous ones were empty, so the sub-tree is only
+    // searched as far as necessary.
+    imageUrl = firstOf(root, SRC, DATA_SRC, IMG_SRC, IMG_DATA_SRC, ANY_SRC, ANY_DATA_SRC, ROLE_IMG_STYLE, ANY_STYLE);
     imageUrl = StringUtils.makeAbsoluteUrl(url, imageUrl);
     return this;
   }
 
-  private String parseImageUrlFromStyleAttr(Elements elements) {
+  private static Candidate<Element> attr(final String attr) {
+    return new Candidate<Element>() {
+      @Override
+      public String get(Element root) {
+        return root.attr(attr);
+      }
+    };
+  }
+
+  private static Candidate<Element> anyChildWithAttr(final String cssQuery, final String attr) {
+    return new Candidate<Element>() {
+      @Override
+      public String get(Element root) {
+        return anyChildTagWithAttr(root.select(cssQuery), attr);
+      }
+    };
+  }
+
+  private static Candidate<Element> imageUrlFromStyleAttr(final String cssQuery) {
+    return new Candidate<Element>() {
+      @Override
+      public String get(Element root) {
+        return parseImageUrlFromStyleAttr(root.select(cssQuery));
+      }
+    };
+  }
+
+  private static String parseImageUrlFromStyleAttr(Elements elements) {
     for (Element element : elements) {
       String styleAttr = element.attr("style");
       if (styleAttr == null || styleAttr.isEmpty()) {
@@ -1,10 +1,11 @@
 package com.chimbori.crux.links;
 
-import com.chimbori.crux.common.HeuristicString;
+import com.chimbori.crux.common.HeuristicString.Candidate;
 import com.chimbori.crux.common.StringUtils;
 
 import org.jsoup.nodes.Element;
 
+import static com.chimbori.crux.common.HeuristicString.firstOf;
 import static com.chimbori.crux.common.StringUtils.anyChildTagWithAttr;
 
 /**
@@ -16,6 +17,20 @@ import static com.chimbori.crux.common.StringUtils.anyChildTagWithAttr;
  * Check out the test cases for markup that is supported.
  */
 public class LinkUrlExtractor {
+  private static final Candidate<Element> HREF = new Candidate<Element>() {
+    @Override
+    public String get(Element root) {
+      return root.attr("href");
+    }
+  };
+
+  private static final Candidate<Element> ANY_CHILD_HREF = new Candidate<Element>() {
+    @Override
+    public String get(Element root) {
+      return anyChildTagWithAttr(root.select("*"), "href");
+    }
+  };
+
   private final String url;
   private final Element root;
 
@@ -31,13 +46,7 @@ public class LinkUrlExtractor {
   }
 
   public LinkUrlExtractor findLink() {
-    try {
-      linkUrl = new HeuristicString(root.attr("href"))
-          .or(anyChildTagWithAttr(root.select("*"), "href"))
-          .toString();
-    } catch (HeuristicString.CandidateFound candidateFound) {
-      linkUrl = candidateFound.candidate;
-    }
+    linkUrl = firstOf(root, HREF, ANY_CHILD_HREF);
     linkUrl = StringUtils.makeAbsoluteUrl(url, linkUrl);
     return this;
   }
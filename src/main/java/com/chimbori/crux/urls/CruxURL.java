@@ -1,6 +1,6 @@
 package com.chimbori.crux.urls;
 
-import com.chimbori.crux.common.StringUtils;
+import com.chimbori.crux.common.SubstringCounter;
 
 import java.net.MalformedURLException;
 import java.net.URI;
@@ -13,6 +13,8 @@ import java.net.URL;
  * page instead of redirecting the user to the actual URL.
  */
 public class CruxURL {
+  private static final SubstringCounter AD = SubstringCounter.of("ad");
+
   private final String fileName;
   private URI uri;
 
@@ -71,7 +73,7 @@ public class CruxURL {
   }
 
   public boolean isAdImage() {
-    return StringUtils.countMatches(uri.toString(), "ad") >= 2;
+    return AD.countMatches(uri.toString()) >= 2;
   }
 
   public boolean isWebScheme() {
@@ -0,0 +1,84 @@
+package com.chimbori.crux.articles;
+
+import com.chimbori.crux.articles.configuration.StandardConfigurationWithImages;
+import com.chimbori.crux.common.CharsetConverter;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ArticleBodyTest {
+  private static final String EXAMPLE_URL = "http://example.com/";
+
+  @Test
+  public void testBlocksAndSpans() {
+    Document document = Jsoup.parse("<h2>Title</h2><p>Some <a href='/x'>linked <b>bold</b></a> text</p>"
+        + "loose text<blockquote>Quote</blockquote><img src=y.png>");
+    ArticleBody body = ArticleBody.of(document.body().childNodes(), "");
+
+    assertEquals(5, body.blockCount());
+    assertEquals(ArticleBody.BlockType.HEADING, body.blockType(0));
+    assertEquals("h2", body.blockTagName(0));
+    assertEquals(ArticleBody.BlockType.PARAGRAPH, body.blockType(1));
+    assertEquals("Some linked bold text", body.blockText(1).toString());
+    assertEquals(ArticleBody.BlockType.TEXT, body.blockType(2));
+    assertEquals("", body.blockTagName(2));
+    assertEquals("loose text", body.blockText(2).toString());
+    assertEquals(ArticleBody.BlockType.QUOTE, body.blockType(3));
+    assertEquals(ArticleBody.BlockType.IMAGE, body.blockType(4));
+    assertEquals("", body.blockText(4).toString());
+
+    List<ArticleBody.Span> spans = body.spans(1);
+    assertEquals(2, spans.size());
+    assertEquals("a", spans.get(0).tagName);
+    assertEquals("linked bold", body.blockText(1).subSequence(spans.get(0).start, spans.get(0).end).toString());
+    assertEquals("/x", spans.get(0).attr("href"));
+    assertEquals("", spans.get(0).attr("title"));
+    assertEquals("b", spans.get(1).tagName);
+    assertEquals("bold", body.blockText(1).subSequence(spans.get(1).start, spans.get(1).end).toString());
+    assertTrue(body.spans(0).isEmpty());
+  }
+
+  @Test
+  public void testConvertsBackToIdenticalHtml() {
+    Document document = Jsoup.parse("<p>a <!-- comment --> <i>b</i>\n  c</p><pre>  x\n   y </pre>"
+        + "<p><a href=z download>&lt;tag&gt; &amp; </a></p><img src=y.png alt=''><p></p>text");
+    ArticleBody body = ArticleBody.of(document.body().childNodes(), "");
+    Document copy = new Document("");
+    for (int i = 0; i < document.body().childNodeSize(); i++) {
+      copy.appendChild(document.body().childNode(i).clone());
+    }
+    assertEquals(copy.html(), body.html());
+    assertEquals(copy.text(), body.toDocument().text());
+    assertNotSame(body.toDocument(), body.toDocument());
+  }
+
+  @Test
+  public void testCompactBodyMatchesDocument() throws IOException {
+    for (String fileName : new String[]{"bbc.html", "heise.html", "yomiuri.html", "techcrunch.html", "image_extractor_css_style.html"}) {
+      String html = CharsetConverter.readStream(new FileInputStream("test_data/" + fileName)).content;
+      for (boolean withImages : new boolean[]{false, true}) {
+        ArticleExtractor extractor = ArticleExtractor.with(EXAMPLE_URL, html);
+        ArticleExtractor compactExtractor = ArticleExtractor.with(EXAMPLE_URL, html).compactBody(true);
+        if (withImages) {
+          extractor.configure(StandardConfigurationWithImages.standardConfigurationWithImages);
+          compactExtractor.configure(StandardConfigurationWithImages.standardConfigurationWithImages);
+        }
+        Article expected = extractor.extractContent().article();
+        Article article = compactExtractor.extractContent().article();
+        assertNull(article.document);
+        assertNull(expected.body);
+        assertEquals(fileName, expected.document.html(), article.body.html());
+      }
+    }
+  }
+}
@@ -1,9 +1,37 @@
 package com.chimbori.crux.articles;
 
 import com.chimbori.crux.TestHelper;
+import com.chimbori.crux.articles.configuration.CompiledConfiguration;
+import com.chimbori.crux.articles.configuration.Configuration;
+import com.chimbori.crux.articles.configuration.StandardConfiguration;
+import com.chimbori.crux.common.CharsetConverter;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.Pipe;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class ArticleExtractorTest {
   private static final String EXAMPLE_URL = "http://example.com/";
@@ -57,4 +85,233 @@ public class ArticleExtractorTest {
     Article galileoArticle = TestHelper.extractFromTestFile("https://en.wikipedia.org/wiki/Galileo_Galilei", "wikipedia_galileo.html");
     assertEquals(53, galileoArticle.estimatedReadingTimeMinutes);
   }
+
+  @Test
+  public void testScoresAreNotWrittenIntoCallerDocument() {
+    Document document = Jsoup.parse("<div><p>Visible Text that has to be longer than X characters so it’s not stripped out.</p>" +
+        "<p>More Visible Text that has to be longer than X characters so it’s not stripped out.</p></div>");
+    ArticleExtractor.with(EXAMPLE_URL, document).extractContent();
+    for (Element element : document.getAllElements()) {
+      assertTrue(element.outerHtml(), element.attributes().size() == 0);
+    }
+  }
+
+  @Test
+  public void testMetadataFromHeadWithPreviewImage() {
+    Article article = ArticleExtractor.with(EXAMPLE_URL, "<html><head><title>Title</title>" +
+        "<meta property='og:image' content='/preview.png'></head>" +
+        "<body><p>Visible Text that has to be longer than X characters so it’s not stripped out.</p></body></html>")
+        .extractMetadataFromHead()
+        .article();
+    assertEquals("Title", article.title);
+    assertEquals("http://example.com/preview.png", article.imageUrl);
+    assertEquals(null, article.document);
+  }
+
+  @Test
+  public void testMetadataFromHeadFallsBackToContentWithoutPreviewImage() {
+    Article article = ArticleExtractor.with(EXAMPLE_URL, "<html><head><title>Title</title></head>" +
+        "<body><div><img src='/hero.png'><p>Visible Text that has to be longer than X characters so it’s not stripped out.</p>" +
+        "<p>More Visible Text that has to be longer than X characters so it’s not stripped out.</p></div></body></html>")
+        .extractMetadataFromHead()
+        .article();
+    assertEquals("Title", article.title);
+    assertEquals("http://example.com/hero.png", article.imageUrl);
+    assertTrue(article.document != null);
+  }
+
+  @Test
+  public void testExtractFromMemoryMappedFile() throws IOException {
+    String html = CharsetConverter.readStream(new FileInputStream("test_data/yomiuri.html")).content;
+    Article expected = ArticleExtractor.with(EXAMPLE_URL, html).extractMetadata().extractContent().article();
+
+    try (FileChannel channel = new RandomAccessFile("test_data/yomiuri.html", "r").getChannel()) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      Article article = ArticleExtractor.with(EXAMPLE_URL, buffer, null).extractMetadata().extractContent().article();
+      assertEquals(expected.toString(), article.toString());
+      assertEquals(0, buffer.position());
+    }
+  }
+
+  @Test
+  public void testExtractFromByteBufferSliceWithCharsetHint() throws IOException {
+    byte[] page = "<html><head><title>\u00e9t\u00e9</title></head></html>".getBytes("ISO-8859-1");
+    ByteBuffer segment = ByteBuffer.allocateDirect(page.length + 10);
+    segment.position(5);
+    segment.put(page);
+    segment.position(5);
+    segment.limit(5 + page.length);
+
+    assertEquals("\u00e9t\u00e9", ArticleExtractor.with(EXAMPLE_URL, segment.slice(), "ISO-8859-1").extractMetadata().article().title);
+    assertEquals("\u00e9t\u00e9", ArticleExtractor.with(EXAMPLE_URL, ByteBuffer.wrap(page), "iso-8859-1").extractMetadata().article().title);
+  }
+
+  @Test
+  public void testExtractFromStreamMatchesExtractFromString() throws IOException {
+    for (String fileName : new String[]{"bbc.html", "yomiuri.html", "heise.html"}) {
+      String html = CharsetConverter.readStream(new FileInputStream("test_data/" + fileName)).content;
+      Article expected = ArticleExtractor.with(EXAMPLE_URL, html).extractMetadata().extractContent().article();
+      Article article = ArticleExtractor.with(EXAMPLE_URL, new FileInputStream("test_data/" + fileName), null)
+          .extractMetadata().extractContent().article();
+      assertEquals(expected.title, article.title);
+      assertEquals(expected.document.text(), article.document.text());
+    }
+  }
+
+  @Test
+  public void testStreamedPagesOnlyDifferBeyondWhereReadingStopped() throws IOException {
+    CompiledConfiguration configuration = CompiledConfiguration.of(Configuration.standardConfiguration);
+    int stoppedEarly = 0;
+    for (String fileName : new File("test_data").list()) {
+      String html = CharsetConverter.readStream(new FileInputStream("test_data/" + fileName)).content;
+      Article expected = ArticleExtractor.with(EXAMPLE_URL, html).extractMetadata().extractContent()
+          .estimateReadingTime().article();
+      Article article = ArticleExtractor.with(EXAMPLE_URL, new FileInputStream("test_data/" + fileName), null)
+          .extractMetadata().extractContent().estimateReadingTime().article();
+      assertEquals(fileName, expected.document.text(), article.document.text());
+
+      Set<String> expectedImages = new HashSet<>();
+      for (Article.Image image : expected.images) {
+        expectedImages.add(image.src);
+      }
+      Set<String> images = new HashSet<>();
+      for (Article.Image image : article.images) {
+        images.add(image.src);
+      }
+      String read = new HtmlStream(Channels.newChannel(new FileInputStream("test_data/" + fileName)), null,
+          CharsetConverter.DEFAULT_MAX_BYTES).readContent(configuration);
+      if (read.length() == html.length()) {
+        assertEquals(fileName, expected.estimatedReadingTimeMinutes, article.estimatedReadingTimeMinutes);
+        assertEquals(fileName, expectedImages, images);
+      } else {
+        stoppedEarly++;
+        assertTrue(fileName, article.estimatedReadingTimeMinutes <= expected.estimatedReadingTimeMinutes);
+        assertTrue(fileName, expectedImages.containsAll(images));
+      }
+    }
+    assertTrue(stoppedEarly > 0);
+  }
+
+  @Test
+  public void testContentIsCopiedUnlessDocumentIsConsumed() throws IOException {
+    String html = CharsetConverter.readStream(new FileInputStream("test_data/bbc.html")).content;
+    Document document = Jsoup.parse(html);
+    Article copied = ArticleExtractor.with(EXAMPLE_URL, document).extractContent().estimateReadingTime().article();
+    Element paragraph = copied.document.select("p").first();
+    assertTrue(document.text().contains(paragraph.text()));
+    assertTrue(document.getAllElements().indexOf(paragraph) < 0);
+
+    Document consumedDocument = Jsoup.parse(html);
+    Article moved = ArticleExtractor.with(EXAMPLE_URL, consumedDocument).consumeDocument(true)
+        .extractContent().estimateReadingTime().article();
+    assertEquals(copied.document.html(), moved.document.html());
+    assertFalse(consumedDocument.text().contains(moved.document.select("p").first().text()));
+    assertEquals(copied.estimatedReadingTimeMinutes, moved.estimatedReadingTimeMinutes);
+    assertTrue(moved.estimatedReadingTimeMinutes > 0);
+  }
+
+  @Test
+  public void testPreservedDocumentIsLeftUnmodified() throws IOException {
+    for (String fileName : new String[]{"bbc.html", "thevacationgals.html", "wikipedia_galileo.html"}) {
+      String html = CharsetConverter.readStream(new FileInputStream("test_data/" + fileName)).content;
+      Article expected = ArticleExtractor.with(EXAMPLE_URL, html).extractContent().estimateReadingTime().article();
+
+      Document document = Jsoup.parse(html);
+      String original = document.outerHtml();
+      for (int i = 0; i < 2; i++) {
+        Article article = ArticleExtractor.with(EXAMPLE_URL, document).preserveDocument(true)
+            .extractContent().estimateReadingTime().article();
+        assertEquals(fileName, original, document.outerHtml());
+        assertEquals(fileName, expected.document.html(), article.document.html());
+        assertEquals(fileName, expected.images.size(), article.images.size());
+        assertEquals(fileName, expected.estimatedReadingTimeMinutes, article.estimatedReadingTimeMinutes);
+      }
+    }
+  }
+
+  @Test
+  public void testExtractAllMatchesSeparateExtractions() throws IOException {
+    List<Configuration> configurations = Arrays.asList(
+        Configuration.standardConfiguration,
+        Configuration.standardConfigurationWithImages,
+        new StandardConfiguration() {
+          @Override
+          public Set<String> strippedNodeNames() {
+            return Collections.singleton("script");
+          }
+        },
+        new StandardConfiguration() {
+          @Override
+          public int minLengthForParagraphs() {
+            return 100;
+          }
+        },
+        new StandardConfiguration() {
+          @Override
+          public Pattern negativeCssClassesAndIds() {
+            return Pattern.compile("nothing-is-negative");
+          }
+        });
+    for (String fileName : new String[]{"bbc.html", "thevacationgals.html", "wikipedia_galileo.html"}) {
+      String html = CharsetConverter.readStream(new FileInputStream("test_data/" + fileName)).content;
+      List<Article> articles = ArticleExtractor.with(EXAMPLE_URL, html).extractAll(configurations);
+      assertEquals(configurations.size(), articles.size());
+      for (int i = 0; i < configurations.size(); i++) {
+        Article expected = ArticleExtractor.with(EXAMPLE_URL, html).configure(configurations.get(i))
+            .extractMetadata().extractContent().estimateReadingTime().article();
+        Article article = articles.get(i);
+        assertEquals(fileName, expected.toString(), article.toString());
+        assertEquals(fileName, expected.document.html(), article.document.html());
+        assertEquals(fileName, expected.images.size(), article.images.size());
+      }
+    }
+  }
+
+  @Test
+  public void testExtractMetadataFromHeadOfStream() throws IOException {
+    String html = CharsetConverter.readStream(new FileInputStream("test_data/bbc.html")).content;
+    Article expected = ArticleExtractor.with(EXAMPLE_URL, html).extractMetadataFromHead().article();
+    Article article = ArticleExtractor.with(EXAMPLE_URL, new FileInputStream("test_data/bbc.html"), null)
+        .extractMetadataFromHead().article();
+    assertEquals(expected.toString(), article.toString());
+  }
+
+  @Test
+  public void testStreamStopsReadingAfterTheArticle() throws IOException {
+    StringBuilder page = new StringBuilder("<html><head><title>Title</title></head><body><article>");
+    for (int i = 0; i < 40; i++) {
+      page.append("<p>Paragraph ").append(i).append(" of the article, which is long enough to matter.</p>");
+    }
+    page.append("</article><div></div><div></div><div id=comments>");
+    for (int i = 0; i < 2000; i++) {
+      page.append("<div class=comment>Comment ").append(i).append("</div>");
+    }
+    page.append("</div></body></html>");
+    byte[] bytes = page.toString().getBytes("UTF-8");
+
+    HtmlStream stream = new HtmlStream(Channels.newChannel(new ByteArrayInputStream(bytes)), null, CharsetConverter.DEFAULT_MAX_BYTES);
+    String html = stream.readContent(CompiledConfiguration.of(Configuration.standardConfiguration));
+    assertTrue(html.endsWith("</article><div></div><div></div>"));
+    assertEquals(HtmlStream.CHUNK_BYTES, stream.bytesRead());  // Only the first chunk out of ~75 KB.
+
+    Article article = ArticleExtractor.with(EXAMPLE_URL, new ByteArrayInputStream(bytes), "text/html; charset=utf-8")
+        .extractMetadata().extractContent().article();
+    assertEquals("Title", article.title);
+    assertTrue(article.document.text().contains("Paragraph 39 of the article"));
+  }
+
+  @Test
+  public void testNonBlockingChannelIsRejected() throws IOException {
+    Pipe pipe = Pipe.open();
+    pipe.source().configureBlocking(false);
+    try {
+      ArticleExtractor.with(EXAMPLE_URL, pipe.source(), null);
+      fail("Non-blocking channels should be rejected.");
+    } catch (IllegalArgumentException expected) {
+      // Expected.
+    } finally {
+      pipe.source().close();
+      pipe.sink().close();
+    }
+  }
 }
@@ -0,0 +1,119 @@
+package com.chimbori.crux.articles;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BatchArticleExtractorTest {
+  private static final String[] TEST_FILES = {
+      "bbc.html", "nyt.html", "wikipedia_galileo.html", "washingtonpost.html", "techcrunch.html", "npr.html"
+  };
+
+  private static List<BatchArticleExtractor.Input> inputs() throws IOException {
+    List<BatchArticleExtractor.Input> inputs = new ArrayList<>();
+    for (String testFile : TEST_FILES) {
+      byte[] bytes = Files.readAllBytes(new File("test_data/" + testFile).toPath());
+      inputs.add(BatchArticleExtractor.Input.bytes("http://example.com/" + testFile, bytes));
+    }
+    return inputs;
+  }
+
+  @Test
+  public void testResultsMatchSequentialExtractionInInputOrder() throws IOException {
+    List<BatchArticleExtractor.Input> inputs = inputs();
+    BatchArticleExtractor extractor = BatchArticleExtractor.withWorkers(3).queueCapacity(1);
+    BatchArticleExtractor.Batch batch = extractor.extract(inputs.iterator());
+    for (BatchArticleExtractor.Input input : inputs) {
+      BatchArticleExtractor.Result result = batch.next();
+      assertEquals(input, result.input);
+      assertNull(result.error);
+      Article expected = ArticleExtractor.with(input.url, new String(input.bytes, "UTF-8"))
+          .extractMetadata()
+          .extractContent()
+          .estimateReadingTime()
+          .article();
+      assertEquals(expected.toString(), result.article.toString());
+    }
+    assertTrue(!batch.hasNext());
+    assertEquals(inputs.size(), batch.stats.succeeded());
+    assertTrue(batch.stats.maxLatencyNanos() > 0);
+    extractor.close();
+  }
+
+  @Test
+  public void testCompletionOrderDeliversEveryInput() throws IOException {
+    List<BatchArticleExtractor.Input> inputs = inputs();
+    final Set<BatchArticleExtractor.Input> delivered = new HashSet<>();
+    BatchArticleExtractor extractor = BatchArticleExtractor.withWorkers(2)
+        .order(BatchArticleExtractor.Order.COMPLETION)
+        .metadataOnly(true);
+    BatchArticleExtractor.Stats stats = extractor.extract(inputs.iterator(), new BatchArticleExtractor.Callback() {
+      @Override
+      public void onResult(BatchArticleExtractor.Result result) {
+        assertNotNull(result.article);
+        delivered.add(result.input);
+      }
+    });
+    assertEquals(new HashSet<>(inputs), delivered);
+    assertEquals(inputs.size(), stats.completed());
+    extractor.close();
+  }
+
+  @Test
+  public void testFailuresAreReportedPerInput() {
+    List<BatchArticleExtractor.Input> inputs = new ArrayList<>();
+    inputs.add(BatchArticleExtractor.Input.html("http://example.com/empty", ""));
+    inputs.add(BatchArticleExtractor.Input.html("http://example.com/", "<html><head><title>Title</title></head></html>"));
+    BatchArticleExtractor extractor = BatchArticleExtractor.withWorkers(1);
+    BatchArticleExtractor.Batch batch = extractor.extract(inputs.iterator());
+    assertTrue(batch.next().error instanceof IllegalArgumentException);
+    assertEquals("Title", batch.next().article.title);
+    assertEquals(1, batch.stats.failed());
+    assertEquals(1, batch.stats.succeeded());
+    extractor.close();
+  }
+
+  @Test
+  public void testInputsArePulledOnlyAsResultsAreConsumed() {
+    final int[] pulled = {0};
+    Iterator<BatchArticleExtractor.Input> inputs = new Iterator<BatchArticleExtractor.Input>() {
+      @Override
+      public boolean hasNext() {
+        return pulled[0] < 100;
+      }
+
+      @Override
+      public BatchArticleExtractor.Input next() {
+        pulled[0]++;
+        return BatchArticleExtractor.Input.html("http://example.com/", "<html><head><title>Title</title></head></html>");
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+    BatchArticleExtractor extractor = BatchArticleExtractor.withWorkers(2).queueCapacity(3);
+    BatchArticleExtractor.Batch batch = extractor.extract(inputs);
+    int consumed = 0;
+    while (batch.hasNext()) {
+      assertTrue(pulled[0] - consumed <= 5);
+      batch.next();
+      consumed++;
+    }
+    assertEquals(100, consumed);
+    extractor.close();
+  }
+}
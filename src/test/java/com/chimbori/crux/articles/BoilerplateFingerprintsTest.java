@@ -0,0 +1,114 @@
+package com.chimbori.crux.articles;
+
+import com.chimbori.crux.common.CharsetConverter;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BoilerplateFingerprintsTest {
+  private static String page(int number) {
+    return "<html><body>"
+        + "<nav><ul><li><a href='/'>Home page</a></li><li><a href='/world'>World news</a></li>"
+        + "<li><a href='/sport'>Sport news</a></li></ul></nav>"
+        + "<div class='main'><h1>Story number " + number + "</h1>"
+        + "<p>This is the story of page " + number + ", which is told at some length, so that it is"
+        + " long enough to be recognized as the article. It goes on for several sentences, about"
+        + " things that are different from the story on every other page of this site.</p>"
+        + "<p>And then, page " + number + " ends, with a second paragraph that is also long enough to"
+        + " count as part of the article, rather than as a caption or a link.</p></div>"
+        + "<footer><div>Copyright 20" + number + " The Example News Company, all rights reserved.</div>"
+        + "</footer></body></html>";
+  }
+
+  private static Article extract(String url, String html, BoilerplateFingerprints fingerprints) {
+    return ArticleExtractor.with(url, html).boilerplate(fingerprints).extractContent().article();
+  }
+
+  @Test
+  public void testRemovesBlocksSeenOnManyPages() {
+    BoilerplateFingerprints fingerprints = BoilerplateFingerprints.withCapacity(1024).minPages(3);
+    for (int i = 10; i < 13; i++) {
+      String html = page(i);
+      assertEquals(0, fingerprints.removedCount());
+      extract("http://example.com/" + i, html, fingerprints);
+    }
+    assertEquals(3, fingerprints.pageCount());
+
+    Article article = extract("http://example.com/99", page(99), fingerprints);
+    assertEquals(2, fingerprints.removedCount());  // <nav> & <footer>, digits notwithstanding.
+    assertTrue(article.document.text().contains("This is the story of page 99"));
+    assertFalse(article.document.text().contains("World news"));
+
+    // Blocks are only counted per site.
+    extract("http://example.org/1", page(1), fingerprints);
+    assertEquals(2, fingerprints.removedCount());
+  }
+
+  @Test
+  public void testPreservedDocumentsAreNotModified() {
+    BoilerplateFingerprints fingerprints = BoilerplateFingerprints.withCapacity(1024).minPages(2);
+    for (int i = 10; i < 12; i++) {
+      extract("http://example.com/" + i, page(i), fingerprints);
+    }
+    Document document = Jsoup.parse(page(99));
+    String original = document.outerHtml();
+    Article article = ArticleExtractor.with("http://example.com/99", document).preserveDocument(true)
+        .boilerplate(fingerprints).extractContent().article();
+    assertEquals(2, fingerprints.removedCount());
+    assertEquals(original, document.outerHtml());
+    assertTrue(article.document.text().contains("This is the story of page 99"));
+  }
+
+  @Test
+  public void testRepeatedPagesAreCountedOnce() {
+    BoilerplateFingerprints fingerprints = BoilerplateFingerprints.withCapacity(1024).minPages(2);
+    for (int i = 0; i < 5; i++) {
+      Article article = extract("http://example.com/1", page(1), fingerprints);
+      assertTrue(article.document.text().contains("This is the story of page 1"));
+    }
+    assertEquals(1, fingerprints.pageCount());
+    assertEquals(0, fingerprints.removedCount());
+  }
+
+  @Test
+  public void testNewPagesAreRecordedWhenTheSketchIsFull() {
+    BoilerplateFingerprints fingerprints = BoilerplateFingerprints.withCapacity(16).minPages(15);
+    for (int i = 0; i < 500; i++) {
+      extract("http://example.com/" + i, page(i), fingerprints);
+    }
+    assertEquals(500, fingerprints.pageCount());
+  }
+
+  @Test
+  public void testForgottenPagesAreCountedAgain() {
+    BoilerplateFingerprints fingerprints = BoilerplateFingerprints.withCapacity(1024).rememberedPages(2);
+    extract("http://example.com/1", page(1), fingerprints);
+    extract("http://example.com/2", page(2), fingerprints);
+    extract("http://example.com/1", page(1), fingerprints);
+    assertEquals(2, fingerprints.pageCount());
+    extract("http://example.com/3", page(3), fingerprints);
+    extract("http://example.com/2", page(2), fingerprints);
+    assertEquals(4, fingerprints.pageCount());
+  }
+
+  @Test
+  public void testRefetchedPageDoesNotCountTowardsItself() throws IOException {
+    BoilerplateFingerprints fingerprints = BoilerplateFingerprints.withCapacity(1024).minPages(1);
+    String html = CharsetConverter.readStream(new FileInputStream("test_data/bbc.html")).content;
+    String expected = extract("http://www.bbc.com/news/article", html, fingerprints).document.text();
+    assertTrue(expected.length() > 1000);
+    for (int i = 0; i < 3; i++) {
+      assertEquals(expected, extract("http://www.bbc.com/news/article", html, fingerprints).document.text());
+    }
+    assertEquals(0, fingerprints.removedCount());
+    assertEquals(1, fingerprints.pageCount());
+  }
+}
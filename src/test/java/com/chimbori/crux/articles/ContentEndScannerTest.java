@@ -0,0 +1,74 @@
+package com.chimbori.crux.articles;
+
+import com.chimbori.crux.articles.configuration.CompiledConfiguration;
+import com.chimbori.crux.articles.configuration.Configuration;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ContentEndScannerTest {
+  private static final String PARAGRAPHS = repeat("<p>" + repeat("Lorem ipsum dolor sit amet. ", 10) + "</p>\n", 6);
+
+  @Test
+  public void testStopsAfterTrailingSiblingsOfTheArticle() {
+    String html = "<html><body><div id=wrapper><nav><a href=/>Home</a></nav>" +
+        "<article>" + PARAGRAPHS + "</article>" +
+        "<div class=share></div><aside><a href=/related>Related</a></aside>" +
+        "<div id=comments><p>First!</p></div><footer>Footer</footer></div></body></html>";
+    ContentEndScanner scanner = scanner();
+    assertTrue(scanner.scan(html, false));
+    assertEquals(html.indexOf("<div id=comments>"), scanner.end());
+  }
+
+  @Test
+  public void testReadsEverythingWithoutAnArticle() {
+    String html = "<html><body><div>" + PARAGRAPHS + "</div><div></div><div></div><div></div></body></html>";
+    assertFalse(scanner().scan(html, true));
+  }
+
+  @Test
+  public void testShortOrNestedArticleLikeElementsAreNotTheArticle() {
+    String html = "<article><p>Too short.</p></article><div></div><div></div><div></div>";
+    assertFalse(scanner().scan(html, true));
+
+    html = "<main><div class=content>" + PARAGRAPHS + "</div><div></div><div></div><div></div>" +
+        "<p>Still part of the main element.</p></main><div></div><div></div><div></div>";
+    ContentEndScanner scanner = scanner();
+    assertTrue(scanner.scan(html, true));
+    assertEquals(html.lastIndexOf("<div></div>"), scanner.end());
+  }
+
+  @Test
+  public void testParagraphsAfterTheArticleMeanItHasNotEnded() {
+    String html = "<div class=post>" + PARAGRAPHS + "</div><div></div><p>More text.</p><div></div><div></div><div></div>";
+    assertFalse(scanner().scan(html, true));
+  }
+
+  @Test
+  public void testResumesAcrossIncompleteInput() {
+    String html = "<html><body><!-- <article> --><script>var s = '<div>';</script>" +
+        "<article class='story'>" + PARAGRAPHS + "</article><div></div><div></div><div></div>";
+    ContentEndScanner scanner = scanner();
+    for (int length = 1; length < html.length(); length++) {
+      if (scanner.scan(html.substring(0, length), false)) {
+        break;
+      }
+    }
+    assertEquals(html.lastIndexOf("<div></div>"), scanner.end());
+  }
+
+  private static ContentEndScanner scanner() {
+    return new ContentEndScanner(CompiledConfiguration.of(Configuration.standardConfiguration));
+  }
+
+  private static String repeat(String s, int times) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < times; i++) {
+      builder.append(s);
+    }
+    return builder.toString();
+  }
+}
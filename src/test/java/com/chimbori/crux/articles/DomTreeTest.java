@@ -0,0 +1,64 @@
+package com.chimbori.crux.articles;
+
+import com.chimbori.crux.common.CharsetConverter;
+import com.chimbori.crux.common.SubstringCounter;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class DomTreeTest {
+  private static final SubstringCounter NOISE = SubstringCounter.of("&lt;", "px", " ");
+
+  @Test
+  public void testTreeMatchesJsoup() {
+    assertTreeMatchesJsoup("<div class=' a b ' id=x style='color: red'> a <p> b </p> c<br>d <span> </span>z</div>");
+    assertTreeMatchesJsoup("<ul><li>One</li><li><p>Two</p> three</li></ul><!-- comment --><table><tr><td>Cell</td></tr></table>");
+    assertTreeMatchesJsoup("text only");
+  }
+
+  @Test
+  public void testTreeMatchesJsoupOnPages() throws IOException {
+    for (String fileName : new String[]{"bbc.html", "heise.html", "yomiuri.html"}) {
+      assertTreeMatchesJsoup(CharsetConverter.readStream(new FileInputStream("test_data/" + fileName)).content);
+    }
+  }
+
+  @Test
+  public void testEmptyTree() {
+    TextStatistics textStatistics = TextStatistics.of(null);
+    assertEquals(0, DomTree.of(textStatistics).size());
+  }
+
+  private static void assertTreeMatchesJsoup(String html) {
+    Document document = Jsoup.parse(html);
+    DomTree tree = DomTree.of(TextStatistics.of(document.body()));
+    Elements elements = document.body().getAllElements();
+    assertEquals(elements.size(), tree.size());
+    for (int node = 0; node < tree.size(); node++) {
+      Element element = elements.get(node);
+      assertSame(element, tree.element(node));
+      assertEquals(node == 0 ? DomTree.NONE : elements.indexOf(element.parent()), tree.parent(node));
+      assertEquals(element.children().isEmpty() ? DomTree.NONE : elements.indexOf(element.child(0)), tree.firstChild(node));
+      Element nextSibling = node == 0 ? null : element.nextElementSibling();
+      assertEquals(nextSibling == null ? DomTree.NONE : elements.indexOf(nextSibling), tree.nextSibling(node));
+
+      assertEquals(element.tagName(), tree.tagName(node));
+      assertEquals(element.className(), tree.className(node));
+      assertEquals(element.id(), tree.id(node));
+      assertEquals(element.attr("style"), tree.attr(node, "style"));
+      assertEquals(element.text().length(), tree.textLength(node));
+      assertEquals(element.ownText().length(), tree.ownTextLength(node));
+      assertEquals(NOISE.countMatches(element.text()), tree.countMatches(node, NOISE));
+      assertEquals(NOISE.countMatches(element.ownText()), tree.countOwnMatches(node, NOISE));
+    }
+  }
+}
@@ -0,0 +1,130 @@
+package com.chimbori.crux.articles;
+
+import com.chimbori.crux.articles.configuration.CompiledConfiguration;
+import com.chimbori.crux.articles.configuration.StandardConfiguration;
+import com.chimbori.crux.common.CharsetConverter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ExtractionCacheTest {
+  private static final String EXAMPLE_URL = "http://example.com/";
+
+  @Test
+  public void testHitsReturnTheCachedArticle() throws IOException {
+    byte[] bytes = Files.readAllBytes(Paths.get("test_data/thevacationgals.html"));
+    ExtractionCache cache = ExtractionCache.withMaximumWeight(10 * 1024 * 1024);
+    Article article = cache.extract(EXAMPLE_URL, bytes);
+    Article hit = cache.extract(EXAMPLE_URL, bytes.clone());
+    assertNotSame(article, hit);
+    assertSame(article.body, hit.body);
+    assertEquals(article.toString(), hit.toString());
+    assertEquals(1, cache.hitCount());
+    assertEquals(1, cache.missCount());
+    assertEquals(1, cache.size());
+    assertEquals(ExtractionCache.weigh(article), cache.weight());
+    assertTrue(cache.weight() > article.body.blockCount() * 16);
+
+    assertNull(article.document);
+    assertTrue(!article.images.isEmpty());
+    for (Article.Image image : article.images) {
+      assertNull(image.element);
+    }
+    Article expected = ArticleExtractor.with(EXAMPLE_URL, CharsetConverter.decode(bytes, 0, bytes.length, null).content)
+        .compactBody(true).extractMetadata().extractContent().estimateReadingTime().article();
+    assertEquals(expected.title, article.title);
+    assertEquals(expected.body.html(), article.body.html());
+    assertEquals(expected.estimatedReadingTimeMinutes, article.estimatedReadingTimeMinutes);
+  }
+
+  @Test
+  public void testReturnedArticlesCanBeModified() throws IOException {
+    byte[] bytes = Files.readAllBytes(Paths.get("test_data/thevacationgals.html"));
+    ExtractionCache cache = ExtractionCache.withMaximumWeight(10 * 1024 * 1024);
+    Article article = cache.extract(EXAMPLE_URL, bytes);
+    String expected = article.toString();
+    article.title = "Modified";
+    article.images.get(0).src = "http://example.com/modified.png";
+    article.images.clear();
+    article.keywords = null;
+
+    Article hit = cache.extract(EXAMPLE_URL, bytes);
+    assertEquals(expected, hit.toString());
+    hit.images.get(0).src = "http://example.com/modified.png";
+    hit.images.clear();
+    assertEquals(expected, cache.extract(EXAMPLE_URL, bytes).toString());
+  }
+
+  @Test
+  public void testKeyIncludesUrlContentAndConfiguration() {
+    byte[] bytes = "<html><body><p>Some paragraph text that is long enough to be kept as content.</p></body></html>"
+        .getBytes(Charset.forName("UTF-8"));
+    byte[] changed = bytes.clone();
+    changed[changed.length - 30] = 'X';
+    CompiledConfiguration configuration = CompiledConfiguration.of(new StandardConfiguration());
+    ExtractionCache cache = ExtractionCache.withMaximumWeight(1024 * 1024);
+
+    Article article = cache.extract(EXAMPLE_URL, bytes);
+    assertNotSame(article.body, cache.extract("http://example.com/other", bytes).body);
+    assertNotSame(article.body, cache.extract(EXAMPLE_URL, changed).body);
+    Article configured = cache.extract(EXAMPLE_URL, bytes, configuration);
+    assertNotSame(article.body, configured.body);
+    assertSame(configured.body, cache.extract(EXAMPLE_URL, bytes, configuration).body);
+    assertEquals(4, cache.missCount());
+    assertEquals(1, cache.hitCount());
+  }
+
+  @Test
+  public void testRejectedPagesEvictNothingElse() throws IOException {
+    byte[] small = "<html><body><p>Some paragraph text that is long enough to be kept as content.</p></body></html>"
+        .getBytes(Charset.forName("UTF-8"));
+    byte[] large = Files.readAllBytes(Paths.get("test_data/thevacationgals.html"));
+    // Small enough to be extracted & weighed, but too large for the main part of the cache.
+    long weight = ExtractionCache.weigh(ExtractionCache.withMaximumWeight(1024 * 1024).extract(EXAMPLE_URL, large));
+    ExtractionCache cache = ExtractionCache.withMaximumWeight(weight);
+    for (int i = 0; i < 5; i++) {
+      cache.extract("http://example.com/" + i, small);
+    }
+    assertEquals(5, cache.size());
+
+    for (int i = 0; i < 3; i++) {
+      cache.extract(EXAMPLE_URL, large);
+    }
+    assertEquals(5, cache.size());
+    assertEquals(3, cache.evictionCount());
+    for (int i = 0; i < 5; i++) {
+      cache.extract("http://example.com/" + i, small);
+    }
+    assertEquals(5, cache.hitCount());
+  }
+
+  @Test
+  public void testFrequentlyRequestedPagesSurviveScans() {
+    byte[] bytes = "<html><body><p>Some paragraph text that is long enough to be kept as content.</p></body></html>"
+        .getBytes(Charset.forName("UTF-8"));
+    long weight = ExtractionCache.weigh(ExtractionCache.withMaximumWeight(1024).extract(EXAMPLE_URL, bytes));
+    ExtractionCache cache = ExtractionCache.withMaximumWeight(weight * 10);
+
+    for (int i = 0; i < 5; i++) {
+      cache.extract("http://example.com/popular", bytes);
+    }
+    for (int i = 0; i < 100; i++) {
+      cache.extract("http://example.com/" + i, bytes);
+    }
+    assertTrue(cache.weight() <= weight * 10);
+    assertTrue(cache.evictionCount() >= 90);
+    long hits = cache.hitCount();
+    cache.extract("http://example.com/popular", bytes);
+    assertEquals(hits + 1, cache.hitCount());
+  }
+}
@@ -0,0 +1,54 @@
+package com.chimbori.crux.articles;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GravityScoresTest {
+  @Test
+  public void testScoresAreKeyedByIdentity() {
+    Elements paragraphs = Jsoup.parse("<p>Same</p><p>Same</p>").select("p");
+    GravityScores scores = new GravityScores();
+    scores.set(paragraphs.get(0), 10);
+    assertTrue(scores.contains(paragraphs.get(0)));
+    assertFalse(scores.contains(paragraphs.get(1)));
+    assertEquals(10, scores.get(paragraphs.get(0)));
+    assertEquals(0, scores.get(paragraphs.get(1)));
+  }
+
+  @Test
+  public void testAddAccumulatesAndMarksElementAsScored() {
+    Element paragraph = Jsoup.parse("<p>Text</p>").select("p").first();
+    GravityScores scores = new GravityScores();
+    scores.add(paragraph, 0);
+    assertTrue(scores.contains(paragraph));
+    scores.add(paragraph, 30);
+    scores.add(paragraph, -50);
+    assertEquals(-20, scores.get(paragraph));
+  }
+
+  @Test
+  public void testTableGrowsAndClears() {
+    StringBuilder html = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      html.append("<p>").append(i).append("</p>");
+    }
+    Elements paragraphs = Jsoup.parse(html.toString()).select("p");
+    GravityScores scores = new GravityScores();
+    for (int i = 0; i < paragraphs.size(); i++) {
+      scores.set(paragraphs.get(i), i);
+    }
+    assertEquals(1000, scores.size());
+    for (int i = 0; i < paragraphs.size(); i++) {
+      assertEquals(i, scores.get(paragraphs.get(i)));
+    }
+    scores.clear();
+    assertEquals(0, scores.size());
+    assertFalse(scores.contains(paragraphs.get(0)));
+  }
+}
@@ -0,0 +1,45 @@
+package com.chimbori.crux.articles;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class HeadScannerTest {
+  @Test
+  public void testStopsAtBody() {
+    String html = "<!DOCTYPE html><html><head><title>Title</title></head>\n<body><p>Text</p></body></html>";
+    assertEquals(html.indexOf("<body>"), HeadScanner.endOfHead(html));
+  }
+
+  @Test
+  public void testStopsAtFirstBodyContent() {
+    String html = "<html><head><meta name='a'><div>Text</div><meta name='b'></head>";
+    assertEquals(html.indexOf("<div>"), HeadScanner.endOfHead(html));
+
+    html = "<html><head><meta name='a'>Text<meta name='b'></head>";
+    assertEquals(html.indexOf("Text"), HeadScanner.endOfHead(html));
+  }
+
+  @Test
+  public void testIncludesHeadTagsAfterEndOfHead() {
+    String html = "<html><head></head>\n<link rel='icon' href='/a.png'><body>";
+    assertEquals(html.indexOf("<body>"), HeadScanner.endOfHead(html));
+  }
+
+  @Test
+  public void testSkipsMarkupInCommentsScriptsAndAttributes() {
+    String html = "<html><head><!-- <div> -->" +
+        "<script>document.write('<div></body>');</script>" +
+        "<title><b>Title</b></title>" +
+        "<noscript><img src='/pixel.gif'></noscript>" +
+        "<meta content='<div>'></head><body>";
+    assertEquals(html.indexOf("<body>"), HeadScanner.endOfHead(html));
+  }
+
+  @Test
+  public void testReturnsLengthWithoutBody() {
+    String html = "<html><head><title>Title</title>";
+    assertEquals(html.length(), HeadScanner.endOfHead(html));
+    assertEquals(0, HeadScanner.endOfHead(""));
+  }
+}
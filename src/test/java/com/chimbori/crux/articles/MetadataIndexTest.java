@@ -0,0 +1,71 @@
+package com.chimbori.crux.articles;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MetadataIndexTest {
+  private static final String HTML = "<html><head>" +
+      "<title> First title </title>" +
+      "<meta name='description'>" +  // No content, so the next match wins.
+      "<meta name=' DESCRIPTION ' content='Description'>" +
+      "<meta name='description' content='Ignored'>" +
+      "<meta property='og:title' content='OG Title'>" +
+      "<link rel='Canonical' href='/canonical'>" +
+      "<link rel='icon' sizes='16x16' href='/16.png'>" +
+      "<link rel='icon' sizes='32x32' href='/32.png'>" +
+      "<link rel='Apple-Touch-Icon-Precomposed' href='/apple.png'>" +
+      "<link rel='alternate' type='application/atom+xml' href='/atom'>" +
+      "<link rel='alternate' type='application/rss+xml' href='/rss'>" +
+      "</head><body>" +
+      "<title>Body title</title>" +
+      "<meta name='twitter:title' content='Body meta'>" +
+      "<meta name='theme-color' content='#123456'>" +
+      "<link rel='amphtml' href='/amp'>" +
+      "<link rel='shortcut icon' href='/shortcut.ico'>" +
+      "</body></html>";
+
+  @Test
+  public void testLookupsMatchSelectors() {
+    Document doc = Jsoup.parse(HTML);
+    MetadataIndex metadata = MetadataIndex.of(doc);
+
+    assertEquals(doc.title(), metadata.title());
+    assertEquals(doc.select("head title").text(), metadata.headTitleText());
+    assertEquals(doc.select("head meta[name=description]").attr("content"), metadata.headMetaNameContent("description"));
+    assertEquals("Description", metadata.headMetaNameContent("description"));
+    assertEquals(doc.select("head meta[property=og:title]").attr("content"), metadata.headMetaPropertyContent("og:title"));
+    assertEquals(doc.select("head meta[name=twitter:title]").attr("content"), metadata.headMetaNameContent("twitter:title"));
+    assertEquals(doc.select("meta[name=theme-color]").attr("content"), metadata.metaNameContent("theme-color"));
+    assertEquals(doc.select("head link[rel=canonical]").attr("href"), metadata.headLinkHref("canonical"));
+    assertEquals(doc.select("link[rel=amphtml]").attr("href"), metadata.linkHref("amphtml"));
+    assertEquals(doc.select("link[rel=alternate]").select("link[type=application/rss+xml]").attr("href"),
+        metadata.linkHref("alternate", "application/rss+xml"));
+    assertEquals(doc.select("head link[rel=icon]"), metadata.headLinks("icon"));
+    assertEquals(doc.select("head link[rel^=apple-touch-icon]"), metadata.headLinksWithRelPrefix("apple-touch-icon"));
+    assertEquals(doc.select("head link[rel^=shortcut],link[rel$=icon]").attr("href"),
+        metadata.linkHrefWithRelPrefixInHeadOrSuffix("shortcut", "icon"));
+  }
+
+  @Test
+  public void testHeadOnlyLookupsIgnoreBody() {
+    MetadataIndex metadata = MetadataIndex.of(Jsoup.parse(HTML));
+    assertEquals("", metadata.headMetaNameContent("twitter:title"));
+    assertEquals("#123456", metadata.metaNameContent("theme-color"));
+    assertEquals("First title", metadata.headTitleText());
+  }
+
+  @Test
+  public void testMetadataHelpersResolveFromIndex() {
+    MetadataIndex metadata = MetadataIndex.of(Jsoup.parse(HTML));
+    assertEquals("First title", MetadataHelpers.extractTitle(metadata));
+    assertEquals("Description", MetadataHelpers.extractDescription(metadata));
+    assertEquals("/canonical", MetadataHelpers.extractCanonicalUrl(metadata));
+    assertEquals("/amp", MetadataHelpers.extractAmpUrl(metadata));
+    assertEquals("/rss", MetadataHelpers.extractFeedUrl(metadata));
+    assertEquals("/32.png", MetadataHelpers.extractFaviconUrl(metadata));
+    assertEquals("#123456", MetadataHelpers.extractThemeColor(metadata));
+  }
+}
@@ -0,0 +1,96 @@
+package com.chimbori.crux.articles;
+
+import com.chimbori.crux.articles.PostprocessPipeline.Order;
+import com.chimbori.crux.articles.PostprocessPipeline.Scope;
+import com.chimbori.crux.articles.PostprocessPipeline.Stage;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class PostprocessPipelineTest {
+  @Test
+  public void testFusesCompatibleStages() {
+    Stage remove = new RemoveTag("span", Order.PRE_ORDER, false);
+    Stage rename = new RenameTag("b", "i");
+    Stage inspect = new RemoveTag("div", Order.PRE_ORDER, true);
+    Stage removeAfter = new RemoveTag("em", Order.POST_ORDER, false);
+
+    assertEquals(1, new PostprocessPipeline(Arrays.asList(remove, rename, removeAfter)).walkCount());
+    // The inspecting stage must see the whole subtree after the removal, and pre-order stages
+    // cannot run after post-order ones in the same walk.
+    assertEquals(2, new PostprocessPipeline(Arrays.asList(remove, inspect)).walkCount());
+    assertEquals(2, new PostprocessPipeline(Arrays.asList(removeAfter, remove)).walkCount());
+    assertEquals(2, new PostprocessPipeline(Arrays.asList(removeAfter, rename)).walkCount());
+  }
+
+  @Test
+  public void testMatchesRunningStagesOneAtATime() {
+    String html = "<div><p>a <span>b</span><b>c</b></p><div><em><b>d</b></em>e</div><p><span>f</span><em>g</em></p></div>";
+    Stage[] stages = {
+        new RemoveTag("span", Order.PRE_ORDER, false),
+        new RenameTag("b", "em"),
+        new RemoveTag("em", Order.POST_ORDER, false),
+    };
+
+    Element fused = Jsoup.parse(html).body().child(0);
+    new PostprocessPipeline(Arrays.asList(stages)).run(fused);
+    Element sequential = Jsoup.parse(html).body().child(0);
+    for (Stage stage : stages) {
+      new PostprocessPipeline(Collections.singletonList(stage)).run(sequential);
+    }
+    assertEquals(sequential.outerHtml(), fused.outerHtml());
+    assertEquals("<div><p>a </p><div>e</div><p></p></div>", fused.outerHtml().replaceAll("\\s*\n\\s*", ""));
+  }
+
+  @Test
+  public void testTopNodeIsNeverSkipped() {
+    Element topNode = Jsoup.parse("<span><b>a</b></span>").body().child(0);
+    new PostprocessPipeline(Arrays.<Stage>asList(new RemoveTag("span", Order.PRE_ORDER, false), new RenameTag("b", "i")))
+        .run(topNode);
+    assertEquals(null, topNode.parent());
+    assertEquals("i", topNode.child(0).tagName());
+  }
+
+  private static class RemoveTag extends Stage {
+    private final String tagName;
+
+    RemoveTag(String tagName, Order order, boolean inspectsDescendants) {
+      super(order, Scope.ALL, inspectsDescendants, true);
+      this.tagName = tagName;
+    }
+
+    @Override
+    Element apply(Element element, int depth) {
+      if (element.tagName().equals(tagName)) {
+        element.remove();
+        return null;
+      }
+      return element;
+    }
+  }
+
+  private static class RenameTag extends Stage {
+    private final String from;
+    private final String to;
+
+    RenameTag(String from, String to) {
+      super(Order.PRE_ORDER, Scope.DESCENDANTS, false, true);
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    Element apply(Element element, int depth) {
+      if (element.tagName().equals(from)) {
+        element.tagName(to);
+      }
+      return element;
+    }
+  }
+}
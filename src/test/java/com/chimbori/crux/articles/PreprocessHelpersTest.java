@@ -0,0 +1,53 @@
+package com.chimbori.crux.articles;
+
+import com.chimbori.crux.articles.configuration.Configuration;
+import com.chimbori.crux.articles.configuration.StandardConfiguration;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class PreprocessHelpersTest {
+  @Test
+  public void testRemovesStrippedNodes() {
+    Document doc = Jsoup.parse("<head><script>a()</script><style>p {}</style><title>T</title></head>"
+        + "<body><!-- c --><p>One<script>b()</script><noscript>No</noscript></p>"
+        + "<div><style>q {}</style><!-- d --><p>Two<!-- e --></p></div><script>c()</script></body>");
+    PreprocessHelpers.configure(Configuration.standardConfiguration).preprocess(doc);
+    assertEquals("<title>T</title>", doc.head().html());
+    assertEquals("<p>One</p><div><p>Two</p></div>", doc.body().html().replaceAll("\\s*\n\\s*", ""));
+  }
+
+  @Test
+  public void testStrippedNodeNamesAreConfigurable() {
+    Document doc = Jsoup.parse("<p>One<!-- c --><script>a()</script><span>Two</span></p>");
+    PreprocessHelpers.configure(new StandardConfiguration() {
+      @Override
+      public Set<String> strippedNodeNames() {
+        return Collections.singleton("span");
+      }
+    }).preprocess(doc);
+    assertEquals("<p>One<!-- c --><script>a()</script></p>", doc.body().html().replaceAll("\\s*\n\\s*", ""));
+  }
+
+  @Test
+  public void testDeeplyNestedMarkup() {
+    Document doc = new Document("");
+    Element element = doc.appendElement("body");
+    for (int i = 0; i < 100000; i++) {
+      element = element.appendElement("div");
+    }
+    element.appendElement("script");
+    element.appendText("text");
+
+    PreprocessHelpers.configure(Configuration.standardConfiguration).preprocess(doc);
+    assertEquals(0, element.children().size());
+    assertEquals("text", element.text());
+  }
+}
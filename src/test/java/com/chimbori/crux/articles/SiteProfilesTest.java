@@ -0,0 +1,84 @@
+package com.chimbori.crux.articles;
+
+import com.chimbori.crux.common.CharsetConverter;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SiteProfilesTest {
+  @Test
+  public void testLocatorFindsTheSameElement() {
+    Document doc = Jsoup.parse("<div id=page><div class='b  a'>x</div><p>y</p><div class='a b'>"
+        + "<div class='main.content:1'><article>one</article><article id='x > y'>two</article></div></div></div>");
+    for (Element element : doc.body().getAllElements()) {
+      ContentLocator locator = ContentLocator.of(doc.body(), element);
+      assertSame(element, locator.find(doc.body()));
+      assertSame(element, ContentLocator.parse(locator.toString()).find(doc.body()));
+    }
+
+    Element second = doc.select("article").get(1);
+    assertEquals("div#page > div.a.b:1 > div.main%2econtent%3a1 > article#x%20%3e%20y",
+        ContentLocator.of(doc.body(), second).toString());
+    doc.getElementById("page").prependElement("div").addClass("a").addClass("b");
+    assertEquals("two", ContentLocator.of(doc.body(), second).find(doc.body()).text());
+    assertNull(ContentLocator.of(doc.body(), new Element(second.tag(), "")));
+    assertNull(ContentLocator.parse("div > #x"));
+    assertNull(ContentLocator.parse("div:one"));
+    assertNull(ContentLocator.parse("div%g0"));
+  }
+
+  @Test
+  public void testLearnedLocatorGivesTheSameResult() throws IOException {
+    SiteProfiles profiles = SiteProfiles.withMaximumSize(10);
+    for (String fileName : new String[]{"bbc.html", "heise.html", "yomiuri.html", "techcrunch.html", "nyt.html"}) {
+      String html = CharsetConverter.readStream(new FileInputStream("test_data/" + fileName)).content;
+      String url = "http://" + fileName + "/article";
+      Article expected = ArticleExtractor.with(url, html).extractContent().article();
+      Article first = ArticleExtractor.with(url, html).siteProfiles(profiles).extractContent().article();
+      Article second = ArticleExtractor.with(url, html).siteProfiles(profiles).extractContent().article();
+      assertEquals(fileName, expected.document.html(), first.document.html());
+      assertEquals(fileName, expected.document.html(), second.document.html());
+    }
+    assertEquals(5, profiles.size());
+    assertTrue(profiles.hitCount() > 0);
+    assertEquals(5, profiles.hitCount() + profiles.missCount());
+  }
+
+  @Test
+  public void testExportAndImport() throws IOException {
+    SiteProfiles profiles = SiteProfiles.withMaximumSize(2);
+    profiles.put("a.com", ContentLocator.parse("div#a"));
+    profiles.put("b.com", ContentLocator.parse("div.b:2 > p"));
+    profiles.put("c.com", ContentLocator.parse("article"));
+    assertEquals(2, profiles.size());
+    assertNull(profiles.get("a.com"));
+
+    StringWriter exported = new StringWriter();
+    profiles.exportTo(exported);
+    assertEquals("b.com\tdiv.b:2 > p\nc.com\tarticle\n", exported.toString());
+
+    SiteProfiles imported = SiteProfiles.withMaximumSize(5);
+    assertEquals(2, imported.importFrom(new StringReader(exported + "\nbad line\nd.com\tdiv:x\n")));
+    assertEquals(ContentLocator.parse("div.b:2 > p"), imported.get("b.com"));
+    assertEquals(ContentLocator.parse("article"), imported.get("c.com"));
+    assertEquals(2, imported.size());
+  }
+
+  @Test
+  public void testHostOf() {
+    assertEquals("example.com", SiteProfiles.hostOf("https://Example.com/a/b?c"));
+    assertNull(SiteProfiles.hostOf("not a url"));
+  }
+}
@@ -0,0 +1,54 @@
+package com.chimbori.crux.articles;
+
+import com.chimbori.crux.common.StringUtils;
+import com.chimbori.crux.common.SubstringCounter;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TextStatisticsTest {
+  private static final SubstringCounter NOISE = SubstringCounter.of("&lt;", "px", " ");
+
+  @Test
+  public void testMeasurementsMatchJsoup() {
+    assertMatchesJsoup("<div> a <p> b </p> c<br>d <span> </span>z <a href=x> link </a></div>");
+    assertMatchesJsoup("<p>  x  </p><div><b>  </b><i>q</i>   r<br><br>  s  </div>");
+    assertMatchesJsoup("<pre>\n\n</pre><pre><b>  k </b>  </pre><div> nbsp </div>");
+    assertMatchesJsoup("<ul><li>One</li><li><p>Two</p> three</li></ul><table><tr><td>Cell</td><td> Other </td></tr></table>");
+    assertMatchesJsoup("<div>Emoji 😀 and <em>ünïcödé</em> letters</div>");
+  }
+
+  @Test
+  public void testLinkTextLength() {
+    Document document = Jsoup.parse("<div><p>Some text with <a href=x>a link</a> in it.</p></div>");
+    TextStatistics statistics = TextStatistics.of(document.body());
+    assertEquals("a link".length(), statistics.linkTextLength(document.select("p").first()));
+    assertEquals("a link".length(), statistics.linkTextLength(document.select("a").first()));
+  }
+
+  @Test
+  public void testElementsOutsideTheMeasuredTreeFallBackToJsoup() {
+    Document document = Jsoup.parse("<div><p> First </p></div><p>Second paragraph</p>");
+    TextStatistics statistics = TextStatistics.of(document.select("div").first());
+    Element outside = document.select("p").last();
+    assertEquals("Second paragraph".length(), statistics.textLength(outside));
+    assertEquals("Second paragraph", statistics.text(outside));
+  }
+
+  private static void assertMatchesJsoup(String html) {
+    Document document = Jsoup.parse(html);
+    TextStatistics statistics = TextStatistics.of(document.body());
+    for (Element element : document.body().getAllElements()) {
+      String text = element.text();
+      assertEquals(text, statistics.text(element));
+      assertEquals(text, text.length(), statistics.textLength(element));
+      assertEquals(text, element.ownText().length(), statistics.ownTextLength(element));
+      assertEquals(text, StringUtils.countLetters(text), statistics.letterCount(element));
+      assertEquals(text, NOISE.countMatches(text), statistics.countMatches(element, NOISE));
+    }
+  }
+}
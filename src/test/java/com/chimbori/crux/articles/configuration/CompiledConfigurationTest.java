@@ -0,0 +1,117 @@
+package com.chimbori.crux.articles.configuration;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static com.chimbori.crux.articles.configuration.Configuration.standardConfiguration;
+import static com.chimbori.crux.articles.configuration.Configuration.standardConfigurationWithImages;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CompiledConfigurationTest {
+    @Test
+    public void testSnapshotMatchesSource() {
+        for (Configuration source : new Configuration[]{standardConfiguration, standardConfigurationWithImages}) {
+            CompiledConfiguration compiled = CompiledConfiguration.of(source);
+            assertEquals(source.minLengthForParagraphs(), compiled.minLengthForParagraphs());
+            assertEquals(source.retainTags(), compiled.retainTags());
+            assertEquals(source.retainTagsTopLevel(), compiled.retainTagsTopLevel());
+            assertEquals(source.removeTagsButRetainContent(), compiled.removeTagsButRetainContent());
+            assertEquals(source.attributesToRetainInHtml(), compiled.attributesToRetainInHtml());
+            assertEquals(source.tagsExemptFromMinLengthCheck(), compiled.tagsExemptFromMinLengthCheck());
+            assertEquals(source.tagsExemptFromEmptyTextCheck(), compiled.tagsExemptFromEmptyTextCheck());
+            assertEquals(((StandardConfiguration) source).strippedNodeNames(), compiled.strippedNodeNames());
+            assertEquals(source.importantNodes().pattern(), compiled.importantNodes().pattern());
+            assertEquals(source.negativeCssStyles().pattern(), compiled.negativeCssStyles().pattern());
+        }
+    }
+
+    @Test
+    public void testSnapshotsAreReusedAndReturnTheSameObjects() {
+        assertSame(CompiledConfiguration.of(standardConfiguration), CompiledConfiguration.of(standardConfiguration));
+        CompiledConfiguration compiled = CompiledConfiguration.of(new StandardConfiguration());
+        assertNotSame(compiled, CompiledConfiguration.of(standardConfiguration));
+        assertSame(compiled, CompiledConfiguration.of(compiled));
+        assertSame(compiled.retainTags(), compiled.retainTags());
+        assertSame(compiled.positiveCssClassesAndIds(), compiled.positiveCssClassesAndIds());
+    }
+
+    @Test
+    public void testConfigurationsNotExtendingStandardConfigurationStripTheStandardNodes() {
+        final Configuration standard = standardConfiguration;
+        Configuration custom = new Configuration() {
+            public int minLengthForParagraphs() { return standard.minLengthForParagraphs(); }
+            public Set<String> removeTagsButRetainContent() { return standard.removeTagsButRetainContent(); }
+            public Set<String> retainTags() { return standard.retainTags(); }
+            public Set<String> tagsExemptFromMinLengthCheck() { return standard.tagsExemptFromMinLengthCheck(); }
+            public Set<String> attributesToRetainInHtml() { return standard.attributesToRetainInHtml(); }
+            public Set<String> retainTagsTopLevel() { return standard.retainTagsTopLevel(); }
+            public Set<String> tagsExemptFromEmptyTextCheck() { return standard.tagsExemptFromEmptyTextCheck(); }
+            public Pattern unlikelyCssStyles() { return standard.unlikelyCssStyles(); }
+            public Pattern importantNodes() { return standard.importantNodes(); }
+            public Pattern unlikelyCssClassesAndIds() { return standard.unlikelyCssClassesAndIds(); }
+            public Pattern positiveCssClassesAndIds() { return standard.positiveCssClassesAndIds(); }
+            public Pattern negativeCssClassesAndIds() { return standard.negativeCssClassesAndIds(); }
+            public Pattern negativeCssStyles() { return standard.negativeCssStyles(); }
+        };
+        assertEquals(CompiledConfiguration.of(standard).strippedNodeNames(),
+            CompiledConfiguration.of(custom).strippedNodeNames());
+    }
+
+    @Test
+    public void testScoresLike() {
+        CompiledConfiguration standard = CompiledConfiguration.of(standardConfiguration);
+        assertTrue(standard.scoresLike(CompiledConfiguration.of(new StandardConfiguration())));
+        assertTrue(standard.scoresLike(CompiledConfiguration.of(new StandardConfiguration() {
+            @Override
+            public int minLengthForParagraphs() {
+                return 1;
+            }
+        })));
+        assertFalse(standard.scoresLike(CompiledConfiguration.of(standardConfigurationWithImages)));  // Scores images.
+        assertFalse(standard.scoresLike(CompiledConfiguration.of(new StandardConfiguration() {
+            @Override
+            public Pattern negativeCssClassesAndIds() {
+                return Pattern.compile("sidebar");
+            }
+        })));
+        assertFalse(standard.scoresLike(CompiledConfiguration.of(new StandardConfiguration() {
+            @Override
+            public Set<String> strippedNodeNames() {
+                return Collections.singleton("script");
+            }
+        })));
+    }
+
+    @Test
+    public void testSetsAreImmutable() {
+        Set<String> retainTags = CompiledConfiguration.of(standardConfiguration).retainTags();
+        try {
+            retainTags.add("script");
+            fail("Compiled sets should not be modifiable.");
+        } catch (UnsupportedOperationException expected) {
+            assertFalse(retainTags.contains("script"));
+        }
+    }
+
+    @Test
+    public void testIsImportantNode() {
+        CompiledConfiguration standard = CompiledConfiguration.of(standardConfiguration);
+        CompiledConfiguration withImages = CompiledConfiguration.of(standardConfigurationWithImages);
+        for (int i = 0; i < 2; i++) {  // Second time around, results are served from the cache.
+            assertTrue(standard.isImportantNode("div"));
+            assertTrue(standard.isImportantNode("section"));
+            assertFalse(standard.isImportantNode("span"));
+            assertFalse(standard.isImportantNode("img"));
+            assertFalse(standard.isImportantNode("pre"));  // Must match the whole tag name.
+            assertTrue(withImages.isImportantNode("img"));
+        }
+    }
+}
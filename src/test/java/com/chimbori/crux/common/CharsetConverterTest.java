@@ -3,11 +3,15 @@ package com.chimbori.crux.common;
 import org.jsoup.Jsoup;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class CharsetConverterTest {
@@ -32,6 +36,128 @@ public class CharsetConverterTest {
     assertEquals("Baby born on Mediterranean rescue ship - BBC News BBC News", Jsoup.parse(parsed.content).select("title").text());
   }
 
+  @Test
+  public void testByteOrderMarkTakesPrecedenceAndIsStripped() throws Exception {
+    byte[] html = "<meta charset='iso-8859-1'><title>\u00e9</title>".getBytes("UTF-8");
+    byte[] bytes = new byte[html.length + 3];
+    bytes[0] = (byte) 0xEF;
+    bytes[1] = (byte) 0xBB;
+    bytes[2] = (byte) 0xBF;
+    System.arraycopy(html, 0, bytes, 3, html.length);
+    CharsetConverter.StringWithEncoding parsed = read(bytes, "text/html; charset=windows-1252");
+    assertEquals("utf-8", parsed.encoding);
+    assertEquals("<meta charset='iso-8859-1'><title>\u00e9</title>", parsed.content);
+  }
+
+  @Test
+  public void testContentTypeTakesPrecedenceOverMeta() throws Exception {
+    byte[] bytes = "<meta charset='iso-8859-1'><title>\u00e9</title>".getBytes("UTF-8");
+    assertEquals("utf-8", read(bytes, "text/html; charset=UTF-8").encoding);
+    assertEquals("iso-8859-1", read(bytes, "text/html").encoding);
+    assertEquals("iso-8859-1", read(bytes, "text/html; charset=no-such-encoding").encoding);
+  }
+
+  @Test
+  public void testPrescanOnlyConsidersMetaDeclarations() throws Exception {
+    assertEquals("utf-8", read("<!-- <meta charset='iso-8859-1'> --><p>charset=iso-8859-1</p>").encoding);
+    assertEquals("utf-8", read("<script>var charset='iso-8859-1';</script>").encoding);
+    assertEquals("utf-8", read("<meta content='text/html; charset=iso-8859-1'>").encoding);
+    assertEquals("iso-8859-1", read("<meta http-equiv='Content-Type' content='text/html; charset=ISO-8859-1'>").encoding);
+    assertEquals("iso-8859-1", read("<meta data-x='>' charset=\"iso-8859-1\">").encoding);
+    assertEquals("shift_jis", read("<meta charset='no-such-encoding'><meta charset=Shift_JIS>").encoding);
+    assertEquals("utf-8", read("<meta charset='utf-16le'>").encoding);
+  }
+
+  @Test
+  public void testXmlDeclaration() throws Exception {
+    assertEquals("iso-8859-15", read("<?xml version='1.0' encoding='ISO-8859-15'?><html></html>").encoding);
+    assertEquals("shift_jis", read("<?xml version='1.0' encoding='ISO-8859-15'?><meta charset='shift_jis'>").encoding);
+  }
+
+  @Test
+  public void testReadBufferIsReusedAndMaxBytesIsApplied() throws Exception {
+    CharsetConverter.ReadBuffer buffer = new CharsetConverter.ReadBuffer(4096);
+    byte[] page = new byte[10000];
+    Arrays.fill(page, (byte) 'a');
+
+    CharsetConverter.StringWithEncoding parsed = CharsetConverter.readStream(new ByteArrayInputStream(page), null, buffer, 5000);
+    assertEquals(5000, parsed.content.length());
+    assertEquals(5000, parsed.length);
+    assertEquals(0, parsed.offset);
+    int capacity = buffer.capacity();
+
+    parsed = CharsetConverter.readStream(new ByteArrayInputStream("<title>Title</title>".getBytes("US-ASCII")), null, buffer, 5000);
+    assertEquals("<title>Title</title>", parsed.content);
+    assertEquals(capacity, buffer.capacity());
+    assertEquals("<title>Title</title>", new String(parsed.bytes, parsed.offset, parsed.length, "US-ASCII"));
+  }
+
+  @Test
+  public void testDecodeExposesTheSameBytes() throws Exception {
+    byte[] bytes = "xx<title>Title</title>".getBytes("US-ASCII");
+    CharsetConverter.StringWithEncoding parsed = CharsetConverter.decode(bytes, 2, bytes.length - 2, null);
+    assertEquals("<title>Title</title>", parsed.content);
+    assertTrue(parsed.bytes == bytes);
+    assertEquals(2, parsed.offset);
+  }
+
+  @Test
+  public void testDecodeDirectByteBuffer() throws Exception {
+    byte[] page = "\u00ef\u00bb\u00bf<meta charset=iso-8859-1><title>\u00e9t\u00e9</title>".getBytes("ISO-8859-1");
+    ByteBuffer buffer = ByteBuffer.allocateDirect(page.length);
+    buffer.put(page).flip();
+
+    CharsetConverter.StringWithEncoding parsed = CharsetConverter.decode(buffer, null);
+    assertEquals("utf-8", parsed.encoding);  // The byte order mark wins.
+    assertEquals(0, buffer.position());
+    assertEquals(null, parsed.bytes);
+
+    buffer.position(3);
+    parsed = CharsetConverter.decode(buffer, null);
+    assertEquals("iso-8859-1", parsed.encoding);
+    assertEquals("<meta charset=iso-8859-1><title>\u00e9t\u00e9</title>", parsed.content);
+    assertEquals("windows-1252", CharsetConverter.decode(buffer, "windows-1252").encoding);
+    assertEquals(3, buffer.position());
+  }
+
+  @Test
+  public void testDecodeHeapByteBufferSlice() throws Exception {
+    byte[] bytes = "xx<title>Title</title>yy".getBytes("US-ASCII");
+    ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, bytes.length - 2).slice();  // arrayOffset() == 1.
+    buffer.position(1).limit(bytes.length - 3);
+
+    CharsetConverter.StringWithEncoding parsed = CharsetConverter.decode(buffer, null);
+    assertEquals("<title>Title</title>", parsed.content);
+    assertTrue(parsed.bytes == bytes);
+    assertEquals(2, parsed.offset);
+    assertEquals(1, buffer.position());
+  }
+
+  @Test
+  public void testStreamDecoderMatchesDecode() throws Exception {
+    byte[] page = ("<html><head><meta charset='shift_jis'></head><body>" +
+        "\u8aad\u58f2\u65b0\u805e \u30cb\u30e5\u30fc\u30b9</body></html>").getBytes("Shift_JIS");
+    CharsetConverter.StringWithEncoding expected = CharsetConverter.decode(page, 0, page.length, null);
+    for (int chunk = 1; chunk <= page.length; chunk++) {
+      CharsetConverter.StreamDecoder decoder = new CharsetConverter.StreamDecoder(null);
+      StringBuilder decoded = new StringBuilder();
+      for (int i = 0; i < page.length; i += chunk) {
+        int length = Math.min(chunk, page.length - i);
+        decoder.decode(ByteBuffer.wrap(page, i, length), i + length == page.length, decoded);
+      }
+      assertEquals(expected.content, decoded.toString());
+      assertEquals("shift_jis", decoder.encoding());
+    }
+  }
+
+  private static CharsetConverter.StringWithEncoding read(String html) throws Exception {
+    return read(html.getBytes("US-ASCII"), null);
+  }
+
+  private static CharsetConverter.StringWithEncoding read(byte[] bytes, String contentType) {
+    return CharsetConverter.readStream(new ByteArrayInputStream(bytes), contentType);
+  }
+
   private void assertEncodingEquals(String encoding, String testFile) {
     try {
       assertEquals(encoding, CharsetConverter.readStream(new FileInputStream(new File("test_data/" + testFile))).encoding);
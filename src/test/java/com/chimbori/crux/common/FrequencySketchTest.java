@@ -0,0 +1,48 @@
+package com.chimbori.crux.common;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FrequencySketchTest {
+  @Test
+  public void testCountsUpToMaximum() {
+    FrequencySketch sketch = new FrequencySketch(1024);
+    assertEquals(0, sketch.frequency(42));
+    for (int i = 1; i <= 20; i++) {
+      sketch.increment(42);
+      assertEquals(Math.min(i, FrequencySketch.MAX_FREQUENCY), sketch.frequency(42));
+    }
+    assertEquals(0, sketch.frequency(43));
+  }
+
+  @Test
+  public void testNeverUnderestimates() {
+    FrequencySketch sketch = new FrequencySketch(512);
+    for (long item = 0; item < 256; item++) {
+      for (int i = 0; i < item % 4; i++) {
+        sketch.increment(item);
+      }
+    }
+    int exact = 0;
+    for (long item = 0; item < 256; item++) {
+      int frequency = sketch.frequency(item);
+      assertTrue(frequency >= item % 4);
+      exact += frequency == item % 4 ? 1 : 0;
+    }
+    assertTrue(exact > 200);
+  }
+
+  @Test
+  public void testForgetsOldItems() {
+    FrequencySketch sketch = new FrequencySketch(16);
+    for (int i = 0; i < 10; i++) {
+      sketch.increment(-1);
+    }
+    for (long item = 0; item < 200; item++) {
+      sketch.increment(item);
+    }
+    assertTrue(sketch.frequency(-1) < 10);
+  }
+}
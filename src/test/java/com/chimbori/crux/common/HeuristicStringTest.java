@@ -72,6 +72,39 @@ public class HeuristicStringTest {
     }
   }
 
+  @Test
+  public void testFirstOfMatchesTheExceptionBasedChain() {
+    assertEquals("original", HeuristicString.firstOf("original", SOURCE, NEVER_CALLED));
+    assertEquals("changed", HeuristicString.firstOf(null, SOURCE, constant("changed"), NEVER_CALLED));
+    assertEquals("changed", HeuristicString.firstOf("", SOURCE, constant(null), constant("changed")));
+    assertEquals("", HeuristicString.firstOf("", SOURCE, constant(null)));
+    assertNull(HeuristicString.firstOf(null, SOURCE, constant(null)));
+  }
+
+  private static final HeuristicString.Candidate<String> SOURCE = new HeuristicString.Candidate<String>() {
+    @Override
+    public String get(String source) {
+      return source;
+    }
+  };
+
+  private static final HeuristicString.Candidate<Object> NEVER_CALLED = new HeuristicString.Candidate<Object>() {
+    @Override
+    public String get(Object source) {
+      fail("If an existing candidate is available, subsequent candidates should not be evaluated.");
+      return "changed";
+    }
+  };
+
+  private static HeuristicString.Candidate<Object> constant(final String value) {
+    return new HeuristicString.Candidate<Object>() {
+      @Override
+      public String get(Object source) {
+        return value;
+      }
+    };
+  }
+
   @SuppressWarnings("SameReturnValue")
   private String getNewCandidate_ShouldNeverBeCalled() {
     fail("If an existing candidate is available, subsequent candidates should not be evaluated.");
@@ -4,9 +4,11 @@ import org.junit.Test;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 public class StringUtilsTest {
   @Test
@@ -19,6 +21,27 @@ public class StringUtilsTest {
     assertEquals("t t", StringUtils.innerTrim("t    \n     t "));
   }
 
+  @Test
+  public void testInnerTrimMatchesRegularExpression() {
+    String[] inputs = {"", " ", "a", "a b", " a  b ", "\f\n a\r\n\tb \f", "a \f b", "a\u00a0 b", "\u0000a\u0000"};
+    for (String input : inputs) {
+      assertEquals(input.replaceAll("[ \r\t\n]+", " ").trim(), StringUtils.innerTrim(input));
+      assertEquals(input.replaceAll("[ \r\t\n]+", " ").trim(),
+          StringUtils.appendInnerTrimmed(new StringBuilder("x"), input).substring(1));
+      assertEquals(input.isEmpty() ? input : input.trim().replaceAll("[ \r\t\n]+", "%20"),
+          StringUtils.urlEncodeSpaceCharacter(input));
+    }
+  }
+
+  @Test
+  public void testUnchangedStringsAreReturnedAsIs() {
+    String clean = "Already clean text";
+    assertSame(clean, StringUtils.innerTrim(clean));
+    String url = "http://example.com/a%20b";
+    assertSame(url, StringUtils.urlEncodeSpaceCharacter(url));
+    assertEquals("http://example.com/a%20b", StringUtils.urlEncodeSpaceCharacter(" http://example.com/a \n b "));
+  }
+
   @Test
   public void testCount() {
     assertEquals(1, StringUtils.countMatches("hi wie &test; gehts", "&test;"));
@@ -26,6 +49,8 @@ public class StringUtilsTest {
     assertEquals(2, StringUtils.countMatches("&test;&test;", "&test;"));
     assertEquals(2, StringUtils.countMatches("&test; &test;", "&test;"));
     assertEquals(3, StringUtils.countMatches("&test; test; &test; plu &test;", "&test;"));
+    assertEquals(2, StringUtils.countMatches("aaaaa", "aa"));
+    assertEquals(0, StringUtils.countMatches("text", ""));
   }
 
   @Test
@@ -37,6 +62,52 @@ public class StringUtilsTest {
     assertEquals("people", StringUtils.getLongestSubstring(" people ", "people"));
   }
 
+  @Test
+  public void testLongestSubstringMatchesQuadraticSearch() {
+    Random random = new Random(42);
+    for (int iteration = 0; iteration < 500; iteration++) {
+      String str1 = randomString(random, random.nextInt(40), "abc ");
+      String str2 = randomString(random, random.nextInt(40), "abcd");
+      assertEquals(str1 + " / " + str2, quadraticLongestSubstring(str1, str2), StringUtils.getLongestSubstring(str1, str2));
+    }
+  }
+
+  @Test
+  public void testBoundedLongestSubstring() {
+    assertEquals("hello", StringUtils.getLongestSubstring("hi hello how are you?", "hello how", 5));
+    assertEquals("hello how", StringUtils.getLongestSubstring("hi hello how are you?", "hello how", 50));
+    assertEquals("", StringUtils.getLongestSubstring("hi", "hi", 0));
+  }
+
+  private static String randomString(Random random, int length, String alphabet) {
+    StringBuilder builder = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+    }
+    return builder.toString();
+  }
+
+  /**
+   * The original dynamic programming implementation, for reference.
+   */
+  private static String quadraticLongestSubstring(String str1, String str2) {
+    int maxLength = 0;
+    int endIndex = 0;
+    int[][] num = new int[str1.length()][str2.length()];
+    for (int i = 0; i < str1.length(); i++) {
+      for (int j = 0; j < str2.length(); j++) {
+        if (str1.charAt(i) == str2.charAt(j)) {
+          num[i][j] = (i == 0 || j == 0) ? 1 : 1 + num[i - 1][j - 1];
+          if (num[i][j] > maxLength) {
+            maxLength = num[i][j];
+            endIndex = i + 1;
+          }
+        }
+      }
+    }
+    return str1.substring(endIndex - maxLength, endIndex);
+  }
+
   @Test
   public void testImageProtocolRelative() {
     String result;
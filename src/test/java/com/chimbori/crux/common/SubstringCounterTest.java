@@ -0,0 +1,47 @@
+package com.chimbori.crux.common;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SubstringCounterTest {
+  @Test
+  public void testCountsAllNeedlesInOnePass() {
+    SubstringCounter counter = SubstringCounter.of("&quot;", "&lt;", "&gt;", "px");
+    assertEquals(0, counter.countMatches(""));
+    assertEquals(0, counter.countMatches("plain text & more"));
+    assertEquals(5, counter.countMatches("&lt;div style=&quot;width: 10px&quot;&gt;"));
+    assertEquals(2, counter.countMatches("&lt;&lt;", 0, 8));
+    assertEquals(1, counter.countMatches("&lt;&lt;", 1, 8));
+  }
+
+  @Test
+  public void testMatchesSumOfCountMatches() {
+    String[][] needleSets = {
+        {"ad"},
+        {"aa"},
+        {"abab", "ba", "b"},
+        {"he", "she", "his", "hers"},
+        {"&quot;", "&lt;", "&gt;", "px"},
+    };
+    String[] texts = {
+        "", "a", "aaaaa", "ababababa", "ushers", "shishe hers", "load adaptive headlines ad",
+        "&amp;&quot;&lt;&lt;px;pxpx&gt",
+    };
+    for (String[] needles : needleSets) {
+      SubstringCounter counter = SubstringCounter.of(needles);
+      for (String text : texts) {
+        int expected = 0;
+        for (String needle : needles) {
+          expected += StringUtils.countMatches(text, needle);
+        }
+        assertEquals(text, expected, counter.countMatches(text));
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsEmptyNeedles() {
+    SubstringCounter.of("a", "");
+  }
+}